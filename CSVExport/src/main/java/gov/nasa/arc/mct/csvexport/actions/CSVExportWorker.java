@@ -23,6 +23,7 @@ package gov.nasa.arc.mct.csvexport.actions;
 
 import gov.nasa.arc.mct.components.AbstractComponent;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -40,6 +41,8 @@ import javax.swing.SwingWorker;
  *
  */
 public class CSVExportWorker extends SwingWorker<Boolean, Void> {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
 	private Collection<AbstractComponent> components;
 	private File file;
 	private IOException ioe;
@@ -65,10 +68,10 @@ public class CSVExportWorker extends SwingWorker<Boolean, Void> {
 		Writer w = null;
 		boolean success = true;
 		try {
-			w = new FileWriter(file);
+			w = new BufferedWriter(new FileWriter(file), BUFFER_SIZE);
 			w.write(r.renderHeaders());
 			for (int i = 0; i < rowCount && !isCancelled(); i++) {
-				setProgress((i * 100) / rowCount);
+				setProgress((int) ((i * 100L) / rowCount));
 				w.write(r.renderRow(i));
 			}
 		} catch (IOException ioe) {
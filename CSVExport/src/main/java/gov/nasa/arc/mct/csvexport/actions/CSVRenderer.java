@@ -24,6 +24,9 @@ package gov.nasa.arc.mct.csvexport.actions;
 import gov.nasa.arc.mct.components.AbstractComponent;
 import gov.nasa.arc.mct.csvexport.component.CSVExportCapability;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -87,23 +90,41 @@ public class CSVRenderer {
 	 * contain column headers.
 	 * 
 	 * This is potentially a very large String depending 
-	 * on the number of components involved; it may 
-	 * make sense to render the CSV piece-wise using 
-	 * {@link #renderHeaders()} and {@link #renderRow(int)}, 
-	 * particularly if writing to a stream.
+	 * on the number of components involved; when writing 
+	 * to a stream, use {@link #render(Writer)} instead.
 	 * 
 	 * @return a CSV representation of all components
 	 */
 	public String render() {
-		StringBuilder builder = new StringBuilder("");
-
+		StringWriter writer = new StringWriter();
+		try {
+			render(writer);
+		} catch (IOException ioe) {
+			throw new IllegalStateException(ioe); // StringWriter does not throw
+		}
+		return writer.toString();
+	}
+	
+	/**
+	 * Write a full CSV representation of all components 
+	 * specified in the constructor, starting with a line 
+	 * of column headers. Rows are written as they are 
+	 * produced, so the whole CSV is never held in memory.
+	 * 
+	 * @param writer the writer to which CSV text is written
+	 * @throws IOException if writing fails
+	 */
+	public void render(Writer writer) throws IOException {
+		StringBuilder builder = new StringBuilder();
 		renderRow(builder, capability.getHeaders());
+		writer.write(builder.toString());
 		
-		for (int i = 0; i < capability.getRowCount(); i++) {
+		int rowCount = capability.getRowCount();
+		for (int i = 0; i < rowCount; i++) {
+			builder.setLength(0);
 			renderRow(builder, capability.getValue(i));
+			writer.write(builder.toString());
 		}
-		
-		return builder.toString();
 	}
 	
 	/**
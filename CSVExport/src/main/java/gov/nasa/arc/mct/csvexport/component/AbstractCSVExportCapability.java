@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.csvexport.component;
+
+import gov.nasa.arc.mct.components.AbstractComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for expressing a group of components, including all of 
+ * their children, in CSV format, with one row per component. 
+ * Subclasses describe the columns for an individual component.
+ * 
+ * Rows are not stored. The first request for headers or a row count 
+ * makes one pass over the components to discover columns; rows are 
+ * then produced by a second pass, as they are requested. Requesting 
+ * rows in order (as when writing the CSV out) therefore needs only 
+ * one visit per component; requesting an earlier row restarts the pass. 
+ * Only the ids of visited components are retained, so that components 
+ * reachable by more than one path are exported once.
+ * 
+ * Visiting components may load them from persistence, so this should 
+ * not be used from a user interface thread.
+ */
+public abstract class AbstractCSVExportCapability implements CSVExportCapability {
+	private final Collection<AbstractComponent> components;
+	private final String childPrefix;
+	private final List<String> groupPrefixes;
+	
+	private String[] headers;
+	private Map<String, Integer> columns;
+	private int rowCount;
+	
+	private Pass pass; // Current position when producing rows
+	
+	/**
+	 * Express the specified group of components in CSV format.
+	 * 
+	 * Numbered columns (such as references to children) appear after 
+	 * all other columns, grouped by prefix, in the order given; 
+	 * references to children are always last.
+	 * 
+	 * @param components the components to render
+	 * @param childPrefix prefix of the columns referencing child components
+	 * @param groupPrefixes prefixes of other numbered columns
+	 */
+	protected AbstractCSVExportCapability(Collection<AbstractComponent> components, String childPrefix, String... groupPrefixes) {
+		this.components = components;
+		this.childPrefix = childPrefix;
+		this.groupPrefixes = new ArrayList<String>(Arrays.asList(groupPrefixes));
+		this.groupPrefixes.add(childPrefix);
+	}
+	
+	/**
+	 * Describe the values of a single component. 
+	 * References to children are added separately.
+	 * @param ac the component to describe
+	 * @param row the row to which values should be added
+	 */
+	protected abstract void describe(AbstractComponent ac, Row row);
+	
+	/**
+	 * Collects the values of one component's row.
+	 */
+	protected interface Row {
+		/**
+		 * Add a value. Null descriptions or values are ignored.
+		 * @param description the column header
+		 * @param value the value
+		 */
+		void put(String description, String value);
+		
+		/**
+		 * Add a value to a numbered column.
+		 * @param prefix the prefix for the group of columns (as given to the constructor)
+		 * @param index the index of the value within the group, from 0
+		 * @param value the value
+		 */
+		void put(String prefix, int index, String value);
+	}
+	
+	@Override
+	public int getRowCount() {
+		discover();
+		return rowCount;
+	}
+	
+	@Override
+	public int getColumnCount() {
+		discover();
+		return headers.length;
+	}
+	
+	@Override
+	public String[] getHeaders() {
+		discover();
+		return headers.clone();
+	}
+
+	@Override
+	public String[] getValue(int row) {
+		discover();
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (pass == null || pass.index >= row) {
+			pass = new Pass();
+		}
+		String[] values = new String[headers.length];
+		while (pass.index < row) {
+			values = new String[headers.length];
+			if (!pass.next(new IndexedRow(values))) {
+				break; // Components have changed since discovery; leave the row empty
+			}
+		}
+		return values;
+	}
+	
+	private String groupHeader(String prefix, int index) {
+		return prefix + (index + 1);
+	}
+	
+	private void discover() {
+		if (headers != null) return;
+		
+		HeaderRow discovery = new HeaderRow();
+		Pass p = new Pass();
+		while (p.next(discovery));
+		rowCount = p.index + 1;
+		
+		List<String> all = new ArrayList<String>(discovery.headers);
+		for (String prefix : groupPrefixes) {
+			Integer count = discovery.groups.get(prefix);
+			for (int i = 0; count != null && i < count; i++) {
+				all.add(groupHeader(prefix, i));
+			}
+		}
+		headers = all.toArray(new String[all.size()]);
+		columns = new HashMap<String, Integer>(headers.length * 2);
+		for (int i = 0; i < headers.length; i++) {
+			columns.put(headers[i], i);
+		}
+	}
+	
+	/**
+	 * A depth-first, pre-order walk over the components and their 
+	 * children, visiting each component once.
+	 */
+	private class Pass {
+		private final Set<String> visited = new HashSet<String>();
+		private final List<Iterator<AbstractComponent>> stack = 
+				new ArrayList<Iterator<AbstractComponent>>();
+		private int index = -1;
+		
+		Pass() {
+			stack.add(components.iterator());
+		}
+		
+		/**
+		 * Describe the next unvisited component.
+		 * @param row the row to which values should be added
+		 * @return false if all components have been visited
+		 */
+		boolean next(Row row) {
+			while (!stack.isEmpty()) {
+				Iterator<AbstractComponent> top = stack.get(stack.size() - 1);
+				if (!top.hasNext()) {
+					stack.remove(stack.size() - 1);
+					continue;
+				}
+				AbstractComponent ac = top.next();
+				if (visited.add(ac.getComponentId())) {
+					index++;
+					describe(ac, row);
+					List<AbstractComponent> children = ac.getComponents();
+					for (int i = 0; i < children.size(); i++) {
+						row.put(childPrefix, i, children.get(i).getComponentId());
+					}
+					stack.add(children.iterator());
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Accumulates headers, in the order they are first seen.
+	 */
+	private class HeaderRow implements Row {
+		private final Set<String> headers = new LinkedHashSet<String>();
+		private final Map<String, Integer> groups = new HashMap<String, Integer>();
+		
+		@Override
+		public void put(String description, String value) {
+			if (description != null && value != null) {
+				headers.add(description);
+			}
+		}
+		
+		@Override
+		public void put(String prefix, int index, String value) {
+			Integer count = groups.get(prefix);
+			if (count == null || count <= index) {
+				groups.put(prefix, index + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Places values in their columns.
+	 */
+	private class IndexedRow implements Row {
+		private final String[] values;
+		
+		IndexedRow(String[] values) {
+			this.values = values;
+		}
+		
+		@Override
+		public void put(String description, String value) {
+			if (description != null && value != null) {
+				Integer column = columns.get(description);
+				if (column != null) values[column] = value;
+			}
+		}
+		
+		@Override
+		public void put(String prefix, int index, String value) {
+			put(groupHeader(prefix, index), value);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See
+ * the MCT Open Source Licenses file included with this distribution or the About
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional
+ * information.
+ *******************************************************************************/
+package gov.nasa.arc.mct.data.action;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a data file one row at a time, splitting each row
+ * at commas. Rows are tokenized in place in a fixed-size
+ * read buffer, so memory use does not depend on file size;
+ * fields are only decoded into Strings when asked for.
+ *
+ * Fields are not quoted or escaped, matching the format
+ * written by the data exporters (ID, time stamp, value).
+ *
+ * A reader may be limited to a byte range of the file, so that
+ * a large file can be read in parallel. A range contains the
+ * rows which start within it; the partial row at the start of a
+ * range belongs to the range before it.
+ */
+class DataFileReader {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String CHARSET = "UTF-8";
+
+	private final FileChannel channel;
+	private final long start, end;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private long consumed = 0; // Bytes of the file before the start of buffer
+	private boolean eof = false;
+	private boolean done = false;
+
+	private int   lineStart, lineEnd;
+	private int   fieldCount;
+	private int[] fieldStart = new int[8];
+	private int[] fieldEnd   = new int[8];
+
+	public DataFileReader(File file) throws IOException {
+		this(file, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Create a reader for the rows starting within a range of a file.
+	 * @param file the file to read
+	 * @param start the offset of the first byte of the range
+	 * @param end the offset just past the last byte of the range
+	 * @throws IOException
+	 */
+	public DataFileReader(File file, long start, long end) throws IOException {
+		channel = new FileInputStream(file).getChannel();
+		this.end = Math.min(end, channel.size());
+		this.start = Math.min(start, this.end);
+		buffer.flip(); // Start empty
+		if (this.start > 0) {
+			// Skip the remainder of the row which straddles the start
+			// (if the previous byte is a newline, this skips nothing)
+			consumed = this.start - 1;
+			channel.position(consumed);
+			readLine();
+		}
+	}
+
+	/**
+	 * Advance to the next row of the file. Blank lines are skipped.
+	 * @return true if a row was read; false at the end of the file
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		do {
+			if (done || !readLine() || consumed + lineStart >= end) {
+				done = true;
+				return false;
+			}
+		} while (lineEnd == lineStart);
+		tokenize();
+		return true;
+	}
+
+	/**
+	 * @return the number of fields in the current row
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @param i the index of the field in the current row
+	 * @return the field's text
+	 */
+	public String getField(int i) {
+		if (i >= fieldCount) throw new IndexOutOfBoundsException();
+		try {
+			return new String(buffer.array(), fieldStart[i], fieldEnd[i] - fieldStart[i], CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e); // UTF-8 is always supported
+		}
+	}
+
+	/**
+	 * @param i the index of the field in the current row
+	 * @return the field, parsed as a (decimal) long
+	 * @throws NumberFormatException if the field is not an integer
+	 */
+	public long getLong(int i) {
+		if (i >= fieldCount) throw new IndexOutOfBoundsException();
+		byte[] b = buffer.array();
+		int p = fieldStart[i], end = fieldEnd[i];
+		boolean negative = p < end && b[p] == '-';
+		if (negative || (p < end && b[p] == '+')) p++;
+		if (p == end || end - p > 18) return Long.parseLong(getField(i)); // Let Long report or handle it
+		long value = 0;
+		for (; p < end; p++) {
+			int digit = b[p] - '0';
+			if (digit < 0 || digit > 9) throw new NumberFormatException(getField(i));
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return the number of bytes of the range which have been read as rows
+	 */
+	public long getPosition() {
+		return done ? end - start : Math.max(0, Math.min(consumed + lineEnd, end) - start);
+	}
+
+	/**
+	 * @return the size of the range, in bytes
+	 */
+	public long getSize() {
+		return end - start;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private boolean readLine() throws IOException {
+		int start = buffer.position();
+		int scan = start;
+		while (true) {
+			byte[] b = buffer.array();
+			int limit = buffer.limit();
+			for (; scan < limit; scan++) {
+				if (b[scan] == '\n') {
+					setLine(start, scan);
+					buffer.position(scan + 1);
+					return true;
+				}
+			}
+			if (eof) {
+				if (start == limit) return false;
+				setLine(start, limit); // Last line has no terminator
+				buffer.position(limit);
+				return true;
+			}
+			// Move the partial line to the front, growing the buffer if it is full
+			int partial = limit - start;
+			if (start == 0 && limit == buffer.capacity()) {
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.position(0);
+				larger.put(buffer);
+				buffer = larger;
+			} else {
+				buffer.position(start);
+				buffer.compact();
+			}
+			consumed += start;
+			scan = partial;
+			start = 0;
+			eof = channel.read(buffer) < 0;
+			buffer.flip();
+		}
+	}
+
+	private void setLine(int start, int end) {
+		lineStart = start;
+		lineEnd = end;
+		if (end > start && buffer.array()[end - 1] == '\r') lineEnd--;
+	}
+
+	private void tokenize() {
+		byte[] b = buffer.array();
+		fieldCount = 0;
+		int start = lineStart;
+		for (int p = lineStart; p <= lineEnd; p++) {
+			if (p == lineEnd || b[p] == ',') {
+				if (fieldCount == fieldStart.length) {
+					int[] s = new int[fieldCount * 2];
+					int[] e = new int[fieldCount * 2];
+					System.arraycopy(fieldStart, 0, s, 0, fieldCount);
+					System.arraycopy(fieldEnd,   0, e, 0, fieldCount);
+					fieldStart = s;
+					fieldEnd   = e;
+				}
+				fieldStart[fieldCount] = start;
+				fieldEnd  [fieldCount] = p;
+				fieldCount++;
+				start = p + 1;
+			}
+		}
+	}
+}
@@ -31,8 +31,11 @@ import gov.nasa.arc.mct.gui.View;
 import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JFileChooser;
+import javax.swing.filechooser.FileFilter;
 
 
 /**
@@ -70,35 +73,49 @@ public class DataImportAction extends ContextAwareAction {
 	@Override
 	public void actionPerformed(ActionEvent e) {
 		View window = currentContext.getWindowManifestation();
-		File file = selectFile(window);
+		List<File> files = selectFiles(window);
 		
 		View manifestation = currentContext.getSelectedManifestations()
 	             .iterator().next();
 		assert manifestation != null;
 		AbstractComponent selectedComponent = manifestation.getManifestedComponent();
 		
-		if (file != null) {
-			new DataImporter(window, selectedComponent, file).importData();
+		if (files != null && !files.isEmpty()) {
+			new DataImporter(window, selectedComponent, files).importData();
 		}
 	}
 	
 	/**
-	 * if enable select multiple files or directory, refer to ImportAction.selectFile()
-	 * 
-	 * Opens FileChooser with the passed in component as the parent and returns the selected
-	 * File specified by the user through the FileChooser.
+	 * Opens FileChooser with the passed in component as the parent and returns the 
+	 * files specified by the user through the FileChooser. User can select several
+	 * files or directories; any CSV files contained in a selected directory are returned.
      * 
 	 * @param parent the current window which the FileChooser belongs to
-	 * @return a File object returned by the FileChooser, or null if user canceled out of the FileChooser
+	 * @return a list of files, or null if user canceled out of the FileChooser
 	 */
-	private File selectFile(Component parent) {
+	private List<File> selectFiles(Component parent) {
 		if (parent == null) return null;
 		
 		JFileChooser dataFileChooser = new ImportFileChooser();
 		dataFileChooser.setDialogTitle(BundleAccess.BUNDLE.getString("data_import_chooser_title"));
 		dataFileChooser.setApproveButtonText(BundleAccess.BUNDLE.getString("data_import_button"));
-		return dataFileChooser.showSaveDialog(parent) == FileChooser.APPROVE_OPTION ?
-				dataFileChooser.getSelectedFile() : null;
+		dataFileChooser.setMultiSelectionEnabled(true);
+		if (dataFileChooser.showOpenDialog(parent) != FileChooser.APPROVE_OPTION) return null;
+		
+		List<File> files = new ArrayList<File>();
+		addFiles(files, dataFileChooser.getSelectedFiles(), new ImportFileFilter());
+		return files;
+	}
+	
+	private void addFiles(List<File> files, File[] selected, FileFilter filter) {
+		if (selected == null) return;
+		for (File file : selected) {
+			if (file.isDirectory()) {
+				addFiles(files, file.listFiles(), filter);
+			} else if (filter.accept(file)) {
+				files.add(file);
+			}
+		}
 	}
 
 }
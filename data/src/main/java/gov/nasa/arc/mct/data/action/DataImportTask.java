@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.data.action;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedDataArchive;
+import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
+import gov.nasa.arc.mct.data.component.DataComponent;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports the rows in one byte range of a data file. Samples 
+ * are handed to the data archive in batches of up to BATCH_SIZE, 
+ * one call per feed. When the archive's buffer is full, the 
+ * batch is retried after a growing delay, which also holds off 
+ * further reading.
+ * 
+ * As each batch is stored, the last time stamp of each feed is
+ * merged into a map shared with the other tasks, so that it is 
+ * recorded even if a later batch fails or the task is cancelled.
+ */
+class DataImportTask implements Callable<Void> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DataImportTask.class);
+	
+	/** number of samples to accumulate before writing to the archive */
+	private static final int BATCH_SIZE = 10000;
+	
+	/** delays, in milliseconds, between attempts to write to a full archive */
+	private static final long RETRY_DELAY = 50;
+	private static final long RETRY_DELAY_LIMIT = 2000;
+	
+	/** attempts to write one batch before giving up */
+	private static final int RETRY_LIMIT = 30;
+	
+	/** 
+	 * rendering info differs between samples only in the value, so it is formatted
+	 * once around a placeholder (null if the value does not appear verbatim)
+	 */
+	private static final String[] RENDERING_INFO = getRenderingInfoTemplate();
+	
+	private final File file;
+	private final long start, end;
+	private final FeedDataArchive dataArchive;
+	private final AtomicLong bytesRead;
+	
+	/**
+	 * samples read but not yet written to the archive, by feed ID
+	 */
+	private final Map<String, Map<Long, Map<String, String>>> pending = 
+		new LinkedHashMap<String, Map<Long, Map<String, String>>>();
+	private int pendingCount = 0;
+	
+	/**
+	 * last time stamp written for each feed, by all tasks
+	 */
+	private final ConcurrentMap<String, Long> endTimes;
+	
+	/**
+	 * @param file the file to read
+	 * @param start the offset of the first byte of the range to read
+	 * @param end the offset just past the last byte of the range
+	 * @param dataArchive the archive to write to (may be null)
+	 * @param bytesRead a count of bytes read, to update as rows are stored
+	 * @param endTimes the last time stamp stored for each feed, to update as rows are stored
+	 */
+	DataImportTask(File file, long start, long end, FeedDataArchive dataArchive, AtomicLong bytesRead, 
+			ConcurrentMap<String, Long> endTimes) {
+		this.file = file;
+		this.start = start;
+		this.end = end;
+		this.dataArchive = dataArchive;
+		this.bytesRead = bytesRead;
+		this.endTimes = endTimes;
+	}
+
+	@Override
+	public Void call() throws IOException, BufferFullException, InterruptedException {
+		DataFileReader reader = new DataFileReader(file, start, end);
+		long reported = 0;
+		try {
+			while (reader.next()) {
+				if (Thread.interrupted()) throw new InterruptedException();
+				if (saveData(reader)) {
+					long position = reader.getPosition();
+					bytesRead.addAndGet(position - reported);
+					reported = position;
+				}
+			}
+			flush();
+			bytesRead.addAndGet(reader.getSize() - reported);
+		} finally {
+			reader.close();
+		}
+		return null;
+	}
+	
+	/**
+	 * @return true if a batch was written to the archive
+	 */
+	private boolean saveData(DataFileReader reader) throws BufferFullException, InterruptedException {
+		if (reader.getFieldCount() < 3) {
+			LOGGER.warn("Skipping malformed line in {} before byte {}", file, start + reader.getPosition());
+			return false;
+		}
+		
+		long time;
+		try {
+			time = reader.getLong(1);
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Skipping line with malformed time stamp in {} before byte {}", file, start + reader.getPosition());
+			return false;
+		}		
+		String feedID = DataComponent.PREFIX + reader.getField(0);
+		String value  = reader.getField(2);
+		
+		Map<String, String> datum = new HashMap<String, String>(8);
+		
+		// Fill in the normally expected key/value pairs
+		datum.put(FeedProvider.NORMALIZED_IS_VALID_KEY, Boolean.TRUE.toString());   
+		datum.put(FeedProvider.NORMALIZED_RENDERING_INFO, formatRenderingInfo(value));
+		datum.put(FeedProvider.NORMALIZED_TIME_KEY, String.valueOf(time));
+		datum.put(FeedProvider.NORMALIZED_VALUE_KEY, value);
+		
+		Map<Long, Map<String, String>> samples = pending.get(feedID);
+		if (samples == null) {
+			pending.put(feedID, samples = new HashMap<Long, Map<String, String>>());
+		}
+		samples.put(time, datum);
+		
+		if (++pendingCount < BATCH_SIZE) return false;
+		flush();
+		return true;
+	}
+	
+	/**
+	 * write all pending samples to the archive, one call per feed.
+	 */
+	private void flush() throws BufferFullException, InterruptedException {
+		if (dataArchive != null) {
+			for (Entry<String, Map<Long, Map<String, String>>> entry : pending.entrySet()) {
+				putData(entry.getKey(), entry.getValue());
+				updateEndTime(entry.getKey(), entry.getValue().keySet());
+			}
+		}
+		pending.clear();
+		pendingCount = 0;
+	}
+	
+	private void putData(String feedID, Map<Long, Map<String, String>> samples) throws BufferFullException, InterruptedException {
+		long delay = RETRY_DELAY;
+		for (int attempt = 1; ; attempt++) {
+			try {
+				dataArchive.putData(feedID, TimeUnit.MILLISECONDS, samples);
+				return;
+			} catch (BufferFullException e) {
+				if (attempt >= RETRY_LIMIT) throw e;
+				LOGGER.debug("Data archive is full; retrying in {} ms", delay);
+				Thread.sleep(delay);
+				delay = Math.min(delay * 2, RETRY_DELAY_LIMIT);
+			}
+		}
+	}
+	
+	/**
+	 * @param value the value of a sample
+	 * @return the sample's rendering info, in the form stored by the archive
+	 */
+	static String formatRenderingInfo(String value) {
+		return RENDERING_INFO != null ? RENDERING_INFO[0] + value + RENDERING_INFO[1] : getRenderingInfo(value);
+	}
+	
+	static String getRenderingInfo(String value) {
+		RenderingInfo ri = new RenderingInfo(value, Color.ORANGE, " ", Color.ORANGE, true);
+		ri.setPlottable(true);
+		return ri.toString();
+	}
+	
+	private static String[] getRenderingInfoTemplate() {
+		String placeholder = "\u0000";
+		String template = getRenderingInfo(placeholder);
+		int i = template.indexOf(placeholder);
+		if (i < 0 || template.indexOf(placeholder, i + 1) >= 0) return null;
+		return new String[] { template.substring(0, i), template.substring(i + placeholder.length()) };
+	}
+	
+	private void updateEndTime(String feedID, Iterable<Long> times) {
+		long endTime = Long.MIN_VALUE;
+		for (Long time : times) {
+			if (time > endTime) endTime = time;
+		}
+		Long recorded = endTimes.putIfAbsent(feedID, endTime);
+		while (recorded != null && endTime > recorded && !endTimes.replace(feedID, recorded, endTime)) {
+			recorded = endTimes.get(feedID);
+		}
+	}
+}
@@ -21,29 +21,35 @@
  *******************************************************************************/
 package gov.nasa.arc.mct.data.action;
 
-import gov.nasa.arc.mct.api.feed.BufferFullException;
 import gov.nasa.arc.mct.api.feed.FeedDataArchive;
 import gov.nasa.arc.mct.data.access.FeedDataArchiveAccess;
-import gov.nasa.arc.mct.data.component.DataComponent;
 import gov.nasa.arc.mct.data.component.DataTaxonomyComponent;
 import gov.nasa.arc.mct.platform.spi.PlatformAccess;
 
-import java.awt.Color;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.SwingWorker;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import gov.nasa.arc.mct.components.AbstractComponent;
-import gov.nasa.arc.mct.components.FeedProvider;
-import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
 
 /**
  * A SwingWorker responsible for managing the background 
@@ -51,32 +57,52 @@ import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
  * registering endTime in DataTaxonomyComponent (parent) 
  * and saving data to database.  
  * 
+ * Files are divided into segments of up to SEGMENT_SIZE bytes,
+ * which are imported in parallel by {@link DataImportTask}s. 
+ * End times from all segments are merged as batches are stored, 
+ * and recorded on the parent once, when the import is complete, 
+ * fails or is cancelled.
+ * 
  * @author jdong
  *
  */
 public class DataImportWorker extends SwingWorker<Boolean, Void> {
-	private File file;
-	private AbstractComponent parent;
-	private FileNotFoundException fnfException;
-	private BufferFullException bfException;
-	private FeedDataArchive dataArchive = FeedDataArchiveAccess.getDataArchive();
+	private static final Logger LOGGER = LoggerFactory.getLogger(DataImportWorker.class);
 	
-	/**
-	 * used to check whether lines of data belong to the same component,
-	 * essentially used to find last time stamp.
-	 */
-	private String previousID, previousTime;
+	/** size of the byte ranges into which files are divided */
+	private static final long SEGMENT_SIZE = 32L << 20;
 	
-	/**
-	 * monitor the process of reading data from file and writing to disk
-	 */
-	private Boolean success = true;
+	/** interval, in milliseconds, between progress updates */
+	private static final long PROGRESS_INTERVAL = 100;
+	
+	/** time, in milliseconds, to wait for cancelled tasks to finish the batch they are storing */
+	private static final long TERMINATION_TIMEOUT = 5000;
+	
+	private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Data import " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	};
+	
+	private List<File> files;
+	private AbstractComponent parent;
+	private List<Exception> exceptions = new ArrayList<Exception>();
+	private FeedDataArchive dataArchive = FeedDataArchiveAccess.getDataArchive();
 	
 	public DataImportWorker(File file, AbstractComponent parent) {
+		this(Collections.singletonList(file), parent);
+	}
+	
+	public DataImportWorker(List<File> files, AbstractComponent parent) {
 		super();
-		this.file = file;	
+		this.files = files;	
 		this.parent = parent;
-		if ((parent == null) && (file == null)) {
+		if ((parent == null) && (files == null)) {
 			throw new IllegalArgumentException();
 		}
 	}
@@ -84,110 +110,89 @@ public class DataImportWorker extends SwingWorker<Boolean, Void> {
 	@Override
 	protected Boolean doInBackground() throws Exception {
 		setProgress(0);		
-		Boolean success = readFile(file);
+		Boolean success = readFiles(files);
 		setProgress(100);
 		
 		return success & !isCancelled();
 	}
 	
-	private Boolean readFile(File file) {
-		Scanner fileScanner = null;
+	private Boolean readFiles(List<File> files) throws InterruptedException {
+		boolean success = true;
+		AtomicLong bytesRead = new AtomicLong();
+		long total = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, THREAD_FACTORY);
+		CompletionService<Void> completion = new ExecutorCompletionService<Void>(executor);
+		ConcurrentHashMap<String, Long> endTimes = new ConcurrentHashMap<String, Long>();
 		
 		try {
-			fileScanner = new Scanner(file);
-		} catch (FileNotFoundException e) {
-			fnfException = e;
-			success = false;
-			e.printStackTrace();
-		} finally {
-			success = (fileScanner != null);
-		}
-		
-		if (success) {
-			String line = fileScanner.nextLine();		
-			readFirstLine(line);
+			int tasks = 0;
+			for (File file : files) {
+				if (!file.isFile()) {
+					exceptions.add(new FileNotFoundException(file.getPath()));
+					success = false;
+					continue;
+				}
+				long length = file.length();
+				for (long start = 0; start < length; start += SEGMENT_SIZE) {
+					completion.submit(new DataImportTask(file, start, start + SEGMENT_SIZE, dataArchive, bytesRead, endTimes));
+					tasks++;
+				}
+				total += length;
+			}
 			
-			while (success && fileScanner.hasNextLine()) {
-				line = fileScanner.nextLine();
-				saveData(line);						
-			}	
+			while (tasks > 0 && !isCancelled()) {
+				Future<Void> done = completion.poll(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+				if (done != null) {
+					tasks--;
+					try {
+						done.get();
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						exceptions.add(cause instanceof Exception ? (Exception) cause : e);
+						success = false;
+						LOGGER.warn("Could not import data", cause);
+					}
+				}
+				setProgress((int) Math.min(99, 100 * bytesRead.get() / Math.max(1, total)));
+			}
+		} finally {
+			executor.shutdownNow();
+			awaitTermination(executor);
 			
-			// process the last line of file
-			setEndTime(previousID, previousTime);
-			fileScanner.close();
-		}		
+			// record end times of everything which was saved, even if cancelled
+			setEndTimes(endTimes);
+		}
 		
 		return success;
 	}
 	
 	/**
-	 * read first line to initialize previoudID and previousTime,
-	 * and save the data.
-	 * @param firstLine
+	 * wait for tasks to stop, so that no batch is stored after end 
+	 * times are recorded. The interrupt status is kept.
 	 */
-	private void readFirstLine(String firstLine) {
-		Scanner lineScanner = new Scanner(firstLine);
-		lineScanner.useDelimiter(",");
-		previousID = DataComponent.PREFIX + lineScanner.next();
-		previousTime   = lineScanner.next();
-		lineScanner.close();
-
-		saveData(firstLine);
-	}
-	
-    private void saveData(String line) {    	
-    	Scanner lineScanner = new Scanner(line);
-		lineScanner.useDelimiter(",");
-		String feedID = DataComponent.PREFIX + lineScanner.next();
-		String time   = lineScanner.next();
-		String value  = lineScanner.next();
-		lineScanner.close();
-		
-    	Map<String, String> datum = new HashMap<String, String>();
-    	RenderingInfo ri = new RenderingInfo(value, Color.ORANGE, " ", Color.ORANGE, true);;
-    	ri.setPlottable(true);
-    	
-    	// Fill in the normally expected key/value pairs
-	    datum.put(FeedProvider.NORMALIZED_IS_VALID_KEY, Boolean.TRUE.toString());   
-	    datum.put(FeedProvider.NORMALIZED_RENDERING_INFO, ri.toString());
-	    datum.put(FeedProvider.NORMALIZED_TIME_KEY, String.valueOf(time));
-	    datum.put(FeedProvider.NORMALIZED_VALUE_KEY, value);
-	   
-	    if (dataArchive != null) {
-	    	try {
-				dataArchive.putData(feedID, TimeUnit.MILLISECONDS, Long.parseLong(time), datum);
-			} catch (BufferFullException e) {
-				success = false;
-				bfException = e;
-				e.printStackTrace();
-			} catch (Exception e) {
-				e.printStackTrace();
+	private static void awaitTermination(ExecutorService executor) {
+		boolean interrupted = Thread.interrupted();
+		try {
+			if (!executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				LOGGER.warn("Data import tasks did not stop within {} ms", TERMINATION_TIMEOUT);
 			}
-	    }	
-		
-	    // check whether reading data for a new component
-	    if (isEndTime(feedID)) setEndTime(feedID, time);
-	    
-	    previousID = feedID;
-	    previousTime = time;
-    }
-    
-    private Boolean isEndTime(String feedID) {
-    	return !feedID.equals(previousID);
-    }
+		} catch (InterruptedException e) {
+			interrupted = true;
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
 
-    private void setEndTime(String id, String time) { 	
-    	assert parent instanceof DataTaxonomyComponent;
-    	((DataTaxonomyComponent)parent).setTimeStamp(id, time);
-    	// since model is changed, needs to save into database
-    	PlatformAccess.getPlatform().getPersistenceProvider().persist(Collections.singleton(parent));
-    }
+	private void setEndTimes(Map<String, Long> endTimes) {
+		if (endTimes.isEmpty()) return;
+		assert parent instanceof DataTaxonomyComponent;
+		((DataTaxonomyComponent)parent).setTimeStamps(endTimes);
+		// since model is changed, needs to save into database
+		PlatformAccess.getPlatform().getPersistenceProvider().persist(Collections.singleton(parent));
+	}
 
 	public List<Exception> getException() {
-		List<Exception> exceptions = new ArrayList<Exception> ();
-		if (fnfException != null) exceptions.add(fnfException);
-		if (bfException != null ) exceptions.add(bfException);
-	    return exceptions;
-		
+		return exceptions;
 	}
 }
@@ -29,6 +29,7 @@ import java.awt.Component;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -52,22 +53,32 @@ public class DataImporter {
 	private AbstractComponent parent;
 	
 	/** 
-	 * A file containing a list of TLE data (ID, timeStamp and value) 
+	 * Files containing a list of TLE data (ID, timeStamp and value) 
 	 * that will be saved into database.
 	 */ 
-	private File file;
+	private List<File> files;
 	
 	/**
 	 * Create a new DataImporter.
 	 * @param manifestation the associated View on which the action is performed
 	 * @param parent the parent component which stores endTimeStamp of its children
-	 * @param files the file to read
+	 * @param file the file to read
 	 */
 	public DataImporter(View manifestation, AbstractComponent parent, File file) {
+		this(manifestation, parent, Collections.singletonList(file));
+	}
+	
+	/**
+	 * Create a new DataImporter for several files.
+	 * @param manifestation the associated View on which the action is performed
+	 * @param parent the parent component which stores endTimeStamp of its children
+	 * @param files the files to read
+	 */
+	public DataImporter(View manifestation, AbstractComponent parent, List<File> files) {
 		super();
 		this.component = manifestation;
 		this.parent = parent;
-		this.file = file;
+		this.files = files;
 	}
 	
 	/**
@@ -77,7 +88,7 @@ public class DataImporter {
 	 * monitor is provided if necessary.
 	 */
 	public void importData() {
-		final DataImportWorker worker = new DataImportWorker(file, parent);
+		final DataImportWorker worker = new DataImportWorker(files, parent);
 		final ProgressMonitor monitor = new ProgressMonitor(component,
 				BundleAccess.BUNDLE.getString("import_progress_message"), 
 				"", 0, 100);
@@ -21,6 +21,7 @@
  *******************************************************************************/
 package gov.nasa.arc.mct.data.component;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import gov.nasa.arc.mct.components.AbstractComponent;
@@ -46,6 +47,15 @@ public class DataTaxonomyComponent extends AbstractComponent implements Bootstra
 		model.set(getModel().setTime(id, endTime));		
 	}
 	
+	/**
+	 * Record end times for several feeds at once. Existing end 
+	 * times are only moved later.
+	 * @param endTimes the last time stamp of each feed, by feed ID
+	 */
+	public void setTimeStamps(Map<String, Long> endTimes) {
+		model.set(getModel().mergeTimes(endTimes));
+	}
+	
 	public Boolean hasTimeStamp(String id) {	
 		return getModel().contains(id);
 	}
@@ -33,6 +33,16 @@ public class DataTaxonomyModel {
 		return this;
 	}
 	
+	public DataTaxonomyModel mergeTimes(Map<String, Long> times) {
+		for (Map.Entry<String, Long> entry : times.entrySet()) {
+			Long time = endTimeMap.get(entry.getKey());
+			if (time == null || entry.getValue() > time) {
+				endTimeMap.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return this;
+	}
+	
 	public Boolean contains(String id) {
 		return endTimeMap.containsKey(id);
 	}
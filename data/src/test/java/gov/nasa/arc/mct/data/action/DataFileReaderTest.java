@@ -0,0 +1,171 @@
+package gov.nasa.arc.mct.data.action;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class DataFileReaderTest {
+	private File file;
+
+	@AfterMethod
+	public void teardown() {
+		if (file != null) file.delete();
+	}
+
+	@Test
+	public void testFields() throws IOException {
+		write("a,1,2.5\n\nb,-20,x,extra\r\n,,\nlast,+3,");
+		DataFileReader reader = new DataFileReader(file);
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(reader.getFieldCount(), 3);
+		Assert.assertEquals(reader.getField(0), "a");
+		Assert.assertEquals(reader.getLong(1), 1L);
+		Assert.assertEquals(reader.getField(2), "2.5");
+
+		// The blank line is skipped, and the carriage return is not part of the row
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(reader.getFieldCount(), 4);
+		Assert.assertEquals(reader.getLong(1), -20L);
+		Assert.assertEquals(reader.getField(3), "extra");
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(reader.getFieldCount(), 3);
+		Assert.assertEquals(reader.getField(1), "");
+
+		// The last row has no terminator
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(reader.getFieldCount(), 3);
+		Assert.assertEquals(reader.getLong(1), 3L);
+		Assert.assertEquals(reader.getField(2), "");
+		Assert.assertFalse(reader.next());
+		Assert.assertFalse(reader.next());
+		Assert.assertEquals(reader.getPosition(), reader.getSize());
+		reader.close();
+	}
+
+	@Test
+	public void testLongs() throws IOException {
+		write("0,9223372036854775807,-9223372036854775808,123456789012345678,1x,,-,2.0");
+		DataFileReader reader = new DataFileReader(file);
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(reader.getLong(0), 0L);
+		Assert.assertEquals(reader.getLong(1), Long.MAX_VALUE);
+		Assert.assertEquals(reader.getLong(2), Long.MIN_VALUE);
+		Assert.assertEquals(reader.getLong(3), 123456789012345678L);
+		for (int i = 4; i < 8; i++) {
+			try {
+				reader.getLong(i);
+				Assert.fail("Parsed " + reader.getField(i));
+			} catch (NumberFormatException expected) {
+			}
+		}
+		reader.close();
+	}
+
+	@Test (expectedExceptions = IndexOutOfBoundsException.class)
+	public void testMissingField() throws IOException {
+		write("a,b\n");
+		DataFileReader reader = new DataFileReader(file);
+		try {
+			Assert.assertTrue(reader.next());
+			reader.getField(2);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testLongRow() throws IOException {
+		// Rows longer than the read buffer, and rows straddling its boundary
+		char[] text = new char[200000];
+		Arrays.fill(text, 'v');
+		StringBuilder content = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			String value = i % 1000 == 0 ? new String(text, 0, 1000 * i / 50 + 1) : "value" + i;
+			content.append("feed,").append(i).append(',').append(value).append('\n');
+			expected.add(value);
+		}
+		write(content.toString());
+		Assert.assertEquals(readValues(new DataFileReader(file)), expected);
+	}
+
+	@Test
+	public void testRanges() throws IOException {
+		StringBuilder content = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			content.append("f,").append(i).append(',').append(i % 13 == 0 ? "" : "v" + i).append(i % 7 == 0 ? "\r\n" : "\n");
+			if (i % 11 == 0) content.append('\n');
+			expected.add(i % 13 == 0 ? "" : "v" + i);
+		}
+		write(content.toString());
+		long size = file.length();
+
+		// However the file is split, every row is read exactly once
+		for (int split = 1; split < size; split += 17) {
+			List<String> values = readValues(new DataFileReader(file, 0, split));
+			values.addAll(readValues(new DataFileReader(file, split, Long.MAX_VALUE)));
+			Assert.assertEquals(values, expected, "Split at " + split);
+		}
+		for (int pieces = 2; pieces < 40; pieces += 7) {
+			List<String> values = new ArrayList<String>();
+			long total = 0;
+			for (int p = 0; p < pieces; p++) {
+				DataFileReader reader = new DataFileReader(file, size * p / pieces, size * (p + 1) / pieces);
+				values.addAll(readValues(reader));
+				Assert.assertEquals(reader.getPosition(), reader.getSize());
+				total += reader.getSize();
+			}
+			Assert.assertEquals(values, expected, pieces + " pieces");
+			Assert.assertEquals(total, size);
+		}
+
+		// A range past the end is empty
+		Assert.assertTrue(readValues(new DataFileReader(file, size + 10, size + 20)).isEmpty());
+	}
+
+	@Test
+	public void testPosition() throws IOException {
+		write("a,1,x\nb,2,y\n");
+		DataFileReader reader = new DataFileReader(file);
+		Assert.assertEquals(reader.getPosition(), 0L);
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(reader.getPosition(), 5L);
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(reader.getPosition(), 11L);
+		Assert.assertFalse(reader.next());
+		Assert.assertEquals(reader.getPosition(), 12L);
+		reader.close();
+	}
+
+	private List<String> readValues(DataFileReader reader) throws IOException {
+		List<String> values = new ArrayList<String>();
+		try {
+			while (reader.next()) {
+				Assert.assertEquals(reader.getFieldCount(), 3);
+				values.add(reader.getField(2));
+			}
+		} finally {
+			reader.close();
+		}
+		return values;
+	}
+
+	private void write(String content) throws IOException {
+		file = File.createTempFile("data", ".csv");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+}
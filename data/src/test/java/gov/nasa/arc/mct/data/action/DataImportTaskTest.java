@@ -0,0 +1,89 @@
+package gov.nasa.arc.mct.data.action;
+
+import gov.nasa.arc.mct.api.feed.FeedDataArchive;
+import gov.nasa.arc.mct.components.AbstractComponent;
+import gov.nasa.arc.mct.data.access.FeedDataArchiveAccess;
+import gov.nasa.arc.mct.data.component.DataComponent;
+import gov.nasa.arc.mct.data.component.DataTaxonomyComponent;
+import gov.nasa.arc.mct.platform.spi.Platform;
+import gov.nasa.arc.mct.platform.spi.PlatformAccess;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DataImportTaskTest {
+	private File file;
+	private FeedDataArchive archive;
+
+	@BeforeMethod
+	public void setup() throws Exception {
+		// One feed, in more rows than a batch; the archive stores the first batch, then fails
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 15000; i++) {
+			content.append("feed,").append(i).append(",1.5\n");
+		}
+		file = File.createTempFile("data", ".csv");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		archive = Mockito.mock(FeedDataArchive.class);
+		Mockito.doNothing().doThrow(new IllegalStateException("Archive failed")).when(archive)
+				.putData(Mockito.anyString(), Mockito.eq(TimeUnit.MILLISECONDS), Mockito.<Map<Long, Map<String, String>>>any());
+	}
+
+	@AfterMethod
+	public void teardown() {
+		file.delete();
+		new FeedDataArchiveAccess().releaseDataArchive(archive);
+		new PlatformAccess().releasePlatform();
+	}
+
+	@Test
+	public void testEndTimesKeptOnFailure() throws IOException {
+		ConcurrentHashMap<String, Long> endTimes = new ConcurrentHashMap<String, Long>();
+		try {
+			new DataImportTask(file, 0, Long.MAX_VALUE, archive, new AtomicLong(), endTimes).call();
+			Assert.fail();
+		} catch (Exception expected) {
+			Assert.assertEquals(expected.getMessage(), "Archive failed");
+		}
+		Assert.assertEquals(endTimes, Collections.singletonMap(DataComponent.PREFIX + "feed", 9999L));
+	}
+
+	@Test
+	public void testEndTimesReachParent() throws Exception {
+		new FeedDataArchiveAccess().setDataArchive(archive);
+		Platform platform = Mockito.mock(Platform.class, Mockito.RETURNS_DEEP_STUBS);
+		new PlatformAccess().setPlatform(platform);
+		DataTaxonomyComponent parent = new DataTaxonomyComponent();
+
+		DataImportWorker worker = new DataImportWorker(file, parent);
+		Assert.assertFalse(worker.doInBackground());
+		Assert.assertEquals(worker.getException().size(), 1);
+		Assert.assertEquals(parent.getTimeStamp(DataComponent.PREFIX + "feed"), 9999L);
+		Mockito.verify(platform.getPersistenceProvider()).persist(Collections.<AbstractComponent>singleton(parent));
+	}
+
+	@Test
+	public void testRenderingInfo() {
+		// Formatting around a placeholder must give what RenderingInfo itself would
+		for (String value : new String[] { "1.5", "", "-0", "text with spaces", "\u00b0" }) {
+			Assert.assertEquals(DataImportTask.formatRenderingInfo(value), DataImportTask.getRenderingInfo(value));
+		}
+	}
+}
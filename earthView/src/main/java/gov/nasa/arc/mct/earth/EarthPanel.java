@@ -1,9 +1,11 @@
 package gov.nasa.arc.mct.earth;
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
@@ -11,12 +13,16 @@ import java.awt.event.MouseWheelListener;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.imageio.ImageIO;
 import javax.swing.JComponent;
@@ -26,9 +32,31 @@ import javax.swing.JPanel;
 
 public class EarthPanel extends JPanel {
 	private static final long serialVersionUID = 5022663186983216966L;
-	private static BufferedImage image = null;
-	private BufferedImage[] render    = { new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB),  new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB) };
-	private int             visible   = 0; // Index to on-screen buffer; offscreen = 1^visible
+	private static final int SPARE_BUFFERS = 4;
+	private static final double FRAME_TIME = 1000.0 / 30.0; // Longest render while dragging, in ms
+	private static final int MAX_HISTORY = 200; // Points in each trail
+	private static final int TRAIL_SLACK = 20;  // Points trimmed per trail before the trail layer is redrawn
+	
+	private static BufferedImage    image      = null;
+	private static SphereRasterizer rasterizer = null;
+	
+	// Globes are rendered on the renderer threads, and handed to the EDT through rendered;
+	// the EDT hands back images it no longer shows through spares
+	private final AtomicReference<SphereRasterizer.Frame> current  = new AtomicReference<SphereRasterizer.Frame>();
+	private final AtomicReference<Globe>                  rendered = new AtomicReference<Globe>();
+	private final Queue<BufferedImage>                    spares   = new ConcurrentLinkedQueue<BufferedImage>();
+	private Globe shown = null; // On screen; used only by the EDT
+	
+	// Layers, composited on each paint: the globe on black, redrawn only when the view
+	// or globe changes, and the trails, to which new segments are added as they arrive
+	private BufferedImage background = null;
+	private BufferedImage trails     = null;
+	private Globe         backgroundGlobe = null;
+	private double[]      backgroundView  = null;
+	private double[]      trailView       = null;
+	private int           trimmed         = 0; // Points trimmed from trails since the trail layer was drawn
+	
+	private final PaintMonitor monitor = new PaintMonitor();
 	
 	private double xr   = 0.0;
 	private double yr   = 0.0;
@@ -43,6 +71,9 @@ public class EarthPanel extends JPanel {
 	
 	private List<ViewChangeListener> listeners = new ArrayList<ViewChangeListener>();
 	
+	private final double[] p1 = new double[3]; // Buffers for transformed points
+	private final double[] p2 = new double[3];
+	
 	private static final Color[] COLORS = {
 		Color.YELLOW,
 		Color.ORANGE,
@@ -56,6 +87,7 @@ public class EarthPanel extends JPanel {
 		if (image == null) {
 			try {
 				image = ImageIO.read(getClass().getResourceAsStream("images/world.jpg"));
+				if (image != null) rasterizer = new SphereRasterizer(image);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -132,60 +164,113 @@ public class EarthPanel extends JPanel {
 	
 	@Override
 	public void paint(Graphics g) {
+		monitor.start();
+		
+		Globe globe = rendered.getAndSet(null);
+		if (globe != null) {
+			if (shown != null) recycle(shown.image);
+			shown = globe;
+		}
+		
 		double scale = zoom * (double) Math.min(getWidth(), getHeight());
 		render(((int) scale) >> depth);
 
 		int x = getWidth() / 2  + (int) (px * scale);
 		int y = getHeight() / 2 + (int) (py * scale);
-		g.setColor(Color.BLACK);
-		g.fillRect(0, 0, getWidth(), getHeight());
 		
-		while (!rendering.compareAndSet(false, true));
-		g.drawImage(render[visible], x - (int)scale/2, y - (int)scale/2, (int)scale, (int)scale, this);
-		rendering.set(false);
+		double[] placement = { getWidth(), getHeight(), x, y, scale };
+		if (background == null || backgroundGlobe != shown || !Arrays.equals(placement, backgroundView)) {
+			background = layer(background, BufferedImage.TYPE_INT_RGB);
+			Graphics bg = background.getGraphics();
+			bg.setColor(Color.BLACK);
+			bg.fillRect(0, 0, getWidth(), getHeight());
+			if (shown != null) {
+				bg.drawImage(shown.image, x - (int)scale/2, y - (int)scale/2, (int)scale, (int)scale, null);
+			}
+			bg.dispose();
+			backgroundGlobe = shown;
+			backgroundView  = placement;
+		}
 
-		int c = 0;
+		// Rotation for this frame: cos and sin of -yr, then of -xr
+		double[] rotation = { Math.cos(-yr), Math.sin(-yr), Math.cos(-xr), Math.sin(-xr) };
+		
+		// Add new positions to the trails, then add their segments to the trail layer,
+		// or redraw it entirely if the view has changed or enough old points have gone
+		Set<JComponent> added = new HashSet<JComponent>();
 		for (Entry<JComponent, Trajectory> entry : trajectories.entrySet()) {
-			Color color = COLORS[(c++) % COLORS.length];
-			Trajectory traj = entry.getValue();
-//			Vector position = transform (traj.getPosition());
-//			Vector p2       = transform( traj.getPosition().add( traj.getVelocity().multiply(100.0) ) );
-			
 			if (!histories.containsKey(entry.getKey())) {
 				histories.put(entry.getKey(), new ArrayList<Vector>());
 			}
 			
 			List<Vector> history = histories.get(entry.getKey());
 						
-			Vector position = traj.getPosition();
+			Vector position = entry.getValue().getPosition();
 			if (history.isEmpty() || !history.get(history.size() - 1).equals(position)) {
 				if (position.magnitude() > 0) {
 					history.add(position);
+					added.add(entry.getKey());
 				}
 			}
-			while (history.size() > 200) history.remove(0);
-			
+			if (history.size() > MAX_HISTORY) {
+				history.remove(0);
+				trimmed++;
+			}
+		}
+		double[] view = { getWidth(), getHeight(), x, y, scale, xr, yr };
+		boolean redraw = trails == null || !Arrays.equals(view, trailView) ||
+		                 trimmed > TRAIL_SLACK * Math.max(1, trajectories.size());
+		if (redraw) {
+			trails = layer(trails, BufferedImage.TYPE_INT_ARGB);
+			trailView = view;
+			trimmed = 0;
+		}
+		Graphics tg = trails.getGraphics();
+		
+		int c = 0;
+		for (Entry<JComponent, Trajectory> entry : trajectories.entrySet()) {
+			Color color = COLORS[(c++) % COLORS.length];
+			List<Vector> history = histories.get(entry.getKey());
 			if (history.isEmpty()) continue;
 			
-			Vector p1, p2;
-			p1 = transform(history.get(0));
-			int x1 = 0, y1 = 0, x2 = 0, y2 = 0;
-			for (Vector vec : history) {
-				p2 = transform(vec);
-				x1 = x + (int) (p1.getX() * scale / 2.0);
-				y1 = y + (int) (p1.getY() * scale / 2.0); 
-				x2 = x + (int) (p2.getX() * scale / 2.0);
-				y2 = y + (int) (p2.getY() * scale / 2.0);
-				g.setColor(p1.getZ() < 0 ? color : color.darker().darker());
-				g.drawLine(x1, y1, x2, y2);
-				p1 = p2;
+			// Draw every segment, or only the one just added
+			boolean append = added.contains(entry.getKey());
+			int first = redraw ? 0 : Math.max(0, history.size() - 2);
+			
+			Color dark = color.darker().darker();
+			double[] p1 = transform(history.get(first), rotation, this.p1);
+			double[] p2 = this.p2;
+			int x1 = x + (int) (p1[0] * scale / 2.0);
+			int y1 = y + (int) (p1[1] * scale / 2.0);
+			Color last = p1[2] < 0 ? color : dark;
+			if (redraw || append) {
+				for (int i = first; i < history.size(); i++) {
+					transform(history.get(i), rotation, p2);
+					x1 = x + (int) (p1[0] * scale / 2.0);
+					y1 = y + (int) (p1[1] * scale / 2.0); 
+					int x2 = x + (int) (p2[0] * scale / 2.0);
+					int y2 = y + (int) (p2[1] * scale / 2.0);
+					tg.setColor(last = p1[2] < 0 ? color : dark);
+					tg.drawLine(x1, y1, x2, y2);
+					double[] swap = p1;
+					p1 = p2;
+					p2 = swap;
+				}
+			} else if (history.size() > 1) {
+				// Nothing new; only the label's color and position are needed
+				transform(history.get(history.size() - 2), rotation, p2);
+				x1 = x + (int) (p2[0] * scale / 2.0);
+				y1 = y + (int) (p2[1] * scale / 2.0);
+				last = p2[2] < 0 ? color : dark;
 			}
 			JComponent representation = entry.getKey();
 			representation.setLocation(x1 - 10, y1 - 10);
-			representation.setForeground(g.getColor());
-
-			//g.drawString(entry.getKey(), x1, y1);
+			representation.setForeground(last);
 		}
+		tg.dispose();
+		
+		g.drawImage(background, 0, 0, null);
+		g.drawImage(trails, 0, 0, null);
 		
 		if (depth > 0) {
 			depth--;
@@ -194,20 +279,24 @@ public class EarthPanel extends JPanel {
 		
 		super.paint(g);
 		
-//		int midx = getWidth()  / 2;
-//		int midy = getHeight() / 2;
-//		
-
-//		
-//		double low  = -scale;
-//		double high =  scale;
-//		
-//		for (int u = (int) low; u < high; u++ ) {
-//			for (int v = (int) low; v < high; v++) {
-//				g.setColor(getColor((double) u / scale, (double) v / scale));
-//				g.fillRect(u + midx, v + midy, 1, 1);
-//			}
-//		}
+		monitor.stop(g);
+	}
+	
+	/*
+	 * An image the size of this panel, reusing the given one if it is the same size
+	 * (and clearing it, if it has an alpha channel)
+	 */
+	private BufferedImage layer(BufferedImage old, int type) {
+		if (old == null || old.getWidth() != getWidth() || old.getHeight() != getHeight()) {
+			return new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), type);
+		}
+		if (old.getColorModel().hasAlpha()) {
+			Graphics2D g = old.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, old.getWidth(), old.getHeight());
+			g.dispose();
+		}
+		return old;
 	}
 	
 	
@@ -217,40 +306,59 @@ public class EarthPanel extends JPanel {
 //		g.drawLine(x1, y1, x2, y2);
 //	}
 	
+	/*
+	 * Start rendering the globe at the given size, unless it has already been rendered 
+	 * with the current view. A smaller frame (as while dragging) replaces one in progress;
+	 * other requests wait for the next paint after the current frame is done.
+	 */
 	private void render(int sz) {
-		if (sz > 0) new Renderer(sz).render();
+		if (sz <= 0 || rasterizer == null) return;
+		Globe pending = rendered.get();
+		if (shown   != null && shown.frame.matches(sz, xr, yr))   return;
+		if (pending != null && pending.frame.matches(sz, xr, yr)) return;
+		SphereRasterizer.Frame frame = new SphereRasterizer.Frame(sz, xr, yr);
+		SphereRasterizer.Frame other = current.get();
+		if (other == null) {
+			if (current.compareAndSet(null, frame)) start(frame);
+		} else if (other.size > sz) {
+			if (current.compareAndSet(other, frame)) {
+				other.cancel();
+				start(frame);
+			}
+		}
 	}
 	
-	private int getColor(double x, double y) {
-		if (x*x + y*y > 1.0) return 0;
-		
-		double z = -Math.sqrt(1.0 - x*x - y*y);
-		
-		double t, u, v;
-		
-		t = xr;//Math.PI / 8;
-		v = y;
-		y = y * Math.cos(t) + z * Math.sin(t);
-		z = z * Math.cos(t) - v * Math.sin(t);
-		t = yr;//-Math.PI / 8;
-		u = x;
-		x = x * Math.cos(t) + z * Math.sin(t);
-		z = z * Math.cos(t) - u * Math.sin(t);
-
-		u = x;
-		t = 0; //-(double) System.currentTimeMillis() / 2500.0;
-		x = x * Math.cos(t) - z * Math.sin(t);
-		z = z * Math.cos(t) + u * Math.sin(t);
-		
-		double xx = x / Math.sqrt(x*x + z*z);
-		u = 0.5 + Math.signum(z) * 0.5 * Math.acos(xx) / Math.PI;
-		v = 1.0 - Math.acos(y) / Math.PI;	
-
-		
-//		double x = (theta + 1.0) / 2.0;
-//		double y = (v     + 1.0) / 2.0;
-//		
-		return image.getRGB((int) (u * (image.getWidth()-1)), (int) (v * (image.getHeight()-1)));
+	private void start(final SphereRasterizer.Frame frame) {
+		SphereRasterizer.execute(new Runnable() {
+			@Override
+			public void run() {
+				BufferedImage target = null;
+				for (BufferedImage spare : spares) {
+					if (spare.getWidth() == frame.size && spares.remove(spare)) {
+						target = spare;
+						break;
+					}
+				}
+				if (target == null) {
+					target = new BufferedImage(frame.size, frame.size, BufferedImage.TYPE_INT_RGB);
+				}
+				
+				if (rasterizer.render(frame, target) && current.compareAndSet(frame, null)) {
+					// If the EDT has not yet taken the last globe, it never will
+					Globe skipped = rendered.getAndSet(new Globe(frame, target));
+					if (skipped != null) recycle(skipped.image);
+					repaint();
+				} else {
+					current.compareAndSet(frame, null);
+					recycle(target);
+				}
+			}
+		});
+	}
+	
+	private void recycle(BufferedImage image) {
+		spares.offer(image);
+		while (spares.size() > SPARE_BUFFERS) spares.poll();
 	}
 	
 	@Override
@@ -258,86 +366,27 @@ public class EarthPanel extends JPanel {
 		return new Dimension(0,0);
 	}
 
-	private AtomicBoolean rendering = new AtomicBoolean(false);
-	private AtomicInteger current   = new AtomicInteger(-1);
-	private class Renderer extends Thread {
-		private int sz;		
-		
-		public Renderer (int sz) {
-			this.sz = sz;
-		}
-		
-		public void render() {
-			//if (busy.compareAndSet(false, true)) {
-			if (current.compareAndSet(-1, sz)) {
-				start();
-			} else {
-				int other = current.get();
-				if (other > sz) {
-					if (current.compareAndSet(other, sz)) {
-						start();
-					}
-				}
-			}
-			//}
-		}
-		public void run() {
-			BufferedImage r;
-
-			if (render[1^visible].getWidth() != sz || render[1^visible].getHeight() != sz) {
-				if (render[1^visible].getWidth() > sz && render[1^visible].getHeight() > sz) {
-					render[1^visible] = render[1^visible].getSubimage(0, 0, sz, sz);
-				} else {
-					render[1^visible] = new BufferedImage(sz, sz, BufferedImage.TYPE_INT_RGB);
-				}
-			}
-			
-			r = render[1^visible]; //new BufferedImage(sz, sz, BufferedImage.TYPE_INT_RGB);
-			
-			double x = -1.0;
-			double y = -1.0;
-			double delta = 2.0 / (double) sz;
-			
-			for (int v = 0; v < sz; v++ ) {
-				for (int u = 0; u < sz; u++) {
-					r.setRGB(u, v, getColor(x, y));
-					x += delta;
-					if (current.get() != sz) return;
-				}
-				x = -1.0;
-				y += delta;
-			}
-
-			if (!current.compareAndSet(sz, -2)) return;
-			while (!rendering.compareAndSet(false, true));
-			visible = 1^visible;
-			rendering.set(false);
-			current.set(-1);
-			
-			//busy.set(false);
-			repaint();
-		}
+	/*
+	 * Transform a position (ECEF, km) to view coordinates, where the earth is 
+	 * the unit sphere. The rotation holds the cosine and sine of -yr, then -xr.
+	 */
+	static double[] transform (Vector vec, double[] rotation, double[] out) {
+		double s = 1.0 / 6371.0;
+		Vector.set(out, 0, vec.getX() * s, -(vec.getZ() * s), vec.getY() * s);
+		Vector.rotate(out, 0, 0, 2, rotation[0], rotation[1]);
+		Vector.rotate(out, 0, 1, 2, rotation[2], rotation[3]);
+		return out;
 	}
 	
-	private Vector transform (Vector vec) {
-		vec = vec.multiply(1.0 / 6371.0);
-		double x = vec.getX();
-		double z = vec.getY();
-		double y = -vec.getZ();
-		
-		double t, u, v;
-		
-		t = -yr;//-Math.PI / 8;
-		u = x;
-		x = x * Math.cos(t) + z * Math.sin(t);
-		z = z * Math.cos(t) - u * Math.sin(t);
-		
-		t = -xr;//Math.PI / 8;
-		v = y;
-		y = y * Math.cos(t) + z * Math.sin(t);
-		z = z * Math.cos(t) - v * Math.sin(t);
-		
-		return new Vector (x, y, z);
+	/*
+	 * Render the next frames at a lower resolution, if need be to keep up
+	 * with the view while it changes; each paint then refines it by one step.
+	 */
+	private void coarsen() {
+		if (rasterizer == null) return;
+		int sz = (int) (Math.min(getWidth(), getHeight()) * zoom);
+		depth = 0;
+		while (sz >> depth > 1 && rasterizer.estimate(sz >> depth) > FRAME_TIME) depth++;
 	}
 	
 	private void fireViewChanged() {
@@ -365,12 +414,11 @@ public class EarthPanel extends JPanel {
 					zoom *= Math.pow(2.00, -r);
 					if (zoom > 2.00) zoom = 2.00;
 					if (zoom < 0.01) zoom = 0.01;
+					coarsen();
 				} else {				
 					xr += 3.0 * (double) dy / (double) getHeight();
 					yr += 3.0 * (double) dx / (double) getWidth() * Math.signum(Math.cos(xr));
-					int sz = (int) (Math.min(getWidth(), getHeight()) * zoom);
-					depth = 0;
-					while (sz >> depth > 200) depth++;
+					coarsen();
 				}
 				repaint();
 			}
@@ -395,11 +443,25 @@ public class EarthPanel extends JPanel {
 			zoom *= Math.pow(1.05, -r);
 			if (zoom > 2.00) zoom = 2.00;
 			if (zoom < 0.01) zoom = 0.01;
+			coarsen();
 			repaint();
 		}
 		
 	}
 	
+	/*
+	 * A rendered globe, and the frame it shows
+	 */
+	private static class Globe {
+		final SphereRasterizer.Frame frame;
+		final BufferedImage          image;
+		
+		Globe(SphereRasterizer.Frame frame, BufferedImage image) {
+			this.frame = frame;
+			this.image = image;
+		}
+	}
+	
 	public interface ViewChangeListener {
 		public void viewChanged(double xr, double yr, double px, double py, double zoom);
 	}
@@ -0,0 +1,73 @@
+package gov.nasa.arc.mct.earth;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how often a panel paints, how long each paint takes, and
+ * how much of the painting thread's CPU time goes to painting, and
+ * draws these as an overlay. Figures are averaged over one second.
+ *
+ * Enabled by setting the system property mct.paint.statistics to true;
+ * otherwise every method returns immediately.
+ */
+class PaintMonitor {
+	public static final String ENABLED_PROPERTY = "mct.paint.statistics";
+
+	private static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+	private static final long    WINDOW  = 1000000000L; // ns
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final boolean      cpu     = ENABLED && threads.isCurrentThreadCpuTimeSupported();
+
+	private long windowStart = 0;
+	private long paintStart, paintCpuStart;
+	private int  paints      = 0;
+	private long paintTime   = 0, paintCpu = 0;
+
+	private String summary = "";
+
+	/**
+	 * Note the start of a paint.
+	 */
+	public void start() {
+		if (!ENABLED) return;
+		paintStart = System.nanoTime();
+		if (cpu) paintCpuStart = threads.getCurrentThreadCpuTime();
+		if (windowStart == 0) windowStart = paintStart;
+	}
+
+	/**
+	 * Note the end of a paint (begun on the same thread), and draw the
+	 * overlay.
+	 * @param g the graphics context being painted
+	 */
+	public void stop(Graphics g) {
+		if (!ENABLED) return;
+		long now = System.nanoTime();
+		paints++;
+		paintTime += now - paintStart;
+		if (cpu) paintCpu += threads.getCurrentThreadCpuTime() - paintCpuStart;
+
+		long elapsed = now - windowStart;
+		if (elapsed >= WINDOW) {
+			summary = String.format("%.1f fps  %.1f ms/paint  %s",
+					paints * 1e9 / elapsed,
+					paintTime / 1e6 / paints,
+					cpu ? String.format("%.0f%% CPU", 100.0 * paintCpu / elapsed) : "");
+			windowStart = now;
+			paints      = 0;
+			paintTime   = 0;
+			paintCpu    = 0;
+		}
+
+		int h = g.getFontMetrics().getHeight();
+		int w = g.getFontMetrics().stringWidth(summary);
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, w + 8, h + 4);
+		g.setColor(Color.WHITE);
+		g.drawString(summary, 4, h);
+	}
+}
@@ -0,0 +1,294 @@
+package gov.nasa.arc.mct.earth;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Renders the textured globe seen by an EarthPanel. A frame is divided
+ * into bands of rows, which are shared among a pool of renderer threads
+ * (and the thread asking for the frame); pixels are written directly
+ * to the target image's data buffer.
+ *
+ * The sphere's surface normal at each pixel depends only on the size
+ * of the frame, so it is computed once per size and kept for later
+ * frames. Normals are computed band by band, by the threads rendering
+ * the first frame of a size, so a new size (as when zooming) costs no
+ * more than rendering without them did. A frame then only rotates each
+ * normal by one matrix, and finds its texel through lookup tables for
+ * latitude and longitude (accurate to within a texel, except within a
+ * degree of the poles).
+ */
+class SphereRasterizer {
+	private static final int BAND       = 16;      // Rows per unit of work
+	private static final int THREADS    = Runtime.getRuntime().availableProcessors();
+	private static final int CACHED     = 4;       // Sizes for which normals are kept
+	private static final int LAT_STEPS  = 1 << 16; // Over -1..1 (sine of latitude)
+	private static final int ATAN_STEPS = 1 << 13; // Over 0..1 (tangent)
+	
+	private static final double[] ATAN = new double[ATAN_STEPS + 1];
+	static {
+		for (int i = 0; i <= ATAN_STEPS; i++) {
+			ATAN[i] = Math.atan((i + 0.5) / ATAN_STEPS);
+		}
+	}
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Earth renderer " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final int[] texture;
+	private final int   width;
+	private final int   height;
+	private final int[] rows = new int[LAT_STEPS + 1]; // Offset into the texture, by latitude
+	
+	private final Map<Integer, Normals> normals = new LinkedHashMap<Integer, Normals>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Normals> eldest) {
+			return size() > CACHED;
+		}
+	};
+	
+	private volatile double nanosPerPixel = 100.0; // Estimate, refined as frames complete
+
+	/**
+	 * @param image the texture to wrap around the globe (equirectangular)
+	 */
+	public SphereRasterizer(BufferedImage image) {
+		width   = image.getWidth();
+		height  = image.getHeight();
+		texture = image.getRGB(0, 0, width, height, null, 0, width);
+		for (int i = 0; i <= LAT_STEPS; i++) {
+			double y = Math.min(1.0, -1.0 + (i + 0.5) * 2.0 / LAT_STEPS);
+			double v = 1.0 - Math.acos(y) / Math.PI;
+			rows[i] = (int) (v * (height - 1)) * width;
+		}
+	}
+	
+	/**
+	 * Estimate how long a frame will take to render, from the frames 
+	 * rendered so far (not counting those which computed normals).
+	 * @param size the size of the frame, in pixels (square)
+	 * @return the estimated time, in milliseconds
+	 */
+	public double estimate(int size) {
+		return nanosPerPixel * size * size / 1000000.0;
+	}
+
+	/**
+	 * Run a task on the renderer threads.
+	 * @param task the task to run
+	 */
+	public static void execute(Runnable task) {
+		POOL.execute(task);
+	}
+
+	/**
+	 * Render a frame. Returns when every row has been rendered, or
+	 * when the frame has been cancelled.
+	 * @param frame the frame to render
+	 * @param target an image of type TYPE_INT_RGB, of the frame's size
+	 * @return true if the frame was completed
+	 */
+	public boolean render(final Frame frame, BufferedImage target) {
+		final Normals        n      = getNormals(frame.size);
+		final long           start  = System.nanoTime();
+		final int[]          pixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+		final int            bands  = (frame.size + BAND - 1) / BAND;
+		final AtomicInteger  next   = new AtomicInteger();
+		final CountDownLatch done   = new CountDownLatch(bands);
+		final AtomicBoolean  built  = new AtomicBoolean(false);
+
+		// Threads claim bands until none are left, so the caller never waits
+		// for a band which no thread has started
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int band;
+				while ((band = next.getAndIncrement()) < bands) {
+					if (!frame.isCancelled()) {
+						if (n.build(band)) built.set(true);
+						renderRows(frame, n, pixels, band * BAND, Math.min(frame.size, (band + 1) * BAND));
+					}
+					done.countDown();
+				}
+			}
+		};
+		for (int i = 1; i < Math.min(THREADS, bands); i++) {
+			POOL.execute(worker);
+		}
+		worker.run();
+
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		if (frame.isCancelled()) return false;
+		if (built.get()) return true; // Not representative of later frames
+		
+		double measured = (double) (System.nanoTime() - start) / ((double) frame.size * frame.size);
+		nanosPerPixel = nanosPerPixel * 0.75 + measured * 0.25;
+		return true;
+	}
+	
+	private Normals getNormals(int size) {
+		synchronized (normals) {
+			Normals n = normals.get(size);
+			if (n == null) normals.put(size, n = new Normals(size)); // Computed as rendered
+			return n;
+		}
+	}
+
+	private void renderRows(Frame frame, Normals n, int[] pixels, int first, int last) {
+		int      sz    = frame.size;
+		int      maxU  = width - 1;
+		double[] m     = frame.matrix;
+		double   scale = maxU / (2.0 * Math.PI);
+		double   half  = LAT_STEPS / 2.0;
+
+		for (int row = first; row < last; row++) {
+			if (frame.isCancelled()) return;
+			double y     = n.y[row];
+			int    p     = row * sz;
+			int    start = n.start[row];
+			int    end   = n.end[row];
+			Arrays.fill(pixels, p, p + start, 0);
+			Arrays.fill(pixels, p + end, p + sz, 0);
+			for (int col = start; col < end; col++) {
+				double x = n.x[col];
+				double z = n.z[p + col];
+				
+				double rx = m[0] * x + m[1] * y + m[2] * z;
+				double ry =            m[4] * y + m[5] * z;
+				double rz = m[6] * x + m[7] * y + m[8] * z;
+				
+				// Longitude, as atan2(rz, rx), from a table of arctangents
+				double ax = Math.abs(rx), az = Math.abs(rz), a;
+				if (ax >= az) {
+					a = ax > 0 ? ATAN[(int) (az / ax * ATAN_STEPS)] : 0.0;
+				} else {
+					a = Math.PI / 2 - ATAN[(int) (ax / az * ATAN_STEPS)];
+				}
+				if (rx < 0) a = Math.PI - a;
+				if (rz < 0) a = -a;
+				int u = (int) ((a + Math.PI) * scale);
+				
+				int lat = (int) ((ry + 1.0) * half);
+				if (lat < 0) lat = 0; else if (lat > LAT_STEPS) lat = LAT_STEPS;
+				pixels[p + col] = texture[rows[lat] + u];
+			}
+		}
+	}
+	
+	/**
+	 * The unit sphere's surface normals as seen at each pixel of a
+	 * frame of one size. Only the z component varies by pixel; x and
+	 * y are the same for every pixel in a column or row.
+	 *
+	 * The per-row values are computed one band at a time (see build).
+	 * Frames of the same size may build a band at once; both write the
+	 * same values, and a band is only marked built once it is complete.
+	 */
+	private static class Normals {
+		final int      size;
+		final double[] x;     // By column
+		final double[] y;     // By row
+		final int[]    start; // First column within the sphere, by row
+		final int[]    end;   // Column after the last within the sphere, by row
+		final float[]  z;     // By pixel
+		final AtomicIntegerArray built; // 1 for each band whose rows are computed
+		
+		Normals(int sz) {
+			double delta = 2.0 / (double) sz;
+			size  = sz;
+			x     = new double[sz];
+			y     = new double[sz];
+			start = new int[sz];
+			end   = new int[sz];
+			z     = new float[sz * sz];
+			built = new AtomicIntegerArray((sz + BAND - 1) / BAND);
+			for (int i = 0; i < sz; i++) {
+				x[i] = y[i] = -1.0 + i * delta;
+			}
+		}
+		
+		/*
+		 * Compute the rows of a band, unless that has been done.
+		 * Returns true if they were computed by this call.
+		 */
+		boolean build(int band) {
+			if (built.get(band) != 0) return false;
+			int sz = size;
+			for (int row = band * BAND; row < Math.min(sz, (band + 1) * BAND); row++) {
+				int first = sz, last = sz; // Until a column within the sphere is found
+				for (int col = 0; col < sz; col++) {
+					double r2 = x[col]*x[col] + y[row]*y[row];
+					if (r2 <= 1.0) {
+						if (first == sz) first = col;
+						last = col + 1;
+						z[row * sz + col] = (float) -Math.sqrt(1.0 - r2);
+					}
+				}
+				start[row] = first;
+				end[row]   = last;
+			}
+			built.set(band, 1);
+			return true;
+		}
+	}
+
+	/**
+	 * A view of the globe to render: its size in pixels (square), and
+	 * its rotations about the x and y axes.
+	 */
+	public static class Frame {
+		final int      size;
+		final double   xr, yr;
+		final double[] matrix; // Rotation about x by xr, then about y by yr
+		private volatile boolean cancelled = false;
+
+		public Frame(int size, double xr, double yr) {
+			this.size = size;
+			this.xr   = xr;
+			this.yr   = yr;
+			double cx = Math.cos(xr), sx = Math.sin(xr);
+			double cy = Math.cos(yr), sy = Math.sin(yr);
+			matrix = new double[] {
+				 cy, -sx * sy, cx * sy,
+				0.0,  cx,      sx,
+				-sy, -sx * cy, cx * cy
+			};
+		}
+
+		public boolean matches(int size, double xr, double yr) {
+			return this.size == size && this.xr == xr && this.yr == yr;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
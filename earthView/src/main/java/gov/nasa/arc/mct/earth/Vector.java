@@ -57,6 +57,46 @@ public class Vector {
 				           getX() * v.getY() - getY() * v.getX()); 
 	}
 	
+	/*
+	 * In-place operations on vectors stored in double arrays as consecutive 
+	 * (x, y, z) triples, with i (or j, k) the index of the x element. These 
+	 * allocate nothing, for use on paths which run per point per frame.
+	 */
+	
+	public static void set(double[] v, int i, double x, double y, double z) {
+		v[i]     = x;
+		v[i + 1] = y;
+		v[i + 2] = z;
+	}
+	
+	public static void set(double[] v, int i, Vector vec) {
+		set(v, i, vec.getX(), vec.getY(), vec.getZ());
+	}
+	
+	public static void multiply(double[] v, int i, double s) {
+		v[i]     *= s;
+		v[i + 1] *= s;
+		v[i + 2] *= s;
+	}
+	
+	public static double dot(double[] v, int i, double[] w, int j) {
+		return v[i] * w[j] + v[i + 1] * w[j + 1] + v[i + 2] * w[j + 2];
+	}
+	
+	public static double magnitude(double[] v, int i) {
+		return Math.sqrt(dot(v, i, v, i));
+	}
+	
+	/**
+	 * Rotate a vector in the plane of two of its axes (0 for x, 1 for y, 2 for z):
+	 * a' = a cos + b sin, b' = b cos - a sin
+	 */
+	public static void rotate(double[] v, int i, int a, int b, double cos, double sin) {
+		double u = v[i + a];
+		v[i + a] = u * cos + v[i + b] * sin;
+		v[i + b] = v[i + b] * cos - u * sin;
+	}
+	
 	@Override
 	public boolean equals(Object v) {
 		if (v instanceof Vector) {
@@ -0,0 +1,114 @@
+package gov.nasa.arc.mct.earth.component;
+
+import gov.nasa.arc.mct.earth.Vector;
+
+/**
+ * Propagates two-body (Keplerian) motion in closed form, using the
+ * universal variable formulation, so that any time can be reached
+ * in constant time and without accumulating integration error.
+ */
+public class KeplerPropagator implements Propagator {
+	private static final int    MAX_ITERATIONS = 50;
+	private static final double TOLERANCE      = 1e-10;
+	private static final double PARABOLIC      = 1e-9;  // Smallest |1/a| treated as non-parabolic, 1/km
+
+	private final double mu;
+	private final double sqrtMu;
+
+	public KeplerPropagator() {
+		this(MU);
+	}
+
+	/**
+	 * @param mu the gravitational parameter of the central body, km^3/s^2
+	 */
+	public KeplerPropagator(double mu) {
+		this.mu     = mu;
+		this.sqrtMu = Math.sqrt(mu);
+	}
+
+	@Override
+	public void propagate(double[] state, double dt) {
+		double r0 = Vector.magnitude(state, 0);
+		if (r0 == 0 || dt == 0) return; // No defined orbit
+
+		double vr0   = Vector.dot(state, 0, state, 3) / r0;
+		double v0sq  = Vector.dot(state, 3, state, 3);
+		double alpha = 2.0 / r0 - v0sq / mu; // Reciprocal of semi-major axis
+
+		// For closed orbits, only the time within the current period matters
+		if (alpha > 0) {
+			double period = 2.0 * Math.PI / (sqrtMu * alpha * Math.sqrt(alpha));
+			dt = dt % period;
+		}
+
+		// Solve the universal Kepler equation for chi by Newton's method
+		double chi = sqrtMu * dt / r0;
+		if (alpha > 0) {
+			chi = sqrtMu * alpha * dt;
+		} else if (alpha < -PARABOLIC) {
+			// Start hyperbolic orbits near the asymptote, or Newton's method may diverge
+			double sign  = Math.signum(dt);
+			double guess = sign * Math.sqrt(-1.0 / alpha) * Math.log(-2.0 * mu * alpha * dt /
+					(r0 * vr0 + sign * Math.sqrt(-mu / alpha) * (1.0 - r0 * alpha)));
+			if (!Double.isNaN(guess) && !Double.isInfinite(guess)) chi = guess;
+		}
+		double a = r0 * vr0 / sqrtMu;
+		double b = 1.0 - alpha * r0;
+		double c = 0, s = 0;
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			double z = alpha * chi * chi;
+			c = stumpffC(z);
+			s = stumpffS(z);
+			double f  = a * chi * chi * c + b * chi * chi * chi * s + r0 * chi - sqrtMu * dt;
+			double df = a * chi * (1.0 - z * s) + b * chi * chi * c + r0;
+			double delta = f / df;
+			chi -= delta;
+			if (Math.abs(delta) < TOLERANCE) break;
+		}
+		double z = alpha * chi * chi;
+		c = stumpffC(z);
+		s = stumpffS(z);
+
+		// Lagrange coefficients
+		double chi2 = chi * chi;
+		double f = 1.0 - chi2 / r0 * c;
+		double g = dt - chi2 * chi / sqrtMu * s;
+
+		double x0 = state[0], y0 = state[1], z0 = state[2];
+		double vx0 = state[3], vy0 = state[4], vz0 = state[5];
+		Vector.set(state, 0, f * x0 + g * vx0, f * y0 + g * vy0, f * z0 + g * vz0);
+
+		double r    = Vector.magnitude(state, 0);
+		double fdot = sqrtMu / (r * r0) * (alpha * chi2 * chi * s - chi);
+		double gdot = 1.0 - chi2 / r * c;
+		Vector.set(state, 3, fdot * x0 + gdot * vx0, fdot * y0 + gdot * vy0, fdot * z0 + gdot * vz0);
+	}
+
+	@Override
+	public boolean isAnalytic() {
+		return true;
+	}
+
+	private static double stumpffC(double z) {
+		if (z > 1e-6) {
+			return (1.0 - Math.cos(Math.sqrt(z))) / z;
+		} else if (z < -1e-6) {
+			return (Math.cosh(Math.sqrt(-z)) - 1.0) / -z;
+		} else {
+			return 1.0 / 2.0 - z / 24.0 + z * z / 720.0;
+		}
+	}
+
+	private static double stumpffS(double z) {
+		if (z > 1e-6) {
+			double sz = Math.sqrt(z);
+			return (sz - Math.sin(sz)) / (sz * z);
+		} else if (z < -1e-6) {
+			double sz = Math.sqrt(-z);
+			return (Math.sinh(sz) - sz) / (sz * -z);
+		} else {
+			return 1.0 / 6.0 - z / 120.0 + z * z / 5040.0;
+		}
+	}
+}
@@ -17,6 +17,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class OrbitalDataProvider implements DataProvider {
@@ -28,54 +29,83 @@ public class OrbitalDataProvider implements DataProvider {
 	
 	//private static final ArrayList<Vector> positions = new ArrayList<Vector>();
 	
-	private static final Map<String, OrbitalModel>     models       = new HashMap<String, OrbitalModel>();
-	private static final Map<String, List<Trajectory>> trajectories = new HashMap<String, List<Trajectory>>();   
-	private static final Map<String, Long>             initialTime  = new HashMap<String, Long>();
+	private static final int    CACHED_ORBITS    = 32;
+	
+	/** System property naming the propagator to use: "kepler" (the default) or "rk4" */
+	public  static final String PROPAGATOR_PROPERTY = "mct.earth.propagator";
+	
+	private static final Map<String, OrbitalModel> models       = new ConcurrentHashMap<String, OrbitalModel>();
+	private static volatile TrajectoryCache        trajectories = new TrajectoryCache(CACHED_ORBITS, getDefaultPropagator(), SPEEDUP);
 	
 	public static void register(String name, OrbitalModel model) {
 		models.put(name, model);
+		trajectories.remove(name);
+	}
+	
+	/**
+	 * Change the propagator used to compute orbits. Previously computed 
+	 * states are discarded.
+	 * @param propagator the propagator to use
+	 */
+	public static void setPropagator(Propagator propagator) {
+		trajectories = new TrajectoryCache(CACHED_ORBITS, propagator, SPEEDUP);
+	}
+	
+	private static Propagator getDefaultPropagator() {
+		return "rk4".equalsIgnoreCase(System.getProperty(PROPAGATOR_PROPERTY)) ?
+				new RungeKuttaPropagator() : new KeplerPropagator();
 	}
 	
 	public Trajectory getTrajectory(String name, long timestamp) {		
-		if (!models.containsKey(name)) findAndRegister(name);
+		double[] state = getState(name, timestamp, new double[TrajectoryCache.STATE]);
+		if (state == null) return null;
 		
-		return getIndexedTrajectory(name, (int) (timestamp - models.get(name).getInitialTime()) / 1000) ;
+		final Vector position = new Vector(state[0], state[1], state[2]);
+		final Vector velocity = new Vector(state[3], state[4], state[5]);
+		return new Trajectory() {
+			@Override
+			public Vector getPosition() {
+				return position;
+			}
+			@Override
+			public Vector getVelocity() {
+				return velocity;
+			}			
+		};
+	}
+	
+	/**
+	 * Get the position and velocity of an orbit at a given time.
+	 * @param name the orbit's name
+	 * @param timestamp the time, in milliseconds
+	 * @param state an array of six doubles to hold the position and velocity
+	 * @return the state array, or null if there is no such orbit
+	 */
+	private double[] getState(String name, long timestamp, double[] state) {
+		OrbitalModel model = models.get(name);
+		if (model == null) model = findAndRegister(name);
+		if (model == null) return null;
+		
+		return trajectories.getState(name, model, getStep(model, timestamp), state);
+	}
+	
+	/*
+	 * Get the number of whole seconds from an orbit's initial time to a given time. 
+	 * Earlier times are given the initial state.
+	 */
+	private static long getStep(OrbitalModel model, long timestamp) {
+		long initialTime = model.getInitialTime();
+		return timestamp > initialTime ? (timestamp - initialTime) / 1000 : 0;
 	}
 	
-	private void findAndRegister(String name) {
+	private OrbitalModel findAndRegister(String name) {
 		AbstractComponent comp = PlatformAccess.getPlatform().getComponentRegistry().getComponent(name);
 		if (comp instanceof UserOrbitalComponent) {
 			OrbitalModel m = ((UserOrbitalComponent) comp).getModel();
-			models.put(name, m);
-			initialTime.put(name, m.getInitialTime());
+			if (m != null) models.put(name, m);
+			return m;
 		}
-	}
-	
-	private Trajectory getIndexedTrajectory(String name, int index) {
-		if (!trajectories.containsKey(name)) trajectories.put(name, new ArrayList<Trajectory>());
-		if (index < 0) index = 0;
-		
-		List<Trajectory> history = trajectories.get(name);
-		
-		while (history.size() <= index) {
-			if (history.isEmpty()) history.add( models.get(name).getInitialTrajectory() );
-			
-			Trajectory t = history.get(history.size() - 1);
-			final Vector position = t.getPosition().add( t.getVelocity().add(gravity(t.getPosition()).multiply(SPEEDUP)).multiply(SPEEDUP) );
-			final Vector velocity = position.add(t.getPosition().multiply(-1.0)).multiply(1.0 / SPEEDUP);
-			history.add(new Trajectory() {
-				@Override
-				public Vector getPosition() {
-					return position;
-				}
-				@Override
-				public Vector getVelocity() {
-					return velocity;
-				}			
-			});
-		}
-		
-		return history.get(index);
+		return null;
 	}
 	
 //	static {		
@@ -89,10 +119,6 @@ public class OrbitalDataProvider implements DataProvider {
 //	}
 
 	
-	private static Vector gravity (Vector v) {
-		return v.normal().multiply(-0.0084);
-	}
-	
 //	private static Vector drift (Vector v1, Vector v2) {
 //		return new Vector (v2.getZ(), 0.0, v2.getX()).normal().multiply(0.00008);
 //	}
@@ -100,59 +126,107 @@ public class OrbitalDataProvider implements DataProvider {
 	@Override
 	public Map<String, List<Map<String, String>>> getData(Set<String> feedIDs,
 			TimeUnit timeUnit, long startTime, long endTime) {
-		Map<String, List<Map<String, String>>> out = new HashMap<String, List<Map<String, String>>>();
-		
-		for (Entry<String, SortedMap<Long, Map<String, String>>> entry :
-			getData(feedIDs, startTime, endTime, timeUnit).entrySet()) {
-			
-			List<Map<String, String>> list = new ArrayList<Map<String, String>>();
-			list.addAll(entry.getValue().values());
-
-			out.put(entry.getKey(), list);
-		}
-		
-		return out;
+		return sample(feedIDs, startTime, endTime);
 	}
 
 	@Override
 	public Map<String, SortedMap<Long, Map<String, String>>> getData(
 			Set<String> feedIDs, long startTime, long endTime, TimeUnit timeUnit) {
 		Map<String, SortedMap<Long, Map<String, String>>> out = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+		for (Entry<String, List<Map<String, String>>> entry : sample(feedIDs, startTime, endTime).entrySet()) {
+			SortedMap<Long, Map<String, String>> data = new TreeMap<Long, Map<String, String>>();
+			long time = startTime;
+			for (Map<String, String> dataItem : entry.getValue()) {
+				data.put(Long.valueOf(time), dataItem);
+				time += 1000;
+			}
+			out.put(entry.getKey(), data);
+		}
+		return out;
+	}
+	
+	/**
+	 * Sample feeds once per second. Feeds are grouped by orbit, so that 
+	 * each orbit's state is computed once per sample for all of its feeds.
+	 * @param feedIDs the feeds to sample
+	 * @param startTime the time of the first sample, in milliseconds
+	 * @param endTime the time after the last sample, in milliseconds
+	 * @return samples for each feed with data, in time order
+	 */
+	private Map<String, List<Map<String, String>>> sample(Set<String> feedIDs, long startTime, long endTime) {
+		Map<String, List<Map<String, String>>> out = new HashMap<String, List<Map<String, String>>>();
 		
+		Map<String, List<Feed>> orbits = new HashMap<String, List<Feed>>();
 		for (String feedID : feedIDs) {
 			if (feedID.startsWith("orbit:") && feedID.contains("/")) {
 				int paramIndex = feedID.lastIndexOf("/");
-				String params = feedID.substring(paramIndex);
-				String name   = feedID.substring(6, paramIndex);
-				boolean velocity = params.contains("v");
-				SortedMap<Long, Map<String, String>> data = new TreeMap<Long, Map<String, String>>();
-				for (long time = startTime; time < endTime; time += 1000) {
-					double dataValue = 0.0;
-					//-----start concern
-					Trajectory t = this.getTrajectory(name, time);
-					//Vector  position = positions.get(index);
-					Vector position = velocity ? t.getVelocity() : t.getPosition();
-					//if (velocity) position = position.add(positions.get(index-1).multiply(-1.0));
-					if (params.contains("x")) dataValue = position.getX();
-					if (params.contains("y")) dataValue = position.getY();
-					if (params.contains("z")) dataValue = position.getZ();
-					//------end concern 
-					
+				String name = feedID.substring(6, paramIndex);
+				List<Feed> feeds = orbits.get(name);
+				if (feeds == null) orbits.put(name, feeds = new ArrayList<Feed>(6));
+				feeds.add(new Feed(feedID, feedID.substring(paramIndex)));
+			}
+		}
+		if (orbits.isEmpty() || endTime <= startTime) return out;
+		
+		// Time stamps are shared by every feed
+		int      count = (int) ((endTime - startTime + 999) / 1000);
+		String[] times = new String[count];
+		for (int i = 0; i < count; i++) {
+			times[i] = Long.toString(startTime + i * 1000L);
+		}
+		
+		TrajectoryCache cache = trajectories;
+		double[]        state = new double[TrajectoryCache.STATE];
+		for (Entry<String, List<Feed>> entry : orbits.entrySet()) {
+			String name = entry.getKey();
+			OrbitalModel model = models.get(name);
+			if (model == null) model = findAndRegister(name);
+			if (model == null) continue;
+			
+			List<Feed> feeds = entry.getValue();
+			int        size  = feeds.size();
+			for (int f = 0; f < size; f++) {
+				feeds.get(f).data = new ArrayList<Map<String, String>>(count);
+			}
+			for (int i = 0; i < count; i++) {
+				cache.getState(name, model, getStep(model, startTime + i * 1000L), state);
+				for (int f = 0; f < size; f++) {
+					Feed   feed  = feeds.get(f);
+					String value = Double.toString(feed.index < 0 ? 0.0 : state[feed.index]);
 					Map <String, String> dataItem = new HashMap<String, String> ();
-					RenderingInfo ri = new RenderingInfo(Double.toString(dataValue), Color.ORANGE, " ", Color.ORANGE, true);
+					RenderingInfo ri = new RenderingInfo(value, Color.ORANGE, " ", Color.ORANGE, true);
 					dataItem.put(FeedProvider.NORMALIZED_RENDERING_INFO, ri.toString());
-					dataItem.put(FeedProvider.NORMALIZED_TIME_KEY,  Long.toString(time));
-					dataItem.put(FeedProvider.NORMALIZED_VALUE_KEY, Double.toString(dataValue));
+					dataItem.put(FeedProvider.NORMALIZED_TIME_KEY,  times[i]);
+					dataItem.put(FeedProvider.NORMALIZED_VALUE_KEY, value);
 					dataItem.put(FeedProvider.NORMALIZED_TELEMETRY_STATUS_CLASS_KEY, "1");
-					data.put(Long.valueOf(time), dataItem);
-				}
-				if (!data.isEmpty()) {
-					out.put(feedID, data);
+					feed.data.add(dataItem);
 				}
 			}
+			for (int f = 0; f < size; f++) {
+				out.put(feeds.get(f).id, feeds.get(f).data);
+			}
 		}
 		return out;
 	}
+	
+	/**
+	 * A feed of one component of an orbit's position or velocity.
+	 */
+	private static class Feed {
+		final String id;
+		final int    index; // Into the state; negative if no axis was named
+		List<Map<String, String>> data;
+		
+		Feed(String id, String params) {
+			int offset = params.contains("v") ? 3 : 0;
+			int axis   = -1;
+			if (params.contains("x")) axis = 0;
+			if (params.contains("y")) axis = 1;
+			if (params.contains("z")) axis = 2;
+			this.id    = id;
+			this.index = axis < 0 ? -1 : offset + axis;
+		}
+	}
 
 	@Override
 	public boolean isFullyWithinTimeSpan(String feedID, long startTime,
@@ -0,0 +1,27 @@
+package gov.nasa.arc.mct.earth.component;
+
+/**
+ * Advances the state of an orbiting body through time. States are six
+ * doubles: position (x, y, z, in km, earth-centered) followed by
+ * velocity (in km/s).
+ */
+public interface Propagator {
+	/** Standard gravitational parameter of the earth, km^3/s^2 */
+	public static final double MU = 398600.4418;
+
+	/**
+	 * Advance a state.
+	 * @param state the state to update, in place
+	 * @param dt the time to advance by, in seconds
+	 */
+	public void propagate(double[] state, double dt);
+
+	/**
+	 * Check whether this propagator computes states in closed form, such
+	 * that the cost of a call does not depend on the time advanced. States
+	 * from an analytic propagator are computed directly from initial
+	 * conditions, rather than from intermediate states.
+	 * @return true if this propagator is analytic
+	 */
+	public boolean isAnalytic();
+}
@@ -0,0 +1,79 @@
+package gov.nasa.arc.mct.earth.component;
+
+import gov.nasa.arc.mct.earth.Vector;
+
+/**
+ * Integrates motion under inverse-square gravity with the classical
+ * fourth-order Runge-Kutta method. Each call is divided into equal
+ * steps no longer than the maximum step size.
+ *
+ * Unlike {@link KeplerPropagator}, this is a numerical integrator, and
+ * is the starting point for adding perturbations (drag, oblateness).
+ */
+public class RungeKuttaPropagator implements Propagator {
+	private static final double DEFAULT_MAX_STEP = 10.0; // seconds
+
+	private final double mu;
+	private final double maxStep;
+
+	// Stage derivatives and scratch state; one set per thread
+	private final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+		@Override
+		protected double[] initialValue() {
+			return new double[6 * 5];
+		}
+	};
+
+	public RungeKuttaPropagator() {
+		this(MU, DEFAULT_MAX_STEP);
+	}
+
+	/**
+	 * @param mu the gravitational parameter of the central body, km^3/s^2
+	 * @param maxStep the longest integration step to take, in seconds
+	 */
+	public RungeKuttaPropagator(double mu, double maxStep) {
+		this.mu      = mu;
+		this.maxStep = maxStep;
+	}
+
+	@Override
+	public void propagate(double[] state, double dt) {
+		if (dt == 0 || Vector.magnitude(state, 0) == 0) return;
+		int    n = (int) Math.ceil(Math.abs(dt) / maxStep);
+		double h = dt / n;
+		double[] k = scratch.get(); // k1..k4 at 0, 6, 12, 18; trial state at 24
+		for (int i = 0; i < n; i++) {
+			derivative(state, 0, k, 0);
+			trial(state, k, 0, h / 2);
+			derivative(k, 24, k, 6);
+			trial(state, k, 6, h / 2);
+			derivative(k, 24, k, 12);
+			trial(state, k, 12, h);
+			derivative(k, 24, k, 18);
+			for (int j = 0; j < 6; j++) {
+				state[j] += h / 6.0 * (k[j] + 2.0 * k[6 + j] + 2.0 * k[12 + j] + k[18 + j]);
+			}
+		}
+	}
+
+	@Override
+	public boolean isAnalytic() {
+		return false;
+	}
+
+	/* Set the trial state (at 24) to state + h * (derivative at d) */
+	private static void trial(double[] state, double[] k, int d, double h) {
+		for (int j = 0; j < 6; j++) {
+			k[24 + j] = state[j] + h * k[d + j];
+		}
+	}
+
+	/* Derivative of the state at s, stored at d: velocity, then acceleration */
+	private void derivative(double[] s, int i, double[] d, int j) {
+		double r  = Vector.magnitude(s, i);
+		Vector.set(d, j, s[i + 3], s[i + 4], s[i + 5]);
+		Vector.set(d, j + 3, s[i], s[i + 1], s[i + 2]);
+		Vector.multiply(d, j + 3, -mu / (r * r * r));
+	}
+}
@@ -0,0 +1,138 @@
+package gov.nasa.arc.mct.earth.component;
+
+import gov.nasa.arc.mct.earth.Trajectory;
+import gov.nasa.arc.mct.earth.Vector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches integrated orbital states, so that a state need not be
+ * integrated from an orbit's initial time on every request. States
+ * are indexed by step, a fixed interval of time after the orbit's
+ * initial time.
+ *
+ * States from an analytic propagator are computed directly from
+ * the initial state, so nothing is cached beyond that. Otherwise,
+ * states are stored as checkpoints (position and velocity, as six
+ * doubles) every stride steps; a request re-integrates from the
+ * nearest earlier checkpoint, or from the last state requested,
+ * whichever is closer. When an orbit has MAX_CHECKPOINTS checkpoints,
+ * every other one is dropped and its stride doubles, so memory per
+ * orbit is bounded. Only the most recently used orbits are kept.
+ */
+class TrajectoryCache {
+	static final int STATE = 6; // x, y, z, vx, vy, vz
+
+	private static final int MAX_CHECKPOINTS = 4096;
+	private static final int INITIAL_STRIDE  = 64;
+
+	private final Map<String, Orbit> orbits;
+	private final Propagator         propagator;
+	private final double             step;
+
+	/**
+	 * @param maxOrbits the number of orbits to retain
+	 * @param propagator the propagator used to compute states
+	 * @param step the time between steps, in seconds
+	 */
+	TrajectoryCache(final int maxOrbits, Propagator propagator, double step) {
+		this.propagator = propagator;
+		this.step       = step;
+		orbits = new LinkedHashMap<String, Orbit>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Orbit> eldest) {
+				return size() > maxOrbits;
+			}
+		};
+	}
+
+	/**
+	 * Get the state of an orbit after some number of steps.
+	 * @param name the orbit's name
+	 * @param model the orbit's initial conditions
+	 * @param index the number of steps since the initial time; not negative
+	 * @param state an array of at least STATE elements, to hold the result
+	 * @return the state array
+	 */
+	public synchronized double[] getState(String name, OrbitalModel model, long index, double[] state) {
+		if (index < 0) throw new IllegalArgumentException("Negative step " + index);
+		Orbit orbit = orbits.get(name);
+		if (orbit == null) {
+			orbits.put(name, orbit = new Orbit(model.getInitialTrajectory()));
+		}
+		orbit.get(index, state);
+		return state;
+	}
+
+	/**
+	 * Discard cached states for an orbit (for instance, because its
+	 * initial conditions have changed).
+	 * @param name the orbit's name
+	 */
+	public synchronized void remove(String name) {
+		orbits.remove(name);
+	}
+
+	private class Orbit {
+		private double[] checkpoints = new double[STATE * 16];
+		private int      count       = 0;
+		private int      stride      = INITIAL_STRIDE;
+
+		private final double[] cursor      = new double[STATE];
+		private long           cursorIndex = 0;
+
+		Orbit(Trajectory initial) {
+			Vector p = initial.getPosition();
+			Vector v = initial.getVelocity();
+			cursor[0] = p.getX();
+			cursor[1] = p.getY();
+			cursor[2] = p.getZ();
+			cursor[3] = v.getX();
+			cursor[4] = v.getY();
+			cursor[5] = v.getZ();
+			checkpoint();
+		}
+
+		void get(long index, double[] state) {
+			if (propagator.isAnalytic()) {
+				System.arraycopy(checkpoints, 0, state, 0, STATE);
+				propagator.propagate(state, index * step);
+				return;
+			}
+			
+			// Resume from the cursor if it is closer than the nearest checkpoint
+			int c = (int) Math.min(index / stride, count - 1);
+			if (cursorIndex > index || cursorIndex < (long) c * stride) {
+				System.arraycopy(checkpoints, c * STATE, cursor, 0, STATE);
+				cursorIndex = (long) c * stride;
+			}
+			while (cursorIndex < index) {
+				propagator.propagate(cursor, step);
+				cursorIndex++;
+				if (cursorIndex == (long) count * stride) checkpoint();
+			}
+			System.arraycopy(cursor, 0, state, 0, STATE);
+		}
+
+		private void checkpoint() {
+			if (count == MAX_CHECKPOINTS) {
+				// Keep every other checkpoint
+				for (int i = 1; i < count / 2; i++) {
+					System.arraycopy(checkpoints, i * 2 * STATE, checkpoints, i * STATE, STATE);
+				}
+				count /= 2;
+				stride *= 2;
+				if (cursorIndex != (long) count * stride) return;
+			}
+			if ((count + 1) * STATE > checkpoints.length) {
+				double[] larger = new double[checkpoints.length * 2];
+				System.arraycopy(checkpoints, 0, larger, 0, count * STATE);
+				checkpoints = larger;
+			}
+			System.arraycopy(cursor, 0, checkpoints, count * STATE, STATE);
+			count++;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package gov.nasa.arc.mct.earth;
+
+import gov.nasa.arc.mct.earth.component.KeplerPropagator;
+import gov.nasa.arc.mct.earth.component.Propagator;
+import gov.nasa.arc.mct.earth.component.RungeKuttaPropagator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+/*
+ * Propagation and projection run per orbit and per point on every frame, and 
+ * should allocate nothing once warmed up. Allocation and throughput are logged.
+ */
+public class HotPathAllocationTest {
+	private static final int ORBITS = 10000;
+	private static final int POINTS = 1000000;
+
+	private final com.sun.management.ThreadMXBean threads = 
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	@Test
+	public void testPropagation() {
+		double[] states = new double[ORBITS * 6];
+		double[] state = new double[6];
+		for (Propagator propagator : new Propagator[] { new RungeKuttaPropagator(), new KeplerPropagator() }) {
+			for (int i = 0; i < ORBITS; i++) {
+				double r = 6771.0 + i % 1000;
+				double v = Math.sqrt(Propagator.MU / r);
+				Vector.set(states, i * 6, r, 0, 0);
+				Vector.set(states, i * 6 + 3, 0, v * Math.cos(i * 0.001), v * Math.sin(i * 0.001));
+			}
+			propagateAll(propagator, states, state); // Warm up
+
+			long start = System.nanoTime();
+			long allocated = allocated();
+			propagateAll(propagator, states, state);
+			allocated = allocated() - allocated;
+			long elapsed = System.nanoTime() - start;
+			Reporter.log(String.format("%s: propagated %d orbits by one minute in %.1f ms, allocating %d bytes",
+					propagator.getClass().getSimpleName(), ORBITS, elapsed / 1e6, allocated), true);
+			Assert.assertTrue(allocated < 1024, "Allocated " + allocated);
+		}
+	}
+
+	@Test
+	public void testProjection() {
+		List<Vector> history = new ArrayList<Vector>(1000);
+		for (int i = 0; i < 1000; i++) {
+			history.add(new Vector(7000 * Math.cos(i * 0.01), 7000 * Math.sin(i * 0.01), 100.0 * i));
+		}
+		double[] rotation = { Math.cos(-0.3), Math.sin(-0.3), Math.cos(-1.2), Math.sin(-1.2) };
+		double[] out = new double[3];
+		projectAll(history, rotation, out); // Warm up
+
+		long start = System.nanoTime();
+		long allocated = allocated();
+		double sum = projectAll(history, rotation, out);
+		allocated = allocated() - allocated;
+		long elapsed = System.nanoTime() - start;
+		Reporter.log(String.format("Projected %d points in %.1f ms, allocating %d bytes",
+				POINTS, elapsed / 1e6, allocated), true);
+		Assert.assertTrue(allocated < 1024, "Allocated " + allocated);
+		Assert.assertFalse(Double.isNaN(sum));
+	}
+
+	@Test
+	public void testTransform() {
+		// Identity rotation: x, -z, y scaled to earth radii
+		double[] out = EarthPanel.transform(new Vector(6371.0, 2 * 6371.0, 3 * 6371.0), 
+				new double[] { 1, 0, 1, 0 }, new double[3]);
+		Assert.assertEquals(out[0], 1.0, 1e-12);
+		Assert.assertEquals(out[1], -3.0, 1e-12);
+		Assert.assertEquals(out[2], 2.0, 1e-12);
+	}
+
+	private static void propagateAll(Propagator propagator, double[] states, double[] state) {
+		for (int i = 0; i < ORBITS; i++) {
+			System.arraycopy(states, i * 6, state, 0, 6);
+			propagator.propagate(state, 60.0);
+			System.arraycopy(state, 0, states, i * 6, 6);
+		}
+	}
+
+	private static double projectAll(List<Vector> history, double[] rotation, double[] out) {
+		double sum = 0;
+		for (int i = 0; i < POINTS; i++) {
+			sum += EarthPanel.transform(history.get(i % history.size()), rotation, out)[2];
+		}
+		return sum;
+	}
+
+	private long allocated() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
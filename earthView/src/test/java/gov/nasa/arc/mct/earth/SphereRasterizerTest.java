@@ -0,0 +1,141 @@
+package gov.nasa.arc.mct.earth;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.testng.Assert;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+public class SphereRasterizerTest {
+	private static final int WIDTH  = 2048;
+	private static final int HEIGHT = 1024;
+
+	@Test
+	public void testTexels() {
+		// Each texel's color is its coordinates, so pixels show where they were looked up
+		BufferedImage texture = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		for (int v = 0; v < HEIGHT; v++) {
+			for (int u = 0; u < WIDTH; u++) {
+				texture.setRGB(u, v, v << 12 | u);
+			}
+		}
+		SphereRasterizer rasterizer = new SphereRasterizer(texture);
+		for (int sz : new int[] { 1, 7, 100, 333 }) {
+			for (double[] r : new double[][] { { 0, 0 }, { 0.4, -1.3 }, { -1.5, 2.9 }, { 3.0, 0.2 } }) {
+				SphereRasterizer.Frame frame = new SphereRasterizer.Frame(sz, r[0], r[1]);
+				BufferedImage target = new BufferedImage(sz, sz, BufferedImage.TYPE_INT_RGB);
+				Assert.assertTrue(rasterizer.render(frame, target));
+				assertTexels(frame, target);
+			}
+		}
+	}
+
+	@Test
+	public void testRepeatedFrames() {
+		// Frames rendered with cached normals match the one which computed them
+		SphereRasterizer rasterizer = new SphereRasterizer(gradient(360, 180));
+		BufferedImage first  = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+		BufferedImage second = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+		Assert.assertTrue(rasterizer.render(new SphereRasterizer.Frame(200, 0.5, 0.5), first));
+		Assert.assertTrue(rasterizer.render(new SphereRasterizer.Frame(150, 0.5, 0.5), 
+				new BufferedImage(150, 150, BufferedImage.TYPE_INT_RGB)));
+		Assert.assertTrue(rasterizer.render(new SphereRasterizer.Frame(200, 0.5, 0.5), second));
+		Assert.assertEquals(second.getRGB(0, 0, 200, 200, null, 0, 200), first.getRGB(0, 0, 200, 200, null, 0, 200));
+	}
+
+	@Test
+	public void testEstimate() {
+		// Frames which compute normals do not count towards the estimate
+		SphereRasterizer rasterizer = new SphereRasterizer(gradient(360, 180));
+		double estimate = rasterizer.estimate(500);
+		BufferedImage target = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+		Assert.assertTrue(rasterizer.render(new SphereRasterizer.Frame(500, 0.1, 0.2), target));
+		Assert.assertEquals(rasterizer.estimate(500), estimate);
+		Assert.assertTrue(rasterizer.render(new SphereRasterizer.Frame(500, 0.2, 0.3), target));
+		Assert.assertNotEquals(rasterizer.estimate(500), estimate);
+	}
+
+	@Test
+	public void testCancelled() {
+		SphereRasterizer rasterizer = new SphereRasterizer(gradient(360, 180));
+		SphereRasterizer.Frame frame = new SphereRasterizer.Frame(300, 0, 0);
+		frame.cancel();
+		Assert.assertFalse(rasterizer.render(frame, new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB)));
+
+		// Bands skipped by the cancelled frame are computed by the next
+		BufferedImage target = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+		BufferedImage fresh  = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+		Assert.assertTrue(rasterizer.render(new SphereRasterizer.Frame(300, 0.3, 0.3), target));
+		Assert.assertTrue(new SphereRasterizer(gradient(360, 180)).render(new SphereRasterizer.Frame(300, 0.3, 0.3), fresh));
+		Assert.assertEquals(target.getRGB(0, 0, 300, 300, null, 0, 300), fresh.getRGB(0, 0, 300, 300, null, 0, 300));
+	}
+
+	/*
+	 * Report the time taken to render frames at several sizes, while rotating as when dragged
+	 */
+	@Test
+	public void testFrameTimes() throws IOException {
+		SphereRasterizer r = new SphereRasterizer(ImageIO.read(SphereRasterizer.class.getResourceAsStream("images/world.jpg")));
+		final int frames = 20;
+		for (int sz : new int[] { 250, 500, 1000, 2000 }) {
+			BufferedImage target = new BufferedImage(sz, sz, BufferedImage.TYPE_INT_RGB);
+			long start = System.nanoTime();
+			r.render(new SphereRasterizer.Frame(sz, 0, 0), target);
+			double first = (System.nanoTime() - start) / 1e6;
+			for (int i = 0; i < frames; i++) { // Warm up
+				r.render(new SphereRasterizer.Frame(sz, 0.01 * i, 0.02 * i), target);
+			}
+			start = System.nanoTime();
+			for (int i = 0; i < frames; i++) {
+				r.render(new SphereRasterizer.Frame(sz, 0.01 * i, 0.02 * i), target);
+			}
+			double ms = (System.nanoTime() - start) / 1e6 / frames;
+			Reporter.log(String.format("%5d x %-5d %8.2f ms first frame %8.2f ms/frame %8.1f fps", 
+					sz, sz, first, ms, 1000.0 / ms), true);
+		}
+	}
+
+	/*
+	 * Check that each pixel within the sphere shows the texel under it, to within a 
+	 * texel (except close to the poles, where longitude changes quickly), and that
+	 * pixels outside are black
+	 */
+	private static void assertTexels(SphereRasterizer.Frame frame, BufferedImage target) {
+		int sz = frame.size;
+		double[] m = frame.matrix;
+		for (int row = 0; row < sz; row++) {
+			for (int col = 0; col < sz; col++) {
+				double x = -1.0 + col * 2.0 / sz, y = -1.0 + row * 2.0 / sz;
+				int rgb = target.getRGB(col, row) & 0xffffff;
+				double r2 = x * x + y * y;
+				if (r2 > 1.0) {
+					Assert.assertEquals(rgb, 0, "Outside the sphere at " + col + ", " + row);
+					continue;
+				}
+				double z  = -Math.sqrt(1.0 - r2);
+				double rx = m[0] * x + m[1] * y + m[2] * z;
+				double ry =            m[4] * y + m[5] * z;
+				double rz = m[6] * x + m[7] * y + m[8] * z;
+				if (Math.abs(ry) > 0.999) continue;
+				int u = (int) ((Math.atan2(rz, rx) + Math.PI) * (WIDTH - 1) / (2.0 * Math.PI));
+				int v = (int) ((1.0 - Math.acos(ry) / Math.PI) * (HEIGHT - 1));
+				int du = Math.abs((rgb & 0xfff) - u);
+				Assert.assertTrue(Math.min(du, WIDTH - 1 - du) <= 1, "Longitude at " + col + ", " + row + " of " + sz);
+				Assert.assertTrue(Math.abs((rgb >> 12) - v) <= 1, "Latitude at " + col + ", " + row + " of " + sz);
+			}
+		}
+	}
+
+	private static BufferedImage gradient(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int v = 0; v < height; v++) {
+			for (int u = 0; u < width; u++) {
+				image.setRGB(u, v, (u * 255 / width) << 16 | (v * 255 / height) << 8 | 0x40);
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,96 @@
+package gov.nasa.arc.mct.earth.component;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class KeplerPropagatorTest {
+	private final Propagator kepler = new KeplerPropagator();
+	private final Propagator rk4    = new RungeKuttaPropagator(Propagator.MU, 1.0);
+
+	@Test
+	public void testLowEarthOrbit() {
+		// Slightly eccentric and inclined, at about 400 km
+		double r = 6771.0;
+		double v = Math.sqrt(Propagator.MU / r) * 1.005;
+		double[] initial = { r, 0, 0, 0, v * Math.cos(0.9), v * Math.sin(0.9) };
+		double period = period(initial);
+		Assert.assertTrue(period > 5400 && period < 5700, "Period " + period);
+
+		// The closed form agrees with the integrator throughout one orbit
+		double[] integrated = initial.clone();
+		int samples = 60;
+		for (int i = 1; i <= samples; i++) {
+			rk4.propagate(integrated, period / samples);
+			double[] analytic = initial.clone();
+			kepler.propagate(analytic, period * i / samples);
+			assertClose(analytic, integrated, 1e-3, 1e-6);
+		}
+
+		// ...and returns to the start after each whole period
+		assertClose(integrated, initial, 1e-3, 1e-6);
+		double[] later = initial.clone();
+		kepler.propagate(later, 1000 * period);
+		assertClose(later, initial, 1e-3, 1e-6);
+	}
+
+	@Test
+	public void testHyperbolic() {
+		double r = 7000.0;
+		double v = Math.sqrt(2.0 * Propagator.MU / r) * 1.3;
+		double[] initial = { r, 0, 0, 0, v * 0.8, v * 0.6 };
+		Assert.assertTrue(period(initial) < 0); // Unbound
+
+		double[] integrated = initial.clone();
+		for (int i = 1; i <= 24; i++) {
+			rk4.propagate(integrated, 600.0);
+			double[] analytic = initial.clone();
+			kepler.propagate(analytic, 600.0 * i);
+			assertClose(analytic, integrated, 1e-3 * magnitude(integrated), 1e-6);
+			Assert.assertEquals(energy(analytic), energy(initial), 1e-9 * Math.abs(energy(initial)));
+		}
+
+		// Propagating back recovers the start
+		double[] back = integrated.clone();
+		kepler.propagate(back, -600.0 * 24);
+		assertClose(back, initial, 1e-3, 1e-6);
+
+		// Including through periapsis, from the inbound leg
+		double[] inbound = initial.clone();
+		kepler.propagate(inbound, -3600.0);
+		integrated = inbound.clone();
+		rk4.propagate(integrated, 7200.0);
+		kepler.propagate(inbound, 7200.0);
+		assertClose(inbound, integrated, 1e-2, 1e-6);
+	}
+
+	@Test
+	public void testUndefined() {
+		double[] state = { 0, 0, 0, 1, 2, 3 };
+		kepler.propagate(state, 100.0);
+		Assert.assertEquals(state, new double[] { 0, 0, 0, 1, 2, 3 });
+		state = new double[] { 7000, 0, 0, 0, 7.5, 0 };
+		kepler.propagate(state, 0.0);
+		Assert.assertEquals(state, new double[] { 7000, 0, 0, 0, 7.5, 0 });
+	}
+
+	private static double period(double[] state) {
+		double alpha = 2.0 / magnitude(state) - 
+				(state[3] * state[3] + state[4] * state[4] + state[5] * state[5]) / Propagator.MU;
+		return alpha > 0 ? 2.0 * Math.PI * Math.sqrt(1.0 / (alpha * alpha * alpha * Propagator.MU)) : -1;
+	}
+
+	private static double energy(double[] state) {
+		double v2 = state[3] * state[3] + state[4] * state[4] + state[5] * state[5];
+		return v2 / 2.0 - Propagator.MU / magnitude(state);
+	}
+
+	private static double magnitude(double[] state) {
+		return Math.sqrt(state[0] * state[0] + state[1] * state[1] + state[2] * state[2]);
+	}
+
+	private static void assertClose(double[] actual, double[] expected, double position, double velocity) {
+		for (int i = 0; i < 6; i++) {
+			Assert.assertEquals(actual[i], expected[i], i < 3 ? position : velocity, "Element " + i);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package gov.nasa.arc.mct.earth.component;
+
+import gov.nasa.arc.mct.earth.Vector;
+
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TrajectoryCacheTest {
+	private CountingPropagator propagator;
+	private TrajectoryCache    cache;
+	private OrbitalModel       model;
+	private double[]           state = new double[TrajectoryCache.STATE];
+
+	@BeforeMethod
+	public void setup() {
+		propagator = new CountingPropagator(false);
+		cache = new TrajectoryCache(2, propagator, 1.0);
+		model = new OrbitalModel();
+		model.set(new Vector(0.0, 0.0, 0.0), new Vector(1.0, 2.0, 0.0), 0L);
+	}
+
+	@Test
+	public void testInitialState() {
+		cache.getState("a", model, 0, state);
+		assertAt(0);
+		Assert.assertEquals(propagator.steps, 0);
+	}
+
+	@Test (expectedExceptions = IllegalArgumentException.class)
+	public void testNegativeStep() {
+		cache.getState("a", model, -1, state);
+	}
+
+	@Test
+	public void testCursor() {
+		cache.getState("a", model, 100, state);
+		assertAt(100);
+		Assert.assertEquals(propagator.steps, 100);
+
+		// Moving forward continues from the last state
+		cache.getState("a", model, 101, state);
+		assertAt(101);
+		Assert.assertEquals(propagator.steps, 101);
+		cache.getState("a", model, 101, state);
+		Assert.assertEquals(propagator.steps, 101);
+
+		// Moving back resumes from the nearest checkpoint (every 64 steps)
+		cache.getState("a", model, 70, state);
+		assertAt(70);
+		Assert.assertEquals(propagator.steps, 101 + 6);
+		cache.getState("a", model, 10, state);
+		assertAt(10);
+		Assert.assertEquals(propagator.steps, 101 + 6 + 10);
+	}
+
+	@Test
+	public void testThinning() {
+		// Past 4096 checkpoints, every other one is dropped and the stride doubles
+		int far = 1000000;
+		cache.getState("a", model, far, state);
+		assertAt(far);
+		Assert.assertEquals(propagator.steps, far);
+
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			int index = random.nextInt(far);
+			int before = propagator.steps;
+			cache.getState("a", model, index, state);
+			assertAt(index);
+			Assert.assertTrue(propagator.steps - before < 256, "Took " + (propagator.steps - before) + " steps to " + index);
+		}
+
+		// Checkpoints beyond the thinned ones are still added as the orbit is extended
+		cache.getState("a", model, 3 * far, state);
+		assertAt(3 * far);
+		int before = propagator.steps;
+		cache.getState("a", model, 3 * far - 1000, state);
+		assertAt(3 * far - 1000);
+		Assert.assertTrue(propagator.steps - before < 1024);
+	}
+
+	@Test
+	public void testEviction() {
+		cache.getState("a", model, 500, state);
+		cache.getState("b", model, 500, state);
+		cache.getState("a", model, 500, state);
+		Assert.assertEquals(propagator.steps, 1000);
+
+		// Only two orbits are kept; b was used least recently
+		cache.getState("c", model, 500, state);
+		cache.getState("a", model, 500, state);
+		Assert.assertEquals(propagator.steps, 1500);
+		cache.getState("b", model, 500, state);
+		Assert.assertEquals(propagator.steps, 2000);
+
+		cache.remove("b");
+		cache.getState("b", model, 500, state);
+		Assert.assertEquals(propagator.steps, 2500);
+	}
+
+	@Test
+	public void testAnalytic() {
+		propagator = new CountingPropagator(true);
+		cache = new TrajectoryCache(2, propagator, 1.0);
+
+		// Steps beyond the range of an int are propagated directly
+		long far = 3L * Integer.MAX_VALUE;
+		cache.getState("a", model, far, state);
+		assertAt(far);
+		cache.getState("a", model, 5, state);
+		assertAt(5);
+		Assert.assertEquals(propagator.steps, 2);
+	}
+
+	private void assertAt(long index) {
+		Assert.assertEquals(state[0], (double) index);
+		Assert.assertEquals(state[1], 2.0 * index);
+		Assert.assertEquals(state[2], 0.0);
+		Assert.assertEquals(state[3], 1.0);
+		Assert.assertEquals(state[4], 2.0);
+	}
+
+	/*
+	 * Motion at constant velocity, which is exact in floating point for
+	 * whole-numbered steps.
+	 */
+	private static class CountingPropagator implements Propagator {
+		private final boolean analytic;
+		private int           steps = 0;
+
+		CountingPropagator(boolean analytic) {
+			this.analytic = analytic;
+		}
+
+		@Override
+		public void propagate(double[] state, double dt) {
+			for (int i = 0; i < 3; i++) {
+				state[i] += state[i + 3] * dt;
+			}
+			steps++;
+		}
+
+		@Override
+		public boolean isAnalytic() {
+			return analytic;
+		}
+	}
+}
@@ -5,6 +5,7 @@ import gov.nasa.arc.mct.gui.SelectionProvider;
 import gov.nasa.arc.mct.gui.View;
 import gov.nasa.arc.mct.gui.ViewRoleSelection;
 import gov.nasa.arc.mct.qspersistence.service.InternalPersistenceAccess;
+import gov.nasa.arc.mct.qspersistence.service.PersistenceServiceImpl;
 import gov.nasa.arc.mct.services.component.ViewType;
 
 import java.awt.BorderLayout;
@@ -21,9 +22,9 @@ import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
@@ -49,6 +50,7 @@ public class SearchUI extends JPanel implements SelectionProvider {
 
 	//  private final static ResourceBundle bundle = ResourceBundle.getBundle("Platform"); //NOI18N
   private static final int PADDING = 5;
+  private static final int PAGE_SIZE = 50; // Results shown at a time while a search is running
   private JTextField baseDisplayedNameField;
   private DefaultListModel listModel = new DefaultListModel();
   private JList list;
@@ -173,37 +175,51 @@ public class SearchUI extends JPanel implements SelectionProvider {
       add(new JScrollPane(list), BorderLayout.CENTER);
   }
   
-  private Collection<AbstractComponent> search(String pattern, boolean isFindObjectsCreatedByMe) {
-      Collection<AbstractComponent> results = InternalPersistenceAccess.getPersistenceService().search(pattern);
-      
-      if (isFindObjectsCreatedByMe) {
-    	  //TODO: filter search results by me
-      }
-      
-      return results;
-  }
-  
-  private class SearchTask extends SwingWorker<Collection<AbstractComponent>, Void> {
-      private AtomicInteger total = new AtomicInteger();
+  private class SearchTask extends SwingWorker<Integer, ComponentInfo> {
+      private final String displayNamePattern = baseDisplayedNameField.getText().trim();
+      private final boolean isFindObjectsCreatedByMe = findObjectsCreatedByMe.isSelected();
                       
       public SearchTask() {            
       }
 
       @Override
-      protected Collection<AbstractComponent> doInBackground() throws Exception {            
-          String displayNamePattern = baseDisplayedNameField.getText().trim();
-          Collection<AbstractComponent> result = search(displayNamePattern, findObjectsCreatedByMe.isSelected());
-          total.set(result.size());
-          return result;
+      protected Integer doInBackground() throws Exception {            
+          PersistenceServiceImpl persistence = InternalPersistenceAccess.getPersistenceService();
+          List<ComponentInfo> page = new ArrayList<ComponentInfo>(PAGE_SIZE);
+          int total = 0;
+          Iterator<String> ids = persistence.find(displayNamePattern);
+          while (ids.hasNext() && !isCancelled()) {
+              // Read what the list shows from the store, rather than loading each match
+              String id = ids.next();
+              String name = persistence.getDisplayName(id);
+              String type = persistence.getComponentType(id);
+              if (type == null) continue; // Deleted since it was found
+              if (isFindObjectsCreatedByMe) {
+                  //TODO: filter search results by me
+              }
+              total++;
+              page.add(new ComponentInfo(id, name, type));
+              if (page.size() >= PAGE_SIZE) {
+                  publish(page.toArray(new ComponentInfo[page.size()]));
+                  page.clear();
+              }
+          }
+          publish(page.toArray(new ComponentInfo[page.size()]));
+          return total;
+      }
+      
+      @Override
+      protected void process(List<ComponentInfo> results) {
+          for (ComponentInfo ci : results) {
+              listModel.addElement(ci);
+          }
+          resultStatus.setText("Searching... " + listModel.size());
       }
       
       @Override
       public void done() {
           try {
-              for (AbstractComponent comp : get()) {
-                  listModel.addElement(new ComponentInfo(comp.getComponentId(), comp.getDisplayName(), comp.getComponentTypeID()));
-              }
-              resultStatus.setText("Search Results: " + listModel.size() + " out of " + total.get());
+              resultStatus.setText("Search Results: " + listModel.size() + " out of " + get());
           } catch (InterruptedException e) {
               listModel.removeAllElements();
           } catch (ExecutionException e) {
@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space
+ * Administration. All rights reserved.
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See
+ * the MCT Open Source Licenses file included with this distribution or the About
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional
+ * information.
+ *******************************************************************************/
+package gov.nasa.arc.mct.qspersistence.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File-backed storage for the quickstart persistence service. Changes are appended
+ * to a journal, one checksummed batch per call to {@link #write}, and the journal is
+ * periodically folded into a compacted snapshot.
+ *
+ * Snapshots are never overwritten; each compaction produces a new generation
+ * (components.N.snapshot, with its own journal components.N.journal), so that a
+ * snapshot which is still memory-mapped by a previous generation's records stays valid.
+ *
+ * Compaction happens in two steps. {@link #rotate} starts the journal of the next
+ * generation, which is quick and is done while the caller holds the state steady;
+ * {@link #writeSnapshot} then writes that generation's snapshot from a copy of the
+ * state, and may run in the background while further batches are journaled. Until the
+ * snapshot is complete, the store is recovered from the previous snapshot followed by
+ * every journal since.
+ */
+class ComponentJournal {
+	/** System property naming the directory to store components in. */
+	public static final String DIRECTORY_PROPERTY = "mct.qspersistence.dir";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ComponentJournal.class);
+
+	private static final String PREFIX   = "components.";
+	private static final String SNAPSHOT = ".snapshot";
+	private static final String JOURNAL  = ".journal";
+	private static final String TEMP     = ".tmp";
+
+	private static final int  MAGIC              = 0x4d435451; // "MCTQ"
+	private static final int  COMPACT_THRESHOLD  = 10000;      // Journaled operations
+	private static final int  WRITE_BUFFER_SIZE  = 1 << 16;
+	private static final int  MAP_SIZE           = 1 << 28;    // Snapshots are mapped in pieces of this size
+
+	private static final byte PERSIST = 'P';
+	private static final byte DELETE  = 'D';
+	private static final byte TAG     = 'T';
+
+	/**
+	 * Receives the contents of the store, in order, when it is opened.
+	 */
+	public interface Replay {
+		void restore(ComponentRecord record);
+		void remove(String componentId);
+		void tag(String tag, String componentId);
+	}
+
+	private final File  directory;
+	private final int   compactThreshold;
+	private final int   mapSize;
+	private int         generation = 0;
+	private FileChannel journal;
+	private int         journaled  = 0;
+
+	public ComponentJournal(File directory) {
+		this(directory, COMPACT_THRESHOLD, MAP_SIZE);
+	}
+
+	ComponentJournal(File directory, int compactThreshold, int mapSize) {
+		this.directory = directory;
+		this.compactThreshold = compactThreshold;
+		this.mapSize = mapSize;
+	}
+
+	/**
+	 * Open the store, replaying its latest snapshot and every journal written since.
+	 * @param replay the receiver of stored records
+	 * @return true if anything was restored
+	 * @throws IOException
+	 */
+	public synchronized boolean open(Replay replay) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		int oldest = findLatestGeneration(SNAPSHOT);
+		journaled = 0;
+		boolean restored = false;
+
+		File snapshot = getFile(oldest, SNAPSHOT);
+		if (snapshot.exists()) {
+			restored |= readSnapshot(snapshot, replay);
+		}
+
+		// Journals of later generations exist if a compaction was interrupted
+		generation = Math.max(oldest, findLatestGeneration(JOURNAL));
+		long valid = 0;
+		for (int g = oldest; g <= generation; g++) {
+			File journalFile = getFile(g, JOURNAL);
+			valid = journalFile.exists() ? readJournal(journalFile, replay) : 0;
+		}
+		restored |= journaled > 0;
+		journal = new RandomAccessFile(getFile(generation, JOURNAL), "rw").getChannel();
+		journal.truncate(valid); // Discard any partially-written batch
+		journal.position(valid);
+
+		removeOldGenerations(oldest, true);
+		return restored;
+	}
+
+	/**
+	 * Append a batch of changes to the journal. The batch is written and forced to
+	 * disk as a unit.
+	 * @param persisted records to store
+	 * @param deleted ids of components to remove
+	 * @param tags pairs of tag and component id to record
+	 * @throws IOException
+	 */
+	public synchronized void write(Collection<ComponentRecord> persisted, Collection<String> deleted, Collection<String[]> tags) throws IOException {
+		int length = 0;
+		for (ComponentRecord record : persisted) {
+			length += 1 + record.getEncodedLength();
+		}
+		for (String id : deleted) {
+			length += 1 + ComponentRecord.size(ComponentRecord.bytes(id));
+		}
+		for (String[] tag : tags) {
+			length += 1 + ComponentRecord.size(ComponentRecord.bytes(tag[0])) + ComponentRecord.size(ComponentRecord.bytes(tag[1]));
+		}
+		if (length == 0) return;
+
+		ByteBuffer batch = ByteBuffer.allocate(4 + 8 + length);
+		batch.position(12);
+		for (ComponentRecord record : persisted) {
+			batch.put(PERSIST);
+			batch.put(record.getEncoded());
+		}
+		for (String id : deleted) {
+			batch.put(DELETE);
+			ComponentRecord.putString(batch, ComponentRecord.bytes(id));
+		}
+		for (String[] tag : tags) {
+			batch.put(TAG);
+			ComponentRecord.putString(batch, ComponentRecord.bytes(tag[0]));
+			ComponentRecord.putString(batch, ComponentRecord.bytes(tag[1]));
+		}
+		CRC32 crc = new CRC32();
+		crc.update(batch.array(), 12, length);
+		batch.putInt(0, length);
+		batch.putLong(4, crc.getValue());
+		batch.rewind();
+
+		while (batch.hasRemaining()) {
+			journal.write(batch);
+		}
+		journal.force(false);
+		journaled += persisted.size() + deleted.size() + tags.size();
+	}
+
+	/**
+	 * Check whether enough has been journaled since the last snapshot that a
+	 * compaction is worthwhile.
+	 * @return true if {@link #compact} should be called
+	 */
+	public synchronized boolean needsCompaction() {
+		return journaled >= compactThreshold;
+	}
+
+	/**
+	 * Start a new, empty journal. The state as of this call should then be passed
+	 * to {@link #writeSnapshot} along with the returned generation.
+	 * @return the generation of the new journal
+	 * @throws IOException
+	 */
+	public synchronized int rotate() throws IOException {
+		FileChannel next = new RandomAccessFile(getFile(generation + 1, JOURNAL), "rw").getChannel();
+		next.truncate(0);
+		journal.close();
+		journal = next;
+		journaled = 0;
+		return ++generation;
+	}
+
+	/**
+	 * Write the snapshot of a generation started by {@link #rotate}, and remove the
+	 * files it supersedes. This does not block writes to the journal, but should not
+	 * be called for two generations at once.
+	 * @param next the generation returned by {@link #rotate}
+	 * @param records all stored records, as of the rotation
+	 * @param tags pairs of tag and component id, as of the rotation
+	 * @throws IOException
+	 */
+	public void writeSnapshot(int next, Collection<ComponentRecord> records, Collection<String[]> tags) throws IOException {
+		File temp = getFile(next, SNAPSHOT + TEMP);
+		FileChannel out = new FileOutputStream(temp).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+			buffer.putInt(MAGIC);
+			for (ComponentRecord record : records) {
+				append(out, buffer, ByteBuffer.wrap(new byte[] { PERSIST }));
+				append(out, buffer, record.getEncoded());
+			}
+			for (String[] tag : tags) {
+				byte[] t = ComponentRecord.bytes(tag[0]);
+				byte[] id = ComponentRecord.bytes(tag[1]);
+				ByteBuffer b = ByteBuffer.allocate(1 + ComponentRecord.size(t) + ComponentRecord.size(id));
+				b.put(TAG);
+				ComponentRecord.putString(b, t);
+				ComponentRecord.putString(b, id);
+				b.flip();
+				append(out, buffer, b);
+			}
+			buffer.flip();
+			writeFully(out, buffer);
+			out.force(true);
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(getFile(next, SNAPSHOT))) {
+			throw new IOException("Could not rename " + temp);
+		}
+		removeOldGenerations(next, false);
+	}
+
+	/**
+	 * Write a new snapshot containing exactly the given state, and start a new,
+	 * empty journal. The caller must not write to the journal until this returns.
+	 * @param records all stored records
+	 * @param tags pairs of tag and component id
+	 * @throws IOException
+	 */
+	public void compact(Collection<ComponentRecord> records, Collection<String[]> tags) throws IOException {
+		writeSnapshot(rotate(), records, tags);
+	}
+
+	public synchronized void close() {
+		try {
+			if (journal != null) journal.close();
+		} catch (IOException ioe) {
+			LOGGER.warn("Could not close journal", ioe);
+		}
+	}
+
+	private boolean readSnapshot(File file, Replay replay) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0);
+			if (magic.hasRemaining() || magic.getInt(0) != MAGIC) {
+				throw new IOException("Not a component snapshot: " + file);
+			}
+			// A single mapping cannot exceed 2 GB, so map the snapshot in pieces. Each piece
+			// ends at the last whole operation within it, and the next begins right after. 
+			// The mappings remain valid after the channel is closed, for as long as records
+			// refer to them.
+			long size = channel.size();
+			long position = 4;
+			int length = mapSize;
+			while (position < size) {
+				long remaining = size - position;
+				ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(length, remaining));
+				readOperations(in, replay);
+				if (in.position() > 0) {
+					position += in.position();
+					length = mapSize;
+				} else if (length < remaining) {
+					length = (int) Math.min(Integer.MAX_VALUE, 2L * length); // One operation larger than a piece
+				} else {
+					throw new IOException("Truncated component snapshot: " + file);
+				}
+			}
+			return size > 4;
+		} finally {
+			channel.close();
+		}
+	}
+
+	private long readJournal(File file, Replay replay) throws IOException {
+		// Journals are bounded by the compaction threshold, so read onto the heap
+		// rather than mapping (a mapped file could not be truncated on all platforms)
+		FileChannel channel = new FileInputStream(file).getChannel();
+		ByteBuffer in;
+		try {
+			in = ByteBuffer.allocate((int) channel.size());
+			while (in.hasRemaining() && channel.read(in) >= 0);
+			in.flip();
+		} finally {
+			channel.close();
+		}
+		CRC32 crc = new CRC32();
+		while (in.remaining() >= 12) {
+			int start = in.position();
+			int length = in.getInt();
+			long checksum = in.getLong();
+			if (length < 0 || length > in.remaining()) {
+				in.position(start);
+				break;
+			}
+			crc.reset();
+			crc.update(in.array(), in.position(), length);
+			if (crc.getValue() != checksum) {
+				in.position(start);
+				break;
+			}
+			ByteBuffer batch = in.slice();
+			batch.limit(length);
+			journaled += readOperations(batch, replay);
+			if (batch.hasRemaining()) {
+				throw new IOException("Malformed journal entry in " + file);
+			}
+			in.position(in.position() + length);
+		}
+		if (in.hasRemaining()) {
+			LOGGER.warn("Discarding incomplete journal entry in {}", file);
+		}
+		return in.position();
+	}
+
+	/*
+	 * Replay the operations in the buffer, stopping before one which is not wholly
+	 * contained in it.
+	 */
+	private int readOperations(ByteBuffer in, Replay replay) throws IOException {
+		int count = 0;
+		while (in.hasRemaining() && getOperationLength(in) <= in.remaining()) {
+			byte op = in.get();
+			switch (op) {
+			case PERSIST:
+				replay.restore(ComponentRecord.read(in));
+				break;
+			case DELETE:
+				replay.remove(ComponentRecord.getString(in));
+				break;
+			case TAG:
+				String tag = ComponentRecord.getString(in);
+				replay.tag(tag, ComponentRecord.getString(in));
+				break;
+			default:
+				throw new IOException("Unrecognized operation " + op);
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/*
+	 * Get the length of the operation at the buffer's position, or Long.MAX_VALUE if
+	 * not enough of it is in the buffer to tell.
+	 */
+	private static long getOperationLength(ByteBuffer in) throws IOException {
+		int p = in.position();
+		if (in.remaining() < 5) return Long.MAX_VALUE;
+		byte op = in.get(p);
+		switch (op) {
+		case PERSIST:
+			int length = in.getInt(p + 1);
+			if (length < 4) throw new IOException("Malformed component record");
+			return 1L + length;
+		case DELETE:
+			return 5L + Math.max(0, in.getInt(p + 1));
+		case TAG:
+			long first = 5L + Math.max(0, in.getInt(p + 1));
+			if (in.remaining() < first + 4) return Long.MAX_VALUE;
+			return first + 4 + Math.max(0, in.getInt(p + (int) first));
+		default:
+			throw new IOException("Unrecognized operation " + op);
+		}
+	}
+
+	private int findLatestGeneration(String suffix) {
+		int latest = 0;
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.endsWith(suffix)) latest = Math.max(latest, getGeneration(name, suffix));
+			}
+		}
+		return latest;
+	}
+
+	private void removeOldGenerations(int oldest, boolean temporary) {
+		String[] names = directory.list();
+		if (names == null) return;
+		for (String name : names) {
+			int g = -1;
+			if (name.endsWith(SNAPSHOT)) g = getGeneration(name, SNAPSHOT);
+			else if (name.endsWith(JOURNAL)) g = getGeneration(name, JOURNAL);
+			// Temporary files are left over from an interrupted compaction. Deleting a
+			// snapshot which is still mapped may fail on some platforms; it will be
+			// retried the next time the store is opened.
+			if (g >= 0 && g < oldest || temporary && name.endsWith(TEMP)) new File(directory, name).delete();
+		}
+	}
+
+	private int getGeneration(String name, String suffix) {
+		if (!name.startsWith(PREFIX)) return -1;
+		try {
+			return Integer.parseInt(name.substring(PREFIX.length(), name.length() - suffix.length()));
+		} catch (NumberFormatException nfe) {
+			return -1; // Not one of ours
+		}
+	}
+
+	private File getFile(int g, String suffix) {
+		return new File(directory, PREFIX + g + suffix);
+	}
+
+	private static void append(FileChannel out, ByteBuffer buffer, ByteBuffer b) throws IOException {
+		if (b.remaining() > buffer.remaining()) {
+			buffer.flip();
+			writeFully(out, buffer);
+			buffer.clear();
+		}
+		if (b.remaining() > buffer.remaining()) {
+			writeFully(out, b);
+		} else {
+			buffer.put(b);
+		}
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer b) throws IOException {
+		while (b.hasRemaining()) {
+			out.write(b);
+		}
+	}
+}
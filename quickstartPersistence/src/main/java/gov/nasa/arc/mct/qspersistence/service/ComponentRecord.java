@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space
+ * Administration. All rights reserved.
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See
+ * the MCT Open Source Licenses file included with this distribution or the About
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional
+ * information.
+ *******************************************************************************/
+package gov.nasa.arc.mct.qspersistence.service;
+
+import gov.nasa.arc.mct.components.AbstractComponent;
+import gov.nasa.arc.mct.components.ExtendedProperties;
+import gov.nasa.arc.mct.components.ModelStatePersistence;
+import gov.nasa.arc.mct.platform.spi.PlatformAccess;
+import gov.nasa.arc.mct.services.internal.component.ComponentInitializer;
+import gov.nasa.arc.mct.services.internal.component.Updatable;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The serialized form of one persisted component, as kept by the {@link ComponentJournal}.
+ *
+ * Identity, naming and references are decoded as soon as the record is read, since these
+ * are needed to answer lookups and searches. The model state and view properties, which
+ * are the bulk of a component, are left encoded in the backing buffer (typically a slice
+ * of a memory-mapped snapshot) until the component is first materialized.
+ */
+final class ComponentRecord {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ComponentRecord.class);
+
+	private static final String CHARSET = "UTF-8";
+
+	private static JAXBContext propertiesContext;
+
+	private final ByteBuffer   encoded;
+	private final String       componentId;
+	private final String       componentType;
+	private final String       displayName;
+	private final String       externalKey;
+	private final String       owner;
+	private final String       creator;
+	private final long         creationDate;
+	private final int          version;
+	private final List<String> children;
+	private final ByteBuffer   body;
+
+	private ComponentRecord(ByteBuffer encoded) {
+		this.encoded  = encoded;
+		ByteBuffer in = encoded.duplicate();
+		in.getInt(); // Total length
+		componentId   = getString(in);
+		componentType = getString(in);
+		displayName   = getString(in);
+		externalKey   = getString(in);
+		owner         = getString(in);
+		creator       = getString(in);
+		creationDate  = in.getLong();
+		version       = in.getInt();
+		int count     = in.getInt();
+		children      = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			children.add(getString(in));
+		}
+		int length    = in.getInt();
+		in.limit(in.position() + length);
+		body          = in.slice();
+	}
+
+	/**
+	 * Read the record at the current position of the buffer, advancing past it.
+	 * The returned record shares content with the buffer.
+	 * @param in the buffer to read from
+	 * @return the record
+	 */
+	public static ComponentRecord read(ByteBuffer in) {
+		int length = in.getInt(in.position());
+		ByteBuffer slice = in.duplicate();
+		slice.limit(in.position() + length);
+		in.position(in.position() + length);
+		return new ComponentRecord(slice.slice());
+	}
+
+	/**
+	 * Encode the persisted state of a component.
+	 * @param comp the component to encode
+	 * @param children the ids of components it references
+	 * @return the record
+	 */
+	public static ComponentRecord encode(AbstractComponent comp, List<String> children) {
+		List<byte[]> header = new ArrayList<byte[]>();
+		header.add(bytes(comp.getComponentId()));
+		header.add(bytes(comp.getComponentTypeID()));
+		header.add(bytes(comp.getDisplayName()));
+		header.add(bytes(comp.getExternalKey()));
+		header.add(bytes(comp.getOwner()));
+		header.add(bytes(comp.getCreator()));
+
+		List<byte[]> refs = new ArrayList<byte[]>(children.size());
+		for (String child : children) {
+			refs.add(bytes(child));
+		}
+
+		List<byte[]> content = new ArrayList<byte[]>();
+		ModelStatePersistence persistence = comp.getCapability(ModelStatePersistence.class);
+		content.add(bytes(persistence != null ? persistence.getModelState() : null));
+		Map<String, ExtendedProperties> viewProperties =
+			comp.getCapability(ComponentInitializer.class).getAllViewRoleProperties();
+		if (viewProperties == null) viewProperties = Collections.emptyMap();
+		for (Entry<String, ExtendedProperties> entry : viewProperties.entrySet()) {
+			String xml = marshal(entry.getValue());
+			if (xml != null) {
+				content.add(bytes(entry.getKey()));
+				content.add(bytes(xml));
+			}
+		}
+
+		int bodyLength = 4 + size(content);
+		int length = 4 + size(header) + 8 + 4 + 4 + size(refs) + 4 + bodyLength;
+		ByteBuffer out = ByteBuffer.allocate(length);
+		out.putInt(length);
+		putAll(out, header);
+		Date created = comp.getCreationDate();
+		out.putLong(created != null ? created.getTime() : -1L);
+		out.putInt(comp.getVersion());
+		out.putInt(refs.size());
+		putAll(out, refs);
+		out.putInt(bodyLength);
+		putString(out, content.get(0));
+		out.putInt((content.size() - 1) / 2);
+		putAll(out, content.subList(1, content.size()));
+		out.flip();
+		return new ComponentRecord(out);
+	}
+
+	/**
+	 * Create a new component instance from this record.
+	 * @return the component, or null if it could not be instantiated
+	 */
+	public AbstractComponent materialize() {
+		AbstractComponent comp = PlatformAccess.getPlatform().getComponentRegistry().newInstance(componentType);
+		if (comp == null) return null;
+		ComponentInitializer ci = comp.getCapability(ComponentInitializer.class);
+		ci.setId(componentId);
+		ci.setOwner(owner);
+		ci.setCreator(creator);
+		if (creationDate >= 0) ci.setCreationDate(new Date(creationDate));
+		comp.setDisplayName(displayName);
+		if (externalKey != null) comp.setExternalKey(externalKey);
+		comp.getCapability(Updatable.class).setVersion(version);
+
+		ByteBuffer in = body.duplicate();
+		String modelState = getString(in);
+		ModelStatePersistence persistence = comp.getCapability(ModelStatePersistence.class);
+		if (modelState != null && persistence != null) persistence.setModelState(modelState);
+		int count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			String viewType = getString(in);
+			ExtendedProperties properties = unmarshal(getString(in));
+			if (properties != null) ci.setViewRoleProperty(viewType, properties);
+		}
+		return comp;
+	}
+
+	/**
+	 * Get the encoded form of this record, suitable for writing to a journal or snapshot.
+	 * @return a read-only view of the encoded record
+	 */
+	public ByteBuffer getEncoded() {
+		return encoded.asReadOnlyBuffer();
+	}
+
+	public int getEncodedLength() {
+		return encoded.remaining();
+	}
+
+	public String getComponentId() {
+		return componentId;
+	}
+
+	public String getComponentType() {
+		return componentType;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	public String getExternalKey() {
+		return externalKey;
+	}
+
+	public String getCreator() {
+		return creator;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public List<String> getChildren() {
+		return children;
+	}
+
+	static byte[] bytes(String s) {
+		try {
+			return s != null ? s.getBytes(CHARSET) : null;
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee); // UTF-8 is always supported
+		}
+	}
+
+	static int size(byte[] b) {
+		return 4 + (b != null ? b.length : 0);
+	}
+
+	private static int size(List<byte[]> list) {
+		int size = 0;
+		for (byte[] b : list) {
+			size += size(b);
+		}
+		return size;
+	}
+
+	static void putString(ByteBuffer out, byte[] b) {
+		if (b == null) {
+			out.putInt(-1);
+		} else {
+			out.putInt(b.length);
+			out.put(b);
+		}
+	}
+
+	private static void putAll(ByteBuffer out, List<byte[]> list) {
+		for (byte[] b : list) {
+			putString(out, b);
+		}
+	}
+
+	static String getString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) return null;
+		byte[] b = new byte[length];
+		in.get(b);
+		try {
+			return new String(b, CHARSET);
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+	}
+
+	private static synchronized JAXBContext getPropertiesContext() throws JAXBException {
+		if (propertiesContext == null) {
+			propertiesContext = JAXBContext.newInstance(ExtendedProperties.class);
+		}
+		return propertiesContext;
+	}
+
+	private static String marshal(ExtendedProperties properties) {
+		try {
+			StringWriter writer = new StringWriter();
+			getPropertiesContext().createMarshaller().marshal(properties, writer);
+			return writer.toString();
+		} catch (JAXBException e) {
+			LOGGER.warn("Could not store view properties", e);
+			return null;
+		}
+	}
+
+	private static ExtendedProperties unmarshal(String xml) {
+		try {
+			Object o = getPropertiesContext().createUnmarshaller().unmarshal(new StringReader(xml));
+			return o instanceof ExtendedProperties ? (ExtendedProperties) o : null;
+		} catch (JAXBException e) {
+			LOGGER.warn("Could not restore view properties", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space
+ * Administration. All rights reserved.
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See
+ * the MCT Open Source Licenses file included with this distribution or the About
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional
+ * information.
+ *******************************************************************************/
+package gov.nasa.arc.mct.qspersistence.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A trigram index over the display names of persisted components, used to answer
+ * searches with * wildcards without examining every name.
+ *
+ * Names are indexed in lower case, with a start and end marker, so that the leading
+ * and trailing characters of an anchored pattern (one which does not begin or end
+ * with *) can also narrow the search. Updates are expected to come from a single
+ * writer at a time; lookups may run concurrently with them.
+ */
+class NameIndex {
+	private static final String START = "\u0002";
+	private static final String END   = "\u0003";
+	private static final int    GRAM  = 3;
+
+	private final Map<String, String>      names    = new ConcurrentHashMap<String, String>();
+	private final Map<String, Set<String>> postings = new ConcurrentHashMap<String, Set<String>>();
+
+	/**
+	 * Index (or re-index) a component under its current display name.
+	 * @param componentId the component's id
+	 * @param displayName its display name
+	 */
+	public void put(String componentId, String displayName) {
+		String name = displayName != null ? displayName.toLowerCase() : "";
+		String previous = names.put(componentId, name);
+		if (name.equals(previous)) return;
+		if (previous != null) {
+			for (String gram : grams(previous)) {
+				Set<String> ids = postings.get(gram);
+				if (ids != null) {
+					ids.remove(componentId);
+					if (ids.isEmpty()) postings.remove(gram);
+				}
+			}
+		}
+		for (String gram : grams(name)) {
+			Set<String> ids = postings.get(gram);
+			if (ids == null) {
+				postings.put(gram, ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+			}
+			ids.add(componentId);
+		}
+	}
+
+	/**
+	 * Remove a component from the index.
+	 * @param componentId the component's id
+	 */
+	public void remove(String componentId) {
+		String previous = names.remove(componentId);
+		if (previous != null) {
+			for (String gram : grams(previous)) {
+				Set<String> ids = postings.get(gram);
+				if (ids != null) {
+					ids.remove(componentId);
+					if (ids.isEmpty()) postings.remove(gram);
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		names.clear();
+		postings.clear();
+	}
+
+	/**
+	 * Find components whose display names match a pattern, ignoring case. In the
+	 * pattern, * matches any sequence of characters; everything else is literal.
+	 * Matches are found as the returned iterator is advanced.
+	 * @param pattern the pattern to match
+	 * @return the ids of matching components
+	 */
+	public Iterator<String> find(String pattern) {
+		String glob = pattern.toLowerCase();
+		StringBuilder regex = new StringBuilder();
+		Set<String> required = new LinkedHashSet<String>();
+		String[] literals = glob.split("\\*", -1);
+		for (int i = 0; i < literals.length; i++) {
+			if (i > 0) regex.append(".*");
+			if (!literals[i].isEmpty()) regex.append(Pattern.quote(literals[i]));
+			String literal = (i == 0 ? START : "") + literals[i] + (i == literals.length - 1 ? END : "");
+			for (int g = 0; g + GRAM <= literal.length(); g++) {
+				required.add(literal.substring(g, g + GRAM));
+			}
+		}
+		final Pattern compiled = Pattern.compile(regex.toString(), Pattern.DOTALL);
+
+		// Walk the smallest posting list, and check the rest by lookup
+		Iterator<String> walk = names.keySet().iterator();
+		final List<Set<String>> checks = new ArrayList<Set<String>>();
+		Set<String> smallest = null;
+		for (String gram : required) {
+			Set<String> ids = postings.get(gram);
+			if (ids == null) return Collections.<String>emptyList().iterator();
+			checks.add(ids);
+			if (smallest == null || ids.size() < smallest.size()) smallest = ids;
+		}
+		if (smallest != null) {
+			checks.remove(smallest);
+			walk = smallest.iterator();
+		}
+
+		final Iterator<String> candidates = walk;
+		return new Iterator<String>() {
+			private String next = advance();
+
+			private String advance() {
+				candidates:
+				while (candidates.hasNext()) {
+					String id = candidates.next();
+					for (Set<String> ids : checks) {
+						if (!ids.contains(id)) continue candidates;
+					}
+					String name = names.get(id);
+					if (name != null && compiled.matcher(name).matches()) return id;
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public String next() {
+				if (next == null) throw new NoSuchElementException();
+				String id = next;
+				next = advance();
+				return id;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static Set<String> grams(String name) {
+		String marked = START + name + END;
+		Set<String> grams = new HashSet<String>();
+		for (int g = 0; g + GRAM <= marked.length(); g++) {
+			grams.add(marked.substring(g, g + GRAM));
+		}
+		return grams;
+	}
+}
@@ -25,23 +25,35 @@ import gov.nasa.arc.mct.qspersistence.service.InternalPersistenceAccess;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ConcurrentModificationException;
 import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import gov.nasa.arc.mct.api.persistence.OptimisticLockException;
 import gov.nasa.arc.mct.components.AbstractComponent;
 import gov.nasa.arc.mct.components.ExtendedProperties;
 import gov.nasa.arc.mct.gui.MCTViewManifestationInfo;
@@ -52,7 +64,20 @@ import gov.nasa.arc.mct.services.internal.component.ComponentInitializer;
 import gov.nasa.arc.mct.services.internal.component.Updatable;
 import gov.nasa.arc.mct.services.internal.component.User;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class PersistenceServiceImpl implements PersistenceProvider {
+	/** 
+	 * System property which, when true, makes persist reject components saved from an
+	 * outdated version. By default the last write wins.
+	 */
+	public static final String CHECK_VERSIONS_PROPERTY = "mct.qspersistence.checkVersions";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PersistenceServiceImpl.class);
+
+	private static final String BOOTSTRAP_ADMIN   = "bootstrap:admin";
+	private static final String BOOTSTRAP_CREATOR = "bootstrap:creator";
 
 	private int id = 0; // Used to give components unique ids
 	
@@ -62,19 +87,46 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 		BOOTSTRAP_ALL
 	}
 	
-	private List<String>                   bootstrap           = new ArrayList<String>();
-	private Map<String, List<String>>      userBootstrap       = new HashMap<String, List<String>>();
-	private Map<String, AbstractComponent> persistedComponents = new HashMap<String, AbstractComponent>();
+	// Changes to the stored state are made while holding writeLock, so that the maps below 
+	// stay consistent with one another. Readers do not lock.
+	private final Object                   writeLock           = new Object();
+	
+	private List<String>                   bootstrap           = new CopyOnWriteArrayList<String>();
+	private Map<String, List<String>>      userBootstrap       = new ConcurrentHashMap<String, List<String>>();
+	private ConcurrentMap<String, AbstractComponent> 
+	                                       persistedComponents = new ConcurrentHashMap<String, AbstractComponent>();
 	private Map<String, User>              users               = new HashMap<String, User>();
-	private Map<String, List<String>>      references          = new HashMap<String, List<String>>();
+	private ReferenceIndex                 references          = new ReferenceIndex();
 	
-	private Set<String>                    updated             = new HashSet<String>();
+	// When a store directory is configured, every persisted component has a record here;
+	// persistedComponents then only holds those which have been materialized.
+	private volatile ComponentJournal      journal             = null;
+	private Map<String, ComponentRecord>   records             = new ConcurrentHashMap<String, ComponentRecord>();
+	private Set<String>                    staleRecords        = new HashSet<String>(); // References changed by deletion
+	private AtomicBoolean                  compacting          = new AtomicBoolean(false);
+	private ExecutorService                compactor           = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Quickstart persistence compactor");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	private NameIndex                      names               = new NameIndex();
+	private Map<String, Set<String>>       externalKeys        = new ConcurrentHashMap<String, Set<String>>(); // Lower case
+	private Map<String, String>            externalKeyIndex    = new ConcurrentHashMap<String, String>();      // Reverse of above
+	private Map<String, Class<?>>          componentTypes      = new ConcurrentHashMap<String, Class<?>>();
+	
+	private BlockingQueue<String>          updated             = new LinkedBlockingQueue<String>();
 	private ConcurrentHashMap<String, Set<AbstractComponent>> 
 	                                       cache               = new ConcurrentHashMap<String, Set<AbstractComponent>>();
 	
 	private AtomicReference<List<AbstractComponent>> workUnit  = new AtomicReference<List<AbstractComponent>>();
 	
 	private AtomicBoolean initialized = new AtomicBoolean(false);
+	private final boolean checkVersions = Boolean.getBoolean(CHECK_VERSIONS_PROPERTY);
+	private Thread        notifier    = null;
 	
 	public PersistenceServiceImpl() {
 		addUser("admin", "Admin");
@@ -82,8 +134,177 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	}
 	
 	private void initialize() {
-		if (initialized.getAndSet(true)) return; //Only initialize once!		
+		if (initialized.get()) return; //Only initialize once!
+		synchronized (writeLock) {
+			if (!initialized.get()) {
+				load();
+				initialized.set(true);
+			}
+		}
+	}
+	
+	private void load() {
+		if (!openJournal()) {
+			populate();
+			if (journal != null) {
+				for (Entry<String, AbstractComponent> entry : persistedComponents.entrySet()) {
+					List<String> children = references.getChildren(entry.getKey());
+					if (children == null) children = Collections.emptyList();
+					records.put(entry.getKey(), ComponentRecord.encode(entry.getValue(), children));
+				}
+				compactJournal();
+			}
+		}
 		
+		workUnit.set(null);
+
+		InternalPersistenceAccess.setPersistenceService(this);
+
+		notifier = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (true) {
+					Set<String> updates = new LinkedHashSet<String>();
+					try {
+						updates.add(updated.take());
+					} catch (InterruptedException ie) {
+						return;
+					}
+					updated.drainTo(updates);
+					try {
+						notifyStale(updates);
+					} catch (RuntimeException re) {
+						LOGGER.error("Could not notify components of changes", re);
+					}
+				}
+			}
+			
+		}, "Quickstart persistence stale notifier");
+		notifier.setDaemon(true);
+		notifier.start();
+		
+	}
+	
+	/**
+	 * Stop the background work of this service, and close its store. Called when the
+	 * service component is deactivated.
+	 */
+	public void deactivate() {
+		synchronized (writeLock) {
+			if (notifier != null) {
+				notifier.interrupt();
+				notifier = null;
+			}
+			compactor.shutdown();
+		}
+		try {
+			// Let a snapshot which is being written finish, so that it need not be redone
+			if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOGGER.warn("Gave up waiting for component store compaction");
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		if (journal != null) journal.close();
+	}
+	
+	private boolean openJournal() {
+		String directory = System.getProperty(ComponentJournal.DIRECTORY_PROPERTY);
+		if (directory == null) return false;
+		journal = new ComponentJournal(new File(directory));
+		try {
+			return journal.open(new ComponentJournal.Replay() {
+				@Override
+				public void restore(ComponentRecord record) {
+					records.put(record.getComponentId(), record);
+					names.put(record.getComponentId(), record.getDisplayName());
+					indexExternalKey(record.getComponentId(), record.getExternalKey());
+					references.setChildren(record.getComponentId(), new ArrayList<String>(record.getChildren()));
+				}
+
+				@Override
+				public void remove(String componentId) {
+					removeComponent(componentId);
+				}
+
+				@Override
+				public void tag(String tag, String componentId) {
+					ComponentRecord record = records.get(componentId);
+					if (record != null) tagComponent(tag, componentId, record.getCreator());
+				}				
+			});
+		} catch (IOException ioe) {
+			LOGGER.error("Could not open component store in " + directory + "; changes will not be saved", ioe);
+			journal = null;
+			records.clear();
+			names.clear();
+			externalKeys.clear();
+			externalKeyIndex.clear();
+			references.clear();
+			bootstrap.clear();
+			userBootstrap.clear();
+			return false;
+		}
+	}
+	
+	private void writeJournal(Collection<ComponentRecord> persisted, Collection<String> deleted, Collection<String[]> tags) {
+		try {
+			journal.write(persisted, deleted, tags);
+		} catch (IOException ioe) {
+			LOGGER.error("Could not write to component store", ioe);
+		}
+		if (journal.needsCompaction()) compactJournal();
+	}
+	
+	/*
+	 * Start a new journal, and write a snapshot of the current state in the background.
+	 * Must be called while holding writeLock, so that the copied state matches the
+	 * point at which the journal was started.
+	 */
+	private void compactJournal() {
+		if (compactor.isShutdown()) return;
+		if (!compacting.compareAndSet(false, true)) return; // The last snapshot is still being written
+		for (String stale : staleRecords) {
+			AbstractComponent comp = getPersistedComponent(stale);
+			List<String> children = references.getChildren(stale);
+			if (comp != null && children != null) records.put(stale, ComponentRecord.encode(comp, children));
+		}
+		staleRecords.clear();
+		final List<String[]> tags = new ArrayList<String[]>();
+		for (String b : bootstrap) {
+			tags.add(new String[] { BOOTSTRAP_ADMIN, b });
+		}
+		for (List<String> u : userBootstrap.values()) {
+			for (String b : u) {
+				tags.add(new String[] { BOOTSTRAP_CREATOR, b });
+			}
+		}
+		final ComponentJournal store = journal;
+		final List<ComponentRecord> snapshot = new ArrayList<ComponentRecord>(records.values());
+		final int generation;
+		try {
+			generation = store.rotate();
+		} catch (IOException ioe) {
+			LOGGER.error("Could not compact component store", ioe);
+			compacting.set(false);
+			return;
+		}
+		compactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					store.writeSnapshot(generation, snapshot, tags);
+				} catch (IOException ioe) {
+					LOGGER.error("Could not compact component store", ioe);
+				} finally {
+					compacting.set(false);
+				}
+			}
+		});
+	}
+	
+	private void populate() {
 		AbstractComponent systems     = addComponent("Systems", "admin", "admin", "gov.nasa.arc.mct.core.components.TelemetryDataTaxonomyComponent", Tag.BOOTSTRAP_ALL);
 		
 		AbstractComponent groups      = addComponent("Groups",  "admin", "admin", "gov.nasa.arc.mct.core.components.TelemetryDataTaxonomyComponent", Tag.BOOTSTRAP_ALL);
@@ -136,20 +357,6 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 		properties.addProperty("CANVAS CONTENT PROPERTY", info1);
 		properties.addProperty("CANVAS CONTENT PROPERTY", info2);
 		display.getCapability(ComponentInitializer.class).setViewRoleProperty("gov.nasa.arc.mct.canvas.view.CanvasView", properties);
-		
-		workUnit.set(null);
-
-		InternalPersistenceAccess.setPersistenceService(this);
-
-		new Timer().schedule(new TimerTask() {
-
-			@Override
-			public void run() {
-				updateComponentsFromDatabase();
-			}
-			
-		}, 5000, 1500);
-		
 	}
 	
 	private void addUser(final String user, final String group) {
@@ -172,10 +379,7 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	}
 	
 	private void link (AbstractComponent parent, AbstractComponent child) {
-		String parentId = parent.getComponentId();
-		String childId  = child .getComponentId();
-		if (!references.containsKey(parentId)) references.put(parentId, new ArrayList<String>());
-		references.get(parentId).add(childId);
+		references.addChild(parent.getComponentId(), child.getComponentId());
 	}
 	
 	private AbstractComponent addComponent(String displayName, String owner, String creator, String componentClass, Tag tag, Object... model) {
@@ -191,12 +395,14 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 			ac.getCapability(Updatable.class).setVersion(0);
 			if (model.length > 0) ModelFormatter.applyModel(ac, model);			
 			persistedComponents.put(componentId, ac);
+			names.put(componentId, displayName);
+			indexExternalKey(componentId, ac.getExternalKey());
 			switch (tag) {
 			case BOOTSTRAP_ALL:
 				bootstrap.add(componentId);
 				break;
 			case BOOTSTRAP_CREATOR:
-				if (!userBootstrap.containsKey(creator)) userBootstrap.put(creator, new ArrayList<String>());
+				if (!userBootstrap.containsKey(creator)) userBootstrap.put(creator, new CopyOnWriteArrayList<String>());
 				userBootstrap.get(creator).add(componentId);
 				break;
 			}
@@ -215,13 +421,13 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 
 	@Override
 	public void completeRelatedOperations(boolean save) {
-		try {
-			if (save) {
-				Collection<AbstractComponent> comps = workUnit.get();
-				if (comps != null) persist(comps); 
+		List<AbstractComponent> comps = workUnit.getAndSet(null);
+		if (save && comps != null) {
+			List<AbstractComponent> toPersist;
+			synchronized (comps) {
+				toPersist = new ArrayList<AbstractComponent>(comps);
 			}
-		} finally {
-			workUnit.set(null);
+			persist(toPersist); 
 		}
 	}
 
@@ -235,16 +441,35 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	public <T extends AbstractComponent> T getComponent(String externalKey,
 			Class<T> componentType) {
 		initialize();
-		for (AbstractComponent comp : persistedComponents.values()) {
-			if (comp.getExternalKey().toLowerCase().equals(externalKey.toLowerCase())) {
-				if (componentType.isAssignableFrom(comp.getClass())) {
-					return componentType.cast(getComponent(comp.getComponentId()));
+		Set<String> ids = externalKeys.get(externalKey.toLowerCase());
+		if (ids != null) {
+			for (String componentId : ids) {
+				// Check the stored type first, so that candidates of other types are not loaded
+				String type = getComponentType(componentId);
+				if (type == null) continue;
+				Class<?> c = type.equals(componentType.getName()) ? componentType : getComponentClass(componentId, type);
+				if (c != null && componentType.isAssignableFrom(c)) {
+					return componentType.cast(getComponent(componentId));
 				}
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * Find the class implementing a stored component's type. A component of the type is
+	 * only loaded the first time the type is seen.
+	 */
+	private Class<?> getComponentClass(String componentId, String type) {
+		Class<?> c = componentTypes.get(type);
+		if (c == null) {
+			AbstractComponent comp = getPersistedComponent(componentId);
+			if (comp == null) return null;
+			componentTypes.put(type, c = comp.getClass());
+		}
+		return c;
+	}
+
 	@Override
 	public User getUser(String userId) {
 		return users.get(userId);
@@ -253,7 +478,6 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	@Override
 	public AbstractComponent getComponent(String componentId) {
 		initialize();
-		//AbstractComponent comp = getComponentFromCache(componentId);
 		return getComponentFromStore(componentId);
 	}
 
@@ -261,61 +485,113 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	public Collection<AbstractComponent> getReferences(
 			AbstractComponent component) {
 		initialize();
-		List<AbstractComponent> parents = new ArrayList<AbstractComponent>();
-		for (Entry<String, List<String>> entry : references.entrySet()) {
-			if (entry.getValue().contains(component.getComponentId())) {
-				AbstractComponent p = getComponent(entry.getKey());
-				if (p != null) parents.add(p);
-			}
+		Set<String> parentIds = references.getParents(component.getComponentId());
+		List<AbstractComponent> parentComponents = new ArrayList<AbstractComponent>(parentIds.size());
+		for (String parentId : parentIds) {
+			AbstractComponent p = getComponent(parentId);
+			if (p != null) parentComponents.add(p);
 		}
-		return parents;
+		return parentComponents;
 	}
 
 	@Override
 	public void persist(Collection<AbstractComponent> componentsToPersist) {
+		// Clone outside of the lock; if versions are checked, nothing is stored until all pass
+		List<AbstractComponent> clones = new ArrayList<AbstractComponent>(componentsToPersist.size());
 		for (AbstractComponent comp : componentsToPersist) {
-			int version = comp.getVersion() + 1;
+			clones.add(comp.clone());
+		}
+		
+		synchronized (writeLock) {
+			if (checkVersions) checkVersions(componentsToPersist);
 			
-			// TODO: Throw optimistic lock exception when versions mismatch?
-			AbstractComponent clone = comp.clone();
-			comp .getCapability(ComponentInitializer.class).componentSaved();
-			clone.getCapability(ComponentInitializer.class).setId(comp.getComponentId());			
-			clone.getCapability(Updatable.class).setVersion(version);
-			comp .getCapability(Updatable.class).setVersion(version);
-			List<String> children = new ArrayList<String>();
-			if (!comp.isLeaf()) {
-				for (AbstractComponent child : clone.getComponents()) {
-					children.add(child.getComponentId());
+			List<ComponentRecord> persisted = new ArrayList<ComponentRecord>();
+			int i = 0;
+			for (AbstractComponent comp : componentsToPersist) {
+				// The last write wins, but always as a new version, so that other copies go stale
+				Integer stored = getPersistedVersion(comp.getComponentId());
+				int version = Math.max(comp.getVersion(), stored != null ? stored : 0) + 1;
+				
+				AbstractComponent clone = clones.get(i++);
+				comp .getCapability(ComponentInitializer.class).componentSaved();
+				clone.getCapability(ComponentInitializer.class).setId(comp.getComponentId());			
+				clone.getCapability(Updatable.class).setVersion(version);
+				comp .getCapability(Updatable.class).setVersion(version);
+				List<String> children = new ArrayList<String>();
+				if (!comp.isLeaf()) {
+					for (AbstractComponent child : clone.getComponents()) {
+						children.add(child.getComponentId());
+					}
+				}
+				references.setChildren(clone.getComponentId(), children);
+				persistedComponents.put(comp.getComponentId(), clone);
+				names.put(comp.getComponentId(), clone.getDisplayName());
+				indexExternalKey(comp.getComponentId(), clone.getExternalKey());
+				if (journal != null) {
+					ComponentRecord record = ComponentRecord.encode(clone, children);
+					records.put(comp.getComponentId(), record);
+					staleRecords.remove(comp.getComponentId());
+					persisted.add(record);
 				}
+				putComponentInCache(comp);
+				updated.add(comp.getComponentId());
+				comp.componentSaved();
+			}
+			if (journal != null) {
+				writeJournal(persisted, Collections.<String>emptyList(), Collections.<String[]>emptyList());
+			}
+		}
+	}
+
+	private void checkVersions(Collection<AbstractComponent> componentsToPersist) {
+		for (AbstractComponent comp : componentsToPersist) {
+			Integer stored = getPersistedVersion(comp.getComponentId());
+			if (stored != null && stored != comp.getVersion()) {
+				throw new OptimisticLockException(new ConcurrentModificationException(
+						comp.getComponentId() + " is at version " + stored + 
+						" but was saved from version " + comp.getVersion()));
 			}
-			references.put(clone.getComponentId(), children);
-			persistedComponents.put(comp.getComponentId(), clone);
-			putComponentInCache(comp);
-			updated.add(comp.getComponentId());
-			comp.componentSaved();
 		}
 	}
 
 	@Override
 	public void delete(Collection<AbstractComponent> componentsToDelete) {
-		for (AbstractComponent comp : componentsToDelete ) {
-			for (Entry<String, List<String>> entry : references.entrySet()) {
-				if (entry.getValue().contains(comp.getComponentId())) {
-					entry.getValue().remove(comp.getComponentId());
-					updated.add(entry.getKey());
-				}
+		List<String> deleted = new ArrayList<String>();
+		synchronized (writeLock) {
+			for (AbstractComponent comp : componentsToDelete ) {
+				removeComponent(comp.getComponentId());
+				deleted.add(comp.getComponentId());
+			}
+			if (journal != null) {
+				writeJournal(Collections.<ComponentRecord>emptyList(), deleted, Collections.<String[]>emptyList());
 			}
-			persistedComponents.remove(comp.getComponentId());
 		}
 	}
+	
+	/*
+	 * Forget a deleted component. It is removed from its parents' references, and its 
+	 * own references are dropped as well, so that its children no longer list it as a 
+	 * parent (and a component created later with the same id starts with none).
+	 */
+	private void removeComponent(String id) {
+		for (String parentId : references.remove(id)) {
+			updated.add(parentId);
+			if (journal != null) staleRecords.add(parentId);
+		}
+		records.remove(id); // Before persistedComponents; see getPersistedComponent
+		names.remove(id);
+		indexExternalKey(id, null);
+		persistedComponents.remove(id);
+		staleRecords.remove(id);
+	}
 
 	@Override
 	public List<AbstractComponent> getReferencedComponents(
 			AbstractComponent component) {
 		initialize();
-		List<String> ref = references.get(component.getComponentId());
+		List<String> ref = references.getChildren(component.getComponentId());
 		if (ref == null) return Collections.emptyList();
-		List<AbstractComponent> children = new ArrayList<AbstractComponent>();
+		List<AbstractComponent> children = new ArrayList<AbstractComponent>(ref.size());
 		for (String r : ref){
 			AbstractComponent c = getComponent(r);
 			if (c != null) children.add(c);
@@ -355,21 +631,34 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	@Override
 	public void updateComponentsFromDatabase() {
 		initialize();
+		Set<String> updates = new LinkedHashSet<String>();
+		updated.drainTo(updates);
+		notifyStale(updates);
+	}
+	
+	/**
+	 * Mark cached instances of the given components as stale, if their versions 
+	 * differ from what has been persisted. 
+	 * @param updates the ids of components which have changed
+	 */
+	private void notifyStale(Collection<String> updates) {
 		List<AbstractComponent> maybeStale = new ArrayList<AbstractComponent>();
-		List<String> updates = new ArrayList<String>();
-		updates.addAll(updated);
-		for (String id : cache.keySet()) { //TODO: Figure out why updated set is incomplete
-			if (cache.containsKey(id)) {
-				AbstractComponent current = getComponentFromStore(id);
-				for (AbstractComponent cached : cache.get(id)) {
-					maybeStale.add(cached);
-					if (current.getVersion() != cached.getVersion()) {
-						cached.getCapability(Updatable.class).setStaleByVersion(current.getVersion());
-						AbstractComponent delegate = cached.getWorkUnitDelegate();
-						if (delegate != null) {
-							delegate.getCapability(Updatable.class).setStaleByVersion(current.getVersion());
-							maybeStale.add(delegate);
-						}
+		for (String id : updates) {
+			Set<AbstractComponent> instances = cache.get(id);
+			Integer version = getPersistedVersion(id);
+			if (instances == null || version == null) continue; // Not loaded, or deleted
+			List<AbstractComponent> cachedInstances;
+			synchronized (instances) {
+				cachedInstances = new ArrayList<AbstractComponent>(instances);
+			}
+			for (AbstractComponent cached : cachedInstances) {
+				maybeStale.add(cached);
+				if (version != cached.getVersion()) {
+					cached.getCapability(Updatable.class).setStaleByVersion(version);
+					AbstractComponent delegate = cached.getWorkUnitDelegate();
+					if (delegate != null) {
+						delegate.getCapability(Updatable.class).setStaleByVersion(version);
+						maybeStale.add(delegate);
 					}
 				}
 			}
@@ -386,8 +675,6 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 				});
 			}
 		}
-			
-		updated.removeAll(updates);
 	}
 
 	@Override
@@ -413,24 +700,61 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	}
 
 	public Collection<AbstractComponent> search (String pattern) {
-		initialize();
-		String regex = pattern.toLowerCase().replaceAll("\\*", ".*");
 		List<AbstractComponent> matches = new ArrayList<AbstractComponent>();
-		for (AbstractComponent ac : persistedComponents.values()) {
-			if (ac.getDisplayName().toLowerCase().matches(regex)) {
-				matches.add(getComponent(ac.getComponentId()));
-			}
+		for (Iterator<String> ids = find(pattern); ids.hasNext();) {
+			AbstractComponent comp = getComponent(ids.next());
+			if (comp != null) matches.add(comp);
 		}
-		return matches; //TODO: Search!
+		return matches;
+	}
+	
+	/**
+	 * Find components by display name. Matching ignores case, and * in the pattern 
+	 * matches any sequence of characters. Matches are looked up in an index as the 
+	 * returned iterator is advanced, so callers can show early results while the 
+	 * search continues.
+	 * @param pattern the pattern to match
+	 * @return the ids of matching components
+	 */
+	public Iterator<String> find (String pattern) {
+		initialize();
+		return names.find(pattern);
+	}
+
+	/**
+	 * Get the display name of a persisted component, without creating an instance of it.
+	 * @param componentId the id of the component
+	 * @return its display name, or null if there is no such component
+	 */
+	public String getDisplayName(String componentId) {
+		initialize();
+		ComponentRecord record = records.get(componentId);
+		if (record != null) return record.getDisplayName();
+		AbstractComponent comp = persistedComponents.get(componentId);
+		return comp != null ? comp.getDisplayName() : null;
+	}
+	
+	/**
+	 * Get the type of a persisted component, without creating an instance of it.
+	 * @param componentId the id of the component
+	 * @return its component type id, or null if there is no such component
+	 */
+	public String getComponentType(String componentId) {
+		initialize();
+		ComponentRecord record = records.get(componentId);
+		if (record != null) return record.getComponentType();
+		AbstractComponent comp = persistedComponents.get(componentId);
+		return comp != null ? comp.getComponentTypeID() : null;
 	}
 
 	@Override
 	public AbstractComponent getComponentFromStore(String componentId) {
 		initialize();
-		AbstractComponent comp = persistedComponents.get(componentId);
-		if (comp != null) comp = comp.clone();
-		else              return null;
+		AbstractComponent persisted = getPersistedComponent(componentId);
+		if (persisted == null) return null;
+		AbstractComponent comp = persisted.clone();
 		comp.getCapability(ComponentInitializer.class).setId(componentId);
+		comp.getCapability(Updatable.class).setVersion(persisted.getVersion());
 //		if (!comp.isLeaf()) {
 //			comp.getCapability(ComponentInitializer.class).setComponentReferences(Collections.singleton(AbstractComponent.NULL_COMPONENT));
 //		}
@@ -438,31 +762,73 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 		return comp;
 	}
 	
+	private AbstractComponent getPersistedComponent(String componentId) {
+		AbstractComponent comp = persistedComponents.get(componentId);
+		while (comp == null) {
+			ComponentRecord record = records.get(componentId);
+			if (record == null) return null;
+			comp = record.materialize();
+			if (comp == null) return null;
+			AbstractComponent existing = persistedComponents.putIfAbsent(componentId, comp);
+			if (existing != null) return existing;
+			if (records.get(componentId) != record) {
+				// Replaced or deleted while materializing; don't keep an outdated copy
+				persistedComponents.remove(componentId, comp);
+				comp = persistedComponents.get(componentId);
+			}
+		}
+		return comp;
+	}
+	
+	private Integer getPersistedVersion(String componentId) {
+		ComponentRecord record = records.get(componentId);
+		if (record != null) return record.getVersion();
+		AbstractComponent comp = persistedComponents.get(componentId);
+		return comp != null ? comp.getVersion() : null;
+	}
+	
+	private void indexExternalKey(String componentId, String externalKey) {
+		String key = externalKey != null ? externalKey.toLowerCase() : null;
+		String previous = key != null ? externalKeyIndex.put(componentId, key) : externalKeyIndex.remove(componentId);
+		if (previous != null && !previous.equals(key)) {
+			Set<String> ids = externalKeys.get(previous);
+			if (ids != null) {
+				ids.remove(componentId);
+				if (ids.isEmpty()) externalKeys.remove(previous);
+			}
+		}
+		if (key != null) {
+			Set<String> ids = externalKeys.get(key);
+			if (ids == null) {
+				externalKeys.put(key, ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+			}
+			ids.add(componentId);
+		}
+	}
+	
 	private void putComponentInCache(AbstractComponent comp) {
 		String id = comp.getComponentId();
 		if (!cache.containsKey(id)) {
 			WeakHashMap<AbstractComponent, Boolean> map = new WeakHashMap<AbstractComponent, Boolean>();
-			cache.put(id, Collections.newSetFromMap(map));
+			cache.putIfAbsent(id, Collections.newSetFromMap(map));
 		}
-		cache.get(id).add(comp);
-	}
-	
-	private AbstractComponent getComponentFromCache(String componentId) {
-		if (cache.containsKey(componentId)) {
-			Set<AbstractComponent> set = cache.get(componentId);
-			if (!set.isEmpty()) {
-				return set.iterator().next();
-			}
+		Set<AbstractComponent> instances = cache.get(id);
+		synchronized (instances) {
+			instances.add(comp);
 		}
-		return null;
 	}
-
+	
 	@Override
 	public AbstractComponent getComponent(String externalKey,
 			String componentType) {
 		initialize();
 		try {
-			return (AbstractComponent) getComponent(externalKey, (Class<AbstractComponent>) Class.forName(componentType));
+			Class<?> type = componentTypes.get(componentType);
+			if (type == null) {
+				type = Class.forName(componentType);
+				componentTypes.put(componentType, type);
+			}
+			return (AbstractComponent) getComponent(externalKey, (Class<AbstractComponent>) type);
 		} catch (ClassNotFoundException cnfe) {
 			return null;
 		} catch (ClassCastException cce) {
@@ -479,28 +845,35 @@ public class PersistenceServiceImpl implements PersistenceProvider {
 	@Override
 	public void tagComponents(String tag,
 			Collection<AbstractComponent> components) {
-		for (AbstractComponent component : components) {
-			if (component != null) {
-				tagComponent(tag, component);
+		List<String[]> tagged = new ArrayList<String[]>();
+		synchronized (writeLock) {
+			for (AbstractComponent component : components) {
+				if (component != null) {
+					if (tagComponent(tag, component.getComponentId(), component.getCreator())) {
+						tagged.add(new String[] { tag, component.getComponentId() });
+					}
+				}
+			}
+			if (journal != null) {
+				writeJournal(Collections.<ComponentRecord>emptyList(), Collections.<String>emptyList(), tagged);
 			}
 		}
 	}
 	
-	private void tagComponent(String tag, AbstractComponent component) {
-		if (component == null) return;
-		String id = component.getComponentId();
+	private boolean tagComponent(String tag, String id, String creator) {
 		List<String> target = null;
-		if (tag.equals("bootstrap:admin")) {
+		if (tag.equals(BOOTSTRAP_ADMIN)) {
 			target = bootstrap;
-		} else if (tag.equals("bootstrap:creator")) {
-			String creator = component.getCreator();
+		} else if (tag.equals(BOOTSTRAP_CREATOR) && creator != null) {
 			if (!userBootstrap.containsKey(creator)) {
-				userBootstrap.put(creator, new ArrayList<String>());
+				userBootstrap.put(creator, new CopyOnWriteArrayList<String>());
 			}
 			target = userBootstrap.get(creator);
 		}
 		if (target != null && !target.contains(id)) {
 			target.add(id);
+			return true;
 		}
+		return false;
 	}
 }
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space
+ * Administration. All rights reserved.
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See
+ * the MCT Open Source Licenses file included with this distribution or the About
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional
+ * information.
+ *******************************************************************************/
+package gov.nasa.arc.mct.qspersistence.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The references between persisted components, indexed in both directions: from a
+ * component to the components it references (its children, in order), and from a
+ * component to the components which reference it (its parents), so that either can
+ * be found without scanning every reference.
+ *
+ * Updates are expected to come from a single writer at a time; lookups may run
+ * concurrently with them. Child lists are replaced, never modified, once visible.
+ */
+class ReferenceIndex {
+	private final Map<String, List<String>> children = new ConcurrentHashMap<String, List<String>>();
+	private final Map<String, Set<String>>  parents  = new ConcurrentHashMap<String, Set<String>>();
+
+	/**
+	 * Get the components a component references.
+	 * @param componentId the component's id
+	 * @return the ids of its children, in order, or null if none have been recorded
+	 */
+	public List<String> getChildren(String componentId) {
+		return children.get(componentId);
+	}
+
+	/**
+	 * Get the components which reference a component.
+	 * @param componentId the component's id
+	 * @return the ids of its parents (empty if there are none)
+	 */
+	public Set<String> getParents(String componentId) {
+		Set<String> p = parents.get(componentId);
+		return p != null ? Collections.unmodifiableSet(p) : Collections.<String>emptySet();
+	}
+
+	/**
+	 * Replace the components a component references.
+	 * @param parentId the referencing component's id
+	 * @param childIds the ids of its children, in order; the list must not be modified afterward
+	 */
+	public void setChildren(String parentId, List<String> childIds) {
+		List<String> previous = children.put(parentId, childIds);
+		if (previous != null) {
+			Set<String> current = new HashSet<String>(childIds);
+			for (String child : previous) {
+				if (!current.contains(child)) removeParent(parentId, child);
+			}
+		}
+		for (String child : childIds) {
+			addParent(parentId, child);
+		}
+	}
+
+	/**
+	 * Add a reference to the end of a component's children.
+	 * @param parentId the referencing component's id
+	 * @param childId the referenced component's id
+	 */
+	public void addChild(String parentId, String childId) {
+		List<String> childIds = new ArrayList<String>();
+		List<String> previous = children.get(parentId);
+		if (previous != null) childIds.addAll(previous);
+		childIds.add(childId);
+		setChildren(parentId, childIds);
+	}
+
+	/**
+	 * Remove a component from the index: it is removed from its parents' children, and 
+	 * its own children are forgotten (so they no longer list it as a parent).
+	 * @param componentId the component's id
+	 * @return the ids of the components which referenced it
+	 */
+	public Collection<String> remove(String componentId) {
+		Set<String> parentIds = parents.remove(componentId);
+		if (parentIds != null) {
+			for (String parentId : parentIds) {
+				List<String> siblings = children.get(parentId);
+				if (siblings != null) {
+					List<String> remaining = new ArrayList<String>(siblings);
+					remaining.removeAll(Collections.singleton(componentId));
+					children.put(parentId, remaining);
+				}
+			}
+		}
+		List<String> childIds = children.remove(componentId);
+		if (childIds != null) {
+			for (String child : childIds) removeParent(componentId, child);
+		}
+		return parentIds != null ? parentIds : Collections.<String>emptySet();
+	}
+
+	public void clear() {
+		children.clear();
+		parents.clear();
+	}
+
+	private void addParent(String parentId, String childId) {
+		Set<String> p = parents.get(childId);
+		if (p == null) parents.put(childId, p = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+		p.add(parentId);
+	}
+
+	private void removeParent(String parentId, String childId) {
+		Set<String> p = parents.get(childId);
+		if (p != null) {
+			p.remove(parentId);
+			if (p.isEmpty()) parents.remove(childId);
+		}
+	}
+}
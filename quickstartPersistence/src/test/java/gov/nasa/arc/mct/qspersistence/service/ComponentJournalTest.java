@@ -0,0 +1,251 @@
+package gov.nasa.arc.mct.qspersistence.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ComponentJournalTest {
+	private static final List<ComponentRecord> NONE_RECORDS = Collections.emptyList();
+	private static final List<String>          NONE         = Collections.emptyList();
+	private static final List<String[]>        NO_TAGS      = Collections.emptyList();
+
+	private File directory;
+
+	@BeforeMethod
+	public void setup() throws IOException {
+		directory = File.createTempFile("journal", "");
+		Assert.assertTrue(directory.delete());
+		Assert.assertTrue(directory.mkdir());
+	}
+
+	@AfterMethod
+	public void teardown() {
+		for (File f : directory.listFiles()) f.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		ComponentJournal journal = new ComponentJournal(directory);
+		Recorder recorder = new Recorder();
+		Assert.assertFalse(journal.open(recorder));
+		journal.write(Arrays.asList(record("a", "Alpha", "b"), record("b", "Beta")), NONE, NO_TAGS);
+		journal.write(Arrays.asList(record("c", "Gamma")), Arrays.asList("b"),
+				Collections.singletonList(new String[] { "tag", "a" }));
+		journal.close();
+
+		recorder = reopen(new ComponentJournal(directory));
+		Assert.assertEquals(recorder.names.keySet(), set("a", "c"));
+		Assert.assertEquals(recorder.names.get("a"), "Alpha");
+		Assert.assertEquals(recorder.children.get("a"), Arrays.asList("b"));
+		Assert.assertEquals(recorder.tags, Arrays.asList("tag:a"));
+	}
+
+	@Test
+	public void testTruncatedBatch() throws IOException {
+		ComponentJournal journal = new ComponentJournal(directory);
+		journal.open(new Recorder());
+		journal.write(Arrays.asList(record("a", "Alpha")), NONE, NO_TAGS);
+		journal.write(Arrays.asList(record("b", "Beta")), NONE, NO_TAGS);
+		journal.close();
+
+		// A crash part way through the second batch
+		File file = new File(directory, "components.0.journal");
+		truncate(file, file.length() - 3);
+		journal = new ComponentJournal(directory);
+		Recorder recorder = reopen(journal);
+		Assert.assertEquals(recorder.names.keySet(), set("a"));
+
+		// The partial batch is discarded, so later batches are readable
+		journal.write(Arrays.asList(record("c", "Gamma")), NONE, NO_TAGS);
+		journal.close();
+		Assert.assertEquals(reopen(new ComponentJournal(directory)).names.keySet(), set("a", "c"));
+	}
+
+	@Test
+	public void testCorruptBatch() throws IOException {
+		ComponentJournal journal = new ComponentJournal(directory);
+		journal.open(new Recorder());
+		journal.write(Arrays.asList(record("a", "Alpha")), NONE, NO_TAGS);
+		journal.write(Arrays.asList(record("b", "Beta")), NONE, NO_TAGS);
+		journal.close();
+
+		File file = new File(directory, "components.0.journal");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(raf.length() - 1);
+		raf.write('?');
+		raf.close();
+		Assert.assertEquals(reopen(new ComponentJournal(directory)).names.keySet(), set("a"));
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		ComponentJournal journal = new ComponentJournal(directory, 3, 1 << 20);
+		journal.open(new Recorder());
+		journal.write(Arrays.asList(record("a", "Alpha"), record("b", "Beta")), NONE, NO_TAGS);
+		Assert.assertFalse(journal.needsCompaction());
+		journal.write(NONE_RECORDS, Arrays.asList("b"), NO_TAGS);
+		Assert.assertTrue(journal.needsCompaction());
+
+		journal.compact(Arrays.asList(record("a", "Alpha")), Collections.singletonList(new String[] { "tag", "a" }));
+		Assert.assertFalse(journal.needsCompaction());
+		journal.write(Arrays.asList(record("c", "Gamma")), NONE, NO_TAGS);
+		journal.close();
+
+		Assert.assertEquals(set(directory.list()), set("components.1.snapshot", "components.1.journal"));
+		Recorder recorder = reopen(new ComponentJournal(directory));
+		Assert.assertEquals(recorder.names.keySet(), set("a", "c"));
+		Assert.assertEquals(recorder.tags, Arrays.asList("tag:a"));
+	}
+
+	@Test
+	public void testInterruptedCompaction() throws IOException {
+		ComponentJournal journal = new ComponentJournal(directory);
+		journal.open(new Recorder());
+		journal.write(Arrays.asList(record("a", "Alpha"), record("b", "Beta")), NONE, NO_TAGS);
+		journal.compact(Arrays.asList(record("a", "Alpha"), record("b", "Beta")), NO_TAGS);
+
+		// Start generation 2, but crash before its snapshot is written
+		journal.write(Arrays.asList(record("c", "Gamma")), NONE, NO_TAGS);
+		Assert.assertEquals(journal.rotate(), 2);
+		journal.write(NONE_RECORDS, Arrays.asList("a"), NO_TAGS);
+		journal.close();
+		new File(directory, "components.2.snapshot.tmp").createNewFile();
+
+		journal = new ComponentJournal(directory);
+		Recorder recorder = reopen(journal);
+		Assert.assertEquals(recorder.names.keySet(), set("b", "c"));
+		Assert.assertEquals(set(directory.list()),
+				set("components.1.snapshot", "components.1.journal", "components.2.journal"));
+
+		// Writes continue in the latest journal, and the next snapshot supersedes both
+		journal.write(Arrays.asList(record("d", "Delta")), NONE, NO_TAGS);
+		journal.close();
+		Assert.assertEquals(reopen(new ComponentJournal(directory)).names.keySet(), set("b", "c", "d"));
+		journal = new ComponentJournal(directory);
+		reopen(journal);
+		int generation = journal.rotate();
+		journal.write(Arrays.asList(record("e", "Epsilon")), NONE, NO_TAGS);
+		journal.writeSnapshot(generation, Arrays.asList(record("b", "Beta"), record("c", "Gamma"), record("d", "Delta")), NO_TAGS);
+		journal.close();
+		Assert.assertEquals(set(directory.list()), set("components.3.snapshot", "components.3.journal"));
+		Assert.assertEquals(reopen(new ComponentJournal(directory)).names.keySet(), set("b", "c", "d", "e"));
+	}
+
+	@Test
+	public void testChunkedSnapshot() throws IOException {
+		// Map in pieces smaller than most records, so that records span pieces
+		ComponentJournal journal = new ComponentJournal(directory, 10000, 64);
+		journal.open(new Recorder());
+		List<ComponentRecord> records = new ArrayList<ComponentRecord>();
+		List<String[]> tags = new ArrayList<String[]>();
+		char[] longName = new char[1000];
+		Arrays.fill(longName, 'x');
+		for (int i = 0; i < 200; i++) {
+			records.add(record("id" + i, i % 17 == 0 ? new String(longName) : "Component " + i, "id" + (i + 1)));
+			if (i % 10 == 0) tags.add(new String[] { "tag", "id" + i });
+		}
+		journal.compact(records, tags);
+		journal.close();
+
+		Recorder recorder = reopen(new ComponentJournal(directory, 10000, 64));
+		Assert.assertEquals(recorder.names.size(), 200);
+		for (int i = 0; i < 200; i++) {
+			Assert.assertEquals(recorder.names.get("id" + i), records.get(i).getDisplayName());
+			Assert.assertEquals(recorder.children.get("id" + i), Arrays.asList("id" + (i + 1)));
+		}
+		Assert.assertEquals(recorder.tags.size(), 20);
+		Assert.assertEquals(new ArrayList<String>(recorder.names.keySet()).get(199), "id199");
+	}
+
+	@Test (expectedExceptions = IOException.class)
+	public void testTruncatedSnapshot() throws IOException {
+		ComponentJournal journal = new ComponentJournal(directory, 10000, 64);
+		journal.open(new Recorder());
+		journal.compact(Arrays.asList(record("a", "Alpha"), record("b", "Beta")), NO_TAGS);
+		journal.close();
+
+		File file = new File(directory, "components.1.snapshot");
+		truncate(file, file.length() - 1);
+		reopen(new ComponentJournal(directory, 10000, 64));
+	}
+
+	private static Recorder reopen(ComponentJournal journal) throws IOException {
+		Recorder recorder = new Recorder();
+		journal.open(recorder);
+		return recorder;
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(length);
+		raf.close();
+	}
+
+	private static <T> Set<T> set(T... elements) {
+		return new HashSet<T>(Arrays.asList(elements));
+	}
+
+	/*
+	 * Encode a record by hand, as ComponentRecord.encode would for a component with
+	 * no model state or view properties.
+	 */
+	private static ComponentRecord record(String id, String name, String... children) {
+		List<byte[]> strings = new ArrayList<byte[]>();
+		for (String s : new String[] { id, "test.Component", name, null, "owner", "creator" }) {
+			strings.add(ComponentRecord.bytes(s));
+		}
+		int length = 4 + 8 + 4 + 4 + 4 + 4 + 4;
+		for (byte[] b : strings) length += ComponentRecord.size(b);
+		for (String child : children) length += ComponentRecord.size(ComponentRecord.bytes(child));
+		ByteBuffer out = ByteBuffer.allocate(length);
+		out.putInt(length);
+		for (byte[] b : strings) ComponentRecord.putString(out, b);
+		out.putLong(0L);
+		out.putInt(1);
+		out.putInt(children.length);
+		for (String child : children) ComponentRecord.putString(out, ComponentRecord.bytes(child));
+		out.putInt(8);
+		out.putInt(-1); // No model state
+		out.putInt(0);  // No view properties
+		out.flip();
+		return ComponentRecord.read(out);
+	}
+
+	private static class Recorder implements ComponentJournal.Replay {
+		private final Map<String, String>       names    = new LinkedHashMap<String, String>();
+		private final Map<String, List<String>> children = new LinkedHashMap<String, List<String>>();
+		private final List<String>              tags     = new ArrayList<String>();
+
+		@Override
+		public void restore(ComponentRecord record) {
+			names.put(record.getComponentId(), record.getDisplayName());
+			children.put(record.getComponentId(), record.getChildren());
+		}
+
+		@Override
+		public void remove(String componentId) {
+			names.remove(componentId);
+			children.remove(componentId);
+		}
+
+		@Override
+		public void tag(String tag, String componentId) {
+			tags.add(tag + ":" + componentId);
+		}
+	}
+}
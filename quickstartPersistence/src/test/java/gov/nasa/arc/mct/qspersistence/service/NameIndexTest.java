@@ -0,0 +1,119 @@
+package gov.nasa.arc.mct.qspersistence.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class NameIndexTest {
+	private NameIndex index;
+
+	@BeforeMethod
+	public void setup() {
+		index = new NameIndex();
+		index.put("1", "Telemetry 1");
+		index.put("2", "Telemetry 2");
+		index.put("3", "My Sandbox");
+		index.put("4", "admin's drop box");
+		index.put("5", "a.c");
+		index.put("6", "abc");
+		index.put("7", "Rate (deg/s) [max]");
+		index.put("8", "x");
+		index.put("9", null);
+	}
+
+	@Test
+	public void testWildcards() {
+		Assert.assertEquals(find("Telemetry*"), set("1", "2"));
+		Assert.assertEquals(find("*box"), set("3", "4"));
+		Assert.assertEquals(find("*drop*"), set("4"));
+		Assert.assertEquals(find("T*y 2"), set("2"));
+		Assert.assertEquals(find("*e*e*"), set("1", "2", "7"));
+		Assert.assertEquals(find("*").size(), 9);
+		Assert.assertEquals(find("**"), find("*"));
+	}
+
+	@Test
+	public void testAnchored() {
+		// Without a *, the whole name must match
+		Assert.assertEquals(find("Telemetry"), set());
+		Assert.assertEquals(find("Telemetry 1"), set("1"));
+		Assert.assertEquals(find("box"), set());
+		Assert.assertEquals(find("x"), set("8"));
+		Assert.assertEquals(find(""), set("9"));
+	}
+
+	@Test
+	public void testIgnoresCase() {
+		Assert.assertEquals(find("my sandbox"), set("3"));
+		Assert.assertEquals(find("MY*BOX"), set("3"));
+	}
+
+	@Test
+	public void testLiteralPattern() {
+		// Only * is special; patterns used to be regular expressions
+		Assert.assertEquals(find("a.c"), set("5"));
+		Assert.assertEquals(find("a?c"), set());
+		Assert.assertEquals(find("Telemetry [12]"), set());
+		Assert.assertEquals(find("Rate (deg/s) [max]"), set("7"));
+		Assert.assertEquals(find("*(deg/s)*"), set("7"));
+		Assert.assertEquals(find("*\\E*"), set());
+	}
+
+	@Test
+	public void testUpdates() {
+		index.put("1", "Renamed");
+		Assert.assertEquals(find("Telemetry*"), set("2"));
+		Assert.assertEquals(find("renamed"), set("1"));
+		index.put("1", "Renamed"); // Unchanged
+		Assert.assertEquals(find("renamed"), set("1"));
+
+		index.remove("2");
+		Assert.assertEquals(find("Telemetry*"), set());
+		index.remove("2");
+
+		index.clear();
+		Assert.assertEquals(find("*"), set());
+	}
+
+	@Test (expectedExceptions = NoSuchElementException.class)
+	public void testExhausted() {
+		Iterator<String> found = index.find("x");
+		Assert.assertEquals(found.next(), "8");
+		Assert.assertFalse(found.hasNext());
+		found.next();
+	}
+
+	@Test
+	public void testScaling() {
+		NameIndex large = new NameIndex();
+		for (int i = 0; i < 50000; i++) {
+			large.put("id" + i, "Component " + i);
+		}
+		Assert.assertEquals(find(large, "component 4242"), Collections.singleton("id4242"));
+		Assert.assertEquals(find(large, "*4242*").size(), 15); // 4242, 14242, ... 49242, 42420-42429
+		Assert.assertEquals(find(large, "*"), find(large, "component *"));
+	}
+
+	private Set<String> find(String pattern) {
+		return find(index, pattern);
+	}
+
+	private static Set<String> find(NameIndex index, String pattern) {
+		Set<String> found = new HashSet<String>();
+		for (Iterator<String> ids = index.find(pattern); ids.hasNext();) {
+			Assert.assertTrue(found.add(ids.next()));
+		}
+		return found;
+	}
+
+	private static Set<String> set(String... ids) {
+		return new HashSet<String>(Arrays.asList(ids));
+	}
+}
@@ -0,0 +1,308 @@
+package gov.nasa.arc.mct.qspersistence.service;
+
+import gov.nasa.arc.mct.api.persistence.OptimisticLockException;
+import gov.nasa.arc.mct.components.AbstractComponent;
+import gov.nasa.arc.mct.platform.spi.Platform;
+import gov.nasa.arc.mct.platform.spi.PlatformAccess;
+import gov.nasa.arc.mct.services.internal.component.ComponentInitializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.Reporter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PersistenceServiceImplTest {
+	private PersistenceServiceImpl service;
+	private AtomicInteger          instances;
+
+	@BeforeMethod
+	public void setup() {
+		service = new PersistenceServiceImpl();
+		instances = new AtomicInteger();
+		Platform platform = Mockito.mock(Platform.class, Mockito.RETURNS_DEEP_STUBS);
+		Mockito.when(platform.getComponentRegistry().newInstance(Mockito.anyString())).thenAnswer(new Answer<AbstractComponent>() {
+			@Override
+			public AbstractComponent answer(InvocationOnMock invocation) throws Throwable {
+				instances.incrementAndGet();
+				return OtherComponent.class.getName().equals(invocation.getArguments()[0]) ? 
+						new OtherComponent() : new TestComponent();
+			}
+		});
+		Mockito.when(platform.getPersistenceProvider()).thenReturn(service);
+		Mockito.when(platform.getCurrentUser().getUserId()).thenReturn("admin");
+		new PlatformAccess().setPlatform(platform);
+	}
+
+	@AfterMethod
+	public void teardown() {
+		service.deactivate();
+		new PlatformAccess().releasePlatform();
+	}
+
+	@Test
+	public void testGetComponentReturnsCopies() {
+		AbstractComponent comp = create("shared", "Original");
+		service.persist(Collections.singleton(comp));
+
+		AbstractComponent first = service.getComponent("shared");
+		AbstractComponent second = service.getComponent("shared");
+		Assert.assertNotSame(first, second);
+		Assert.assertNotSame(first, comp);
+
+		// Changes to one copy are not seen by other readers until persisted
+		first.setDisplayName("Changed");
+		Assert.assertEquals(service.getComponent("shared").getDisplayName(), "Original");
+		comp.setDisplayName("Also changed");
+		Assert.assertEquals(service.getComponent("shared").getDisplayName(), "Original");
+		service.persist(Collections.singleton(first));
+		Assert.assertEquals(service.getComponent("shared").getDisplayName(), "Changed");
+	}
+
+	@Test
+	public void testOpenLargeCollection() {
+		int count = 10000;
+		AbstractComponent collection = create("collection", "Collection");
+		List<AbstractComponent> children = new ArrayList<AbstractComponent>(count);
+		for (int i = 0; i < count; i++) {
+			children.add(create("child" + i, "Child " + i));
+		}
+		service.persist(children);
+		collection.addDelegateComponents(children);
+		service.persist(Collections.singleton(collection));
+		service.getReferencedComponents(collection); // Warm up
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		List<AbstractComponent> opened = service.getReferencedComponents(collection);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		Reporter.log(String.format("Opening a collection of %d allocated %d bytes, %d per child",
+				count, allocated, allocated / count), true);
+
+		// Every child is a distinct, caller-owned instance
+		Assert.assertEquals(opened.size(), count);
+		Map<AbstractComponent, Boolean> distinct = new IdentityHashMap<AbstractComponent, Boolean>();
+		for (AbstractComponent child : opened) distinct.put(child, true);
+		for (AbstractComponent child : service.getReferencedComponents(collection)) distinct.put(child, true);
+		Assert.assertEquals(distinct.size(), 2 * count);
+		Assert.assertEquals(opened.get(count - 1).getComponentId(), "child" + (count - 1));
+	}
+
+	@Test
+	public void testSearch() {
+		service.persist(Arrays.<AbstractComponent>asList(create("a", "Search Target"), create("b", "Other")));
+		Iterator<String> found = service.find("search*");
+		Assert.assertEquals(found.next(), "a");
+		Assert.assertFalse(found.hasNext());
+		Assert.assertEquals(service.getDisplayName("a"), "Search Target");
+		Assert.assertEquals(service.getComponentType("a"), TestComponent.class.getName());
+
+		service.delete(Collections.singleton(service.getComponent("a")));
+		Assert.assertFalse(service.find("search*").hasNext());
+		Assert.assertNull(service.getDisplayName("a"));
+		Assert.assertNull(service.getComponentType("a"));
+	}
+
+	@Test
+	public void testExternalKeyLookup() throws IOException {
+		File directory = File.createTempFile("store", "");
+		Assert.assertTrue(directory.delete());
+		System.setProperty(ComponentJournal.DIRECTORY_PROPERTY, directory.getPath());
+		try {
+			service.deactivate();
+			service = new PersistenceServiceImpl();
+			Mockito.when(PlatformAccess.getPlatform().getPersistenceProvider()).thenReturn(service);
+			List<AbstractComponent> keyed = new ArrayList<AbstractComponent>();
+			for (int i = 0; i < 100; i++) {
+				AbstractComponent comp = create("test" + i, "Test " + i);
+				comp.setExternalKey("Key");
+				keyed.add(comp);
+			}
+			AbstractComponent other = new OtherComponent();
+			other.getCapability(ComponentInitializer.class).setId("other");
+			other.setExternalKey("key");
+			keyed.add(other);
+			service.persist(keyed);
+
+			// Reopen, so that only records are loaded
+			service.deactivate();
+			service = new PersistenceServiceImpl();
+			Mockito.when(PlatformAccess.getPlatform().getPersistenceProvider()).thenReturn(service);
+			int first = instances.get();
+			Assert.assertEquals(service.getComponent("KEY", OtherComponent.class).getComponentId(), "other");
+			Assert.assertEquals(service.getComponent("key", OtherComponent.class).getComponentId(), "other");
+			Assert.assertEquals(service.getComponent("key", OtherComponent.class.getName()).getComponentId(), "other");
+			Assert.assertTrue(service.getComponent("key", TestComponent.class).getComponentId().startsWith("test"));
+			Assert.assertNull(service.getComponent("none", TestComponent.class));
+			// Only matches are loaded, not the other candidates
+			Assert.assertTrue(instances.get() - first < 10, "Created " + (instances.get() - first));
+		} finally {
+			System.clearProperty(ComponentJournal.DIRECTORY_PROPERTY);
+			service.deactivate();
+			for (File f : directory.listFiles()) f.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testLastWriterWins() {
+		AbstractComponent comp = create("contested", "Original");
+		service.persist(Collections.singleton(comp));
+		AbstractComponent first = service.getComponent("contested");
+		AbstractComponent second = service.getComponent("contested");
+
+		first.setDisplayName("First");
+		service.persist(Collections.singleton(first));
+		second.setDisplayName("Second");
+		service.persist(Collections.singleton(second)); // Saved from an outdated version
+		Assert.assertEquals(service.getComponent("contested").getDisplayName(), "Second");
+		Assert.assertTrue(service.getComponent("contested").getVersion() > first.getVersion());
+	}
+
+	@Test (expectedExceptions = OptimisticLockException.class)
+	public void testVersionCheck() {
+		System.setProperty(PersistenceServiceImpl.CHECK_VERSIONS_PROPERTY, "true");
+		try {
+			service.deactivate();
+			service = new PersistenceServiceImpl();
+		} finally {
+			System.clearProperty(PersistenceServiceImpl.CHECK_VERSIONS_PROPERTY);
+		}
+		Mockito.when(PlatformAccess.getPlatform().getPersistenceProvider()).thenReturn(service);
+		AbstractComponent comp = create("contested", "Original");
+		service.persist(Collections.singleton(comp));
+		AbstractComponent first = service.getComponent("contested");
+		AbstractComponent second = service.getComponent("contested");
+
+		first.setDisplayName("First");
+		service.persist(Collections.singleton(first));
+		second.setDisplayName("Second");
+		service.persist(Collections.singleton(second));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Throwable {
+		final int writers = 8, readers = 4, components = 40, rounds = 50;
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		// Each writer owns some components, which it repeatedly renames, and deletes and
+		// recreates; none of its writes may be lost, however the others interleave
+		final String[][] expected = new String[writers][components];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int round = 0; round < rounds; round++) {
+							List<AbstractComponent> batch = new ArrayList<AbstractComponent>();
+							List<AbstractComponent> deleted = new ArrayList<AbstractComponent>();
+							for (int c = 0; c < components; c++) {
+								String id = "w" + writer + "c" + c;
+								AbstractComponent comp = service.getComponent(id);
+								if (comp == null) {
+									comp = create(id, null);
+								} else if ((round + c) % 7 == 0) {
+									deleted.add(comp);
+									expected[writer][c] = null;
+									continue;
+								}
+								comp.setDisplayName(id + " round " + round);
+								expected[writer][c] = comp.getDisplayName();
+								batch.add(comp);
+							}
+							service.persist(batch);
+							service.delete(deleted);
+						}
+					} catch (Throwable t) {
+						errors.add(t);
+					}
+				}
+			}));
+		}
+		for (int r = 0; r < readers; r++) {
+			final Random random = new Random(r);
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						while (!done.get()) {
+							String id = "w" + random.nextInt(writers) + "c" + random.nextInt(components);
+							AbstractComponent comp = service.getComponent(id);
+							if (comp != null) {
+								Assert.assertEquals(comp.getComponentId(), id);
+								Assert.assertTrue(comp.getDisplayName().startsWith(id + " round "));
+								service.getReferences(comp);
+							}
+							for (Iterator<String> found = service.find(id + " round*"); found.hasNext();) {
+								Assert.assertEquals(found.next(), id);
+							}
+						}
+					} catch (Throwable t) {
+						errors.add(t);
+					}
+				}
+			}));
+		}
+		for (Thread t : threads) t.start();
+		start.countDown();
+		for (Thread t : threads.subList(0, writers)) t.join();
+		done.set(true);
+		for (Thread t : threads) t.join();
+
+		if (!errors.isEmpty()) throw errors.get(0);
+		for (int w = 0; w < writers; w++) {
+			for (int c = 0; c < components; c++) {
+				String id = "w" + w + "c" + c;
+				AbstractComponent comp = service.getComponent(id);
+				if (expected[w][c] == null) {
+					Assert.assertNull(comp, id);
+					Assert.assertFalse(service.find(id + " round*").hasNext(), id);
+				} else {
+					Assert.assertNotNull(comp, id);
+					Assert.assertEquals(comp.getDisplayName(), expected[w][c]);
+					Iterator<String> found = service.find(expected[w][c]);
+					Assert.assertEquals(found.next(), id);
+					Assert.assertFalse(found.hasNext());
+				}
+			}
+		}
+	}
+
+	private static AbstractComponent create(String id, String name) {
+		AbstractComponent comp = new TestComponent();
+		comp.getCapability(ComponentInitializer.class).setId(id);
+		comp.setDisplayName(name);
+		return comp;
+	}
+
+	public static class TestComponent extends AbstractComponent {
+	}
+
+	public static class OtherComponent extends AbstractComponent {
+	}
+}
@@ -0,0 +1,97 @@
+package gov.nasa.arc.mct.qspersistence.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ReferenceIndexTest {
+	private ReferenceIndex index;
+
+	@BeforeMethod
+	public void setup() {
+		index = new ReferenceIndex();
+		index.setChildren("a", Arrays.asList("x", "y"));
+		index.setChildren("b", Arrays.asList("y", "z"));
+	}
+
+	@Test
+	public void testAdd() {
+		Assert.assertEquals(index.getChildren("a"), Arrays.asList("x", "y"));
+		Assert.assertEquals(index.getParents("x"), Collections.singleton("a"));
+		Assert.assertEquals(index.getParents("y"), new HashSet<String>(Arrays.asList("a", "b")));
+		Assert.assertTrue(index.getParents("a").isEmpty());
+		Assert.assertNull(index.getChildren("x"));
+
+		index.addChild("a", "z");
+		Assert.assertEquals(index.getChildren("a"), Arrays.asList("x", "y", "z"));
+		Assert.assertEquals(index.getParents("z"), new HashSet<String>(Arrays.asList("a", "b")));
+	}
+
+	@Test
+	public void testReparent() {
+		// Replace a's children, dropping y, and give y a new parent c
+		index.setChildren("a", Arrays.asList("x", "w"));
+		index.setChildren("c", Arrays.asList("y"));
+
+		Assert.assertEquals(index.getParents("y"), new HashSet<String>(Arrays.asList("b", "c")));
+		Assert.assertEquals(index.getParents("w"), Collections.singleton("a"));
+		Assert.assertEquals(index.getParents("x"), Collections.singleton("a"));
+
+		index.setChildren("b", Collections.<String>emptyList());
+		Assert.assertEquals(index.getParents("y"), Collections.singleton("c"));
+		Assert.assertTrue(index.getParents("z").isEmpty());
+	}
+
+	@Test
+	public void testRepeatedChild() {
+		// A component may reference the same child more than once
+		index.setChildren("a", Arrays.asList("x", "x", "y"));
+		index.setChildren("a", Arrays.asList("x", "y"));
+		Assert.assertEquals(index.getParents("x"), Collections.singleton("a"));
+		index.setChildren("a", Arrays.asList("y"));
+		Assert.assertTrue(index.getParents("x").isEmpty());
+	}
+
+	@Test
+	public void testDelete() {
+		// Deleting a child removes it from every parent
+		Assert.assertEquals(new HashSet<String>(index.remove("y")), new HashSet<String>(Arrays.asList("a", "b")));
+		Assert.assertEquals(index.getChildren("a"), Arrays.asList("x"));
+		Assert.assertEquals(index.getChildren("b"), Arrays.asList("z"));
+		Assert.assertTrue(index.getParents("y").isEmpty());
+
+		// Deleting a parent drops its own references
+		Assert.assertTrue(index.remove("a").isEmpty());
+		Assert.assertNull(index.getChildren("a"));
+		Assert.assertTrue(index.getParents("x").isEmpty());
+		Assert.assertEquals(index.getParents("z"), Collections.singleton("b"));
+
+		// Deleting something unknown changes nothing
+		Assert.assertTrue(index.remove("q").isEmpty());
+		Assert.assertEquals(index.getChildren("b"), Arrays.asList("z"));
+	}
+
+	@Test
+	public void testScaling() {
+		// Parents are found by lookup, not by scanning every reference
+		ReferenceIndex large = new ReferenceIndex();
+		int components = 20000, fanout = 10;
+		for (int i = 0; i < components; i++) {
+			String[] children = new String[fanout];
+			for (int j = 0; j < fanout; j++) children[j] = "c" + ((i * 31 + j * 7) % components);
+			large.setChildren("c" + i, Arrays.asList(children));
+		}
+		int edges = 0;
+		for (int i = 0; i < components; i++) {
+			for (String parent : large.getParents("c" + i)) {
+				Assert.assertTrue(large.getChildren(parent).contains("c" + i));
+				edges++;
+			}
+		}
+		Assert.assertEquals(edges, components * fanout);
+	}
+}
@@ -24,18 +24,25 @@ package gov.nasa.arc.mct.satellite;
 
 import gov.nasa.arc.mct.satellite.utilities.ConvertECEFtoLLA;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +57,14 @@ import javax.swing.JPanel;
 /*
  * This class handles the drawing of objects on a mercator map. 
  * 
+ * Only what is on screen is drawn: trail segments outside the zoomed view are skipped, and
+ * trails are decimated to within DECIMATION_TOLERANCE of a screen pixel.  Each object's
+ * component (icon and name) is rasterized once into a label image (and again when the
+ * component changes, as when renamed), and every label on screen is drawn with the map.  The
+ * labels drawn are kept in a uniform grid over the screen, so that the one under the mouse is
+ * found without checking each.  The component itself is hidden, and only shown (so that it can
+ * be clicked, dragged, etc.) while the mouse is over its icon.
+ * 
  * Note: this class is used in MercatorProjectionView.
  */
 @SuppressWarnings("serial")
@@ -66,15 +81,49 @@ public class MercatorPanel  extends JPanel {
 	private int translateY=0;
 	
 	//The trajectories to be drawn on the mercator map and historical data to draw the trail of the satellite's orbit 
-	private Map<JComponent, Trajectory>   trajectories = new HashMap<JComponent, Trajectory>();
-	private Map<JComponent, List<Vector>> histories    = new HashMap<JComponent, List<Vector>>();
+	private Map<JComponent, Trajectory> trajectories = new HashMap<JComponent, Trajectory>();
+	private Map<JComponent, Trail>      histories    = new HashMap<JComponent, Trail>();
 	
 	
-	private final int MAX_HISTORY = 1000;  //this effects the length of the satellite's orbit-trail 
-	private final int PIXEL_WRAP_TOL = 6;  //used to determine if a satellite's orbit has wrapped around the mercator map
+	private static final int MAX_HISTORY = 1000;  //this effects the length of the satellite's orbit-trail 
+	private static final int PIXEL_WRAP_TOL = 6;  //used to determine if a satellite's orbit has wrapped around the mercator map
+	private static final int TRAIL_SLACK = 100;   //points a trail may lose before the trail layer is redrawn
+	private static final double DECIMATION_TOLERANCE = 0.5; //screen pixels a decimated trail may stray from its points
+	private static final int LABEL_CELL = 16;     //pixels per side of a cell of the label grid
+	private static final int ICON_OFFSET = 10;    //from the corner of a label to its object's position
 	
 	private List<ViewChangeListener> listeners = new ArrayList<ViewChangeListener>();
 	
+	//buffers for transformed points, reused to avoid allocating per point
+	private final double[] ecef = new double[3];
+	private final double[] lla  = new double[3];
+	private final int[]    xs   = new int[MAX_HISTORY];
+	private final int[]    ys   = new int[MAX_HISTORY];
+	
+	//buffers for decimating trails
+	private final boolean[] keep  = new boolean[MAX_HISTORY];
+	private final int[]     stack = new int[2 * MAX_HISTORY];
+	
+	//the part of the map on screen, in unzoomed coordinates, and the decimation tolerance in the same units
+	private double viewLeft, viewTop, viewRight, viewBottom, tolerance;
+	
+	//each object's label, and the labels drawn on the last paint, in order and by grid cell: each cell
+	//holds the last label drawn there, which links to the one before (cells older than stamp are empty)
+	private Map<JComponent, Label> labels = new HashMap<JComponent, Label>();
+	private final List<Label> shown = new ArrayList<Label>();
+	private Label[] cells      = new Label[0];
+	private int[]   cellStamps = new int[0];
+	private int     columns    = 0, rows = 0, stamp = 0;
+	private JComponent hovered = null; //the component shown under the mouse, if any
+	
+	//layers, composited on each paint: the map, redrawn only when the size or zoom changes,
+	//and the trails, to which new segments are added as they arrive
+	private BufferedImage background = null;
+	private BufferedImage trails     = null;
+	private double[]      layerView  = null; //the width, height and zoom the layers were drawn for
+	
+	private final PaintMonitor monitor = new PaintMonitor();
+	
 	//each object being drawn gets a differnt color
 	private static final Color[] COLORS = {
 		//Color.YELLOW,
@@ -104,10 +153,17 @@ public class MercatorPanel  extends JPanel {
 			public Dimension preferredLayoutSize(Container parent) {
 				return new Dimension (0,0);
 			}
+			@Override
+			public void layoutContainer(Container parent) {
+				if (hovered != null) place(hovered);
+			}
 		});
 		setOpaque(false);
 		//addMouseMotionListener(new DragListener());
 		addMouseWheelListener (new ScrollListener());
+		HoverListener hoverListener = new HoverListener();
+		addMouseListener(hoverListener);
+		addMouseMotionListener(hoverListener);
 	}
 	
 	/**
@@ -118,6 +174,7 @@ public class MercatorPanel  extends JPanel {
 		this();
 		this.trajectories = trajectories;
 		for (JComponent comp : trajectories.keySet()) {
+			comp.setVisible(false); //drawn as a label, until the mouse is over it
 			add(comp);
 		}
 		
@@ -135,78 +192,344 @@ public class MercatorPanel  extends JPanel {
 	public void paintComponent(Graphics g) {
 
 		super.paintComponent(g);
+		monitor.start();
 		
 		Graphics2D g2d = (Graphics2D)g;
 		
-		AffineTransform saveTransform = g2d.getTransform();
-		AffineTransform at = new AffineTransform(saveTransform);	
+		AffineTransform at = new AffineTransform();	
 		at.translate(getWidth()/2, getHeight()/2);	   //so we zoom wrt the center of the image
 		at.scale(zoom, zoom);
 		at.translate(-getWidth()/2, -getHeight()/2);  //so we zoom wrt the center of the image
-		g2d.setTransform(at);
 
 		double curWidth = getWidth();
 		double curHeight= getHeight();
 		
-		g2d.drawImage(image, 0 , 0, (int)curWidth,(int)curHeight, null);
-
+		double[] view = { curWidth, curHeight, zoom };
+		boolean redraw = !Arrays.equals(view, layerView);
+		if (redraw) {
+			background = layer(background, BufferedImage.TYPE_INT_RGB);
+			Graphics2D bg = background.createGraphics();
+			bg.setTransform(at);
+			bg.drawImage(image, 0 , 0, (int)curWidth,(int)curHeight, null);
+			bg.dispose();
+			layerView = view;
+		}
 
-		int c = 0;
+		double lonScale = curWidth  / 360;
+		double latScale = curHeight / 180;
+		
+		//the unzoomed coordinates on screen, give or take a pixel
+		double halfWidth  = curWidth  / 2 / zoom + 1;
+		double halfHeight = curHeight / 2 / zoom + 1;
+		viewLeft   = curWidth  / 2 - halfWidth;
+		viewRight  = curWidth  / 2 + halfWidth;
+		viewTop    = curHeight / 2 - halfHeight;
+		viewBottom = curHeight / 2 + halfHeight;
+		tolerance  = DECIMATION_TOLERANCE / zoom;
+		
 		for (Entry<JComponent, Trajectory> entry : trajectories.entrySet()) {
-			Color color = COLORS[(c++) % COLORS.length];
-			Trajectory traj = entry.getValue();
-			
-			if (!histories.containsKey(entry.getKey())) {
-				histories.put(entry.getKey(), new ArrayList<Vector>());
+			Trail history = histories.get(entry.getKey());
+			if (history == null) {
+				histories.put(entry.getKey(), history = new Trail());
 			}
 			
-			List<Vector> history = histories.get(entry.getKey());
-			Vector position = traj.getPosition();
-			
-			if (history.isEmpty() || !history.get(history.size() - 1).equals(position)) {
-				if (position.magnitude() > 0) {
-					history.add(position);
-				}
+			Vector position = entry.getValue().getPosition();
+			if (!position.equals(history.last) && position.magnitude() > 0) {
+				history.add(position, transform(position));
 			}
+			if (history.dropped > TRAIL_SLACK) redraw = true;
+		}
+		
+		//draw whole trails onto a clear layer, or only their new segments
+		trails = redraw ? layer(trails, BufferedImage.TYPE_INT_ARGB) : trails;
+		Graphics2D tg = trails.createGraphics();
+		tg.setTransform(at);
+		
+		startGrid();
+		int c = 0;
+		for (Entry<JComponent, Trajectory> entry : trajectories.entrySet()) {
+			Color color = COLORS[(c++) % COLORS.length];
+			Trail history = histories.get(entry.getKey());
 			
-			//chop of tail of the satellite's orbit to the length of MAX_HISTORY
-			while (history.size() > MAX_HISTORY) history.remove(0);
-			
-			if (history.isEmpty()) continue;
-			
-			Vector p1, p2;
-			p1 = transform(history.get(0));
+			if (history.count == 0) continue;
 			
-			int x1 = 0, y1 = 0, x2 = 0, y2 = 0;
-			for (Vector vec : history) {
-				p2 = transform(vec);
-				
-				x1 = (int) (curWidth*((180+p1.getX())/360));
-				y1 = (-1)*(int)(  ((p1.getY()-90)/180)*curHeight);
-				
-				x2 = (int) (curWidth*((180+p2.getX())/360));
-				y2 = (-1)*(int)(  ((p2.getY()-90)/180)*curHeight   );
-
-				g2d.setColor(color);
-				
-				if( hasWrappedScreen(x1, y1, x2, y2, curWidth, curHeight) )
-					g2d.drawLine(x1, y1, x1, y1);	//prevents a line being drawn across screen when a satellite wraps about the screen
-				else
-					g2d.drawLine(x1, y1, x2, y2);
-				p1 = p2;
+			tg.setColor(color);
+			if (redraw) {
+				drawTrail(tg, history, lonScale, latScale, curWidth, curHeight);
+			} else {
+				appendTrail(tg, history, lonScale, latScale, curWidth, curHeight);
 			}
 			
 			//setting the location for the Satellite's Icon and name
+			int x1 = history.x[history.latest()];
+			int y1 = history.y[history.latest()];
 			JComponent satRep = entry.getKey();
 			double wvr2 = getWidth()/2;
 			double hvr2 = getHeight()/2;
 			double transX = (x1-wvr2)*zoom+wvr2;
 			double transY = (y1-hvr2)*zoom+hvr2;
-			satRep.setLocation((int)(transX - 10), (int)(transY-10));
-			satRep.setForeground(g2d.getColor());
+			Label label = labels.get(satRep);
+			if (label == null) {
+				labels.put(satRep, label = new Label(satRep));
+			}
+			label.x = (int) transX;
+			label.y = (int) transY;
+			addLabel(label, color);
 		}
-	g2d.setTransform(saveTransform);
-}
+		tg.dispose();
+		
+		g2d.drawImage(background, 0, 0, null);
+		g2d.drawImage(trails, 0, 0, null);
+		for (Label label : shown) {
+			if (label.component != hovered) {
+				g2d.drawImage(label.image, label.x - ICON_OFFSET, label.y - ICON_OFFSET, null);
+			}
+		}
+		if (hovered != null) place(hovered);
+		
+		monitor.stop(g2d);
+	}
+	
+	/*
+	 * an image the size of this panel, reusing the given one if it is the same size
+	 * (and clearing it, if it has an alpha channel)
+	 */
+	private BufferedImage layer(BufferedImage old, int type) {
+		if (old == null || old.getWidth() != getWidth() || old.getHeight() != getHeight()) {
+			return new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), type);
+		}
+		if (old.getColorModel().hasAlpha()) {
+			Graphics2D g = old.createGraphics();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, old.getWidth(), old.getHeight());
+			g.dispose();
+		}
+		return old;
+	}
+	
+	/*
+	 * scales the cached longitudes and latitudes of a trail to the screen, drawing it 
+	 * as polylines which break where the satellite wraps about the screen, or where
+	 * a segment is entirely off screen
+	 */
+	private void drawTrail(Graphics2D g2d, Trail history, double lonScale, double latScale, double curWidth, double curHeight) {
+		history.project(lonScale, latScale);
+		history.undrawn = 0;
+		history.dropped = 0;
+		int k = 0, code = 0;
+		for (int i = 0, j = history.first(); i < history.count; i++, j++) {
+			if (j == MAX_HISTORY) j = 0;
+			int x = history.x[j];
+			int y = history.y[j];
+			int c = outcode(x, y);
+			if (k > 0) {
+				if (x == xs[k-1] && y == ys[k-1]) continue; //same pixel as the last point
+				if ((c & code) != 0 || hasWrappedScreen(xs[k-1], ys[k-1], x, y, curWidth, curHeight)) {
+					drawPolyline(g2d, k);
+					k = 0;
+				}
+			}
+			xs[k] = x;
+			ys[k] = y;
+			code = c;
+			k++;
+		}
+		drawPolyline(g2d, k);
+	}
+	
+	/*
+	 * draws the segments of a trail added since it was last drawn
+	 */
+	private void appendTrail(Graphics2D g2d, Trail history, double lonScale, double latScale, double curWidth, double curHeight) {
+		history.project(lonScale, latScale);
+		int j = history.latest() - history.undrawn + 1;
+		if (j < 0) j += MAX_HISTORY;
+		for (; history.undrawn > 0; history.undrawn--, j = (j + 1) % MAX_HISTORY) {
+			int x = history.x[j], y = history.y[j];
+			int c = outcode(x, y);
+			if (history.undrawn == history.count) {
+				if (c == 0) g2d.drawLine(x, y, x, y); //the first point of the trail
+				continue;
+			}
+			int i = j == 0 ? MAX_HISTORY - 1 : j - 1;
+			if (hasWrappedScreen(history.x[i], history.y[i], x, y, curWidth, curHeight)) {
+				if (c == 0) g2d.drawLine(x, y, x, y);
+			} else if ((c & outcode(history.x[i], history.y[i])) == 0) {
+				g2d.drawLine(history.x[i], history.y[i], x, y);
+			}
+		}
+	}
+	
+	/*
+	 * draws the first count points of the trail buffers as a decimated polyline
+	 * (or as a dot, if there is only one and it is on screen)
+	 */
+	private void drawPolyline(Graphics2D g2d, int count) {
+		if (count > 1)
+			g2d.drawPolyline(xs, ys, decimate(count));
+		else if (count == 1 && outcode(xs[0], ys[0]) == 0)
+			g2d.drawLine(xs[0], ys[0], xs[0], ys[0]);
+	}
+	
+	/*
+	 * Douglas-Peucker decimation of the first count points of the trail buffers: keeps 
+	 * the end points, and (recursively, by way of a stack) the point farthest from the 
+	 * line between them if it is farther than the tolerance.  Returns the number kept, 
+	 * which are moved to the front of the buffers.
+	 */
+	private int decimate(int count) {
+		if (count < 3) return count;
+		Arrays.fill(keep, 0, count, false);
+		keep[0] = keep[count - 1] = true;
+		double tolerance2 = tolerance * tolerance;
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = count - 1;
+		while (top > 0) {
+			int last  = stack[--top];
+			int first = stack[--top];
+			double dx = xs[last] - xs[first];
+			double dy = ys[last] - ys[first];
+			double max = 0;
+			int farthest = -1;
+			if (dx != 0 || dy != 0) {
+				//the distance from the line is |cross| / length, and the length is the same for each point
+				for (int i = first + 1; i < last; i++) {
+					double cross = Math.abs(dx * (ys[i] - ys[first]) - dy * (xs[i] - xs[first]));
+					if (cross > max) {
+						max = cross;
+						farthest = i;
+					}
+				}
+				max = max * max / (dx * dx + dy * dy);
+			} else {
+				for (int i = first + 1; i < last; i++) {
+					double px = xs[i] - xs[first];
+					double py = ys[i] - ys[first];
+					if (px * px + py * py > max) {
+						max = px * px + py * py;
+						farthest = i;
+					}
+				}
+			}
+			if (max > tolerance2) {
+				keep[farthest] = true;
+				stack[top++] = first;
+				stack[top++] = farthest;
+				stack[top++] = farthest;
+				stack[top++] = last;
+			}
+		}
+		int k = 0;
+		for (int i = 0; i < count; i++) {
+			if (keep[i]) {
+				xs[k] = xs[i];
+				ys[k] = ys[i];
+				k++;
+			}
+		}
+		return k;
+	}
+	
+	/*
+	 * Cohen-Sutherland outcode of an unzoomed point: zero if it is on screen, otherwise a bit
+	 * for each side of the screen it is beyond.  A segment whose ends share a bit is off screen.
+	 */
+	private int outcode(int x, int y) {
+		int code = 0;
+		if (x < viewLeft) code |= 1; else if (x > viewRight)  code |= 2;
+		if (y < viewTop)  code |= 4; else if (y > viewBottom) code |= 8;
+		return code;
+	}
+	
+	/*
+	 * empties the label grid, resizing it to the screen
+	 */
+	private void startGrid() {
+		shown.clear();
+		stamp++;
+		columns = getWidth()  / LABEL_CELL + 1;
+		rows    = getHeight() / LABEL_CELL + 1;
+		if (cells.length < columns * rows) {
+			cells      = new Label[columns * rows];
+			cellStamps = new int[columns * rows];
+		}
+	}
+	
+	/*
+	 * the label grid's cell for a point on screen (clamped to the grid)
+	 */
+	private int cell(int x, int y) {
+		int cx = Math.min(Math.max(x / LABEL_CELL, 0), columns - 1);
+		int cy = Math.min(Math.max(y / LABEL_CELL, 0), rows    - 1);
+		return cy * columns + cx;
+	}
+	
+	/*
+	 * adds a label to those to be drawn, unless it would be entirely off screen
+	 */
+	private void addLabel(Label label, Color color) {
+		//cull with the last size rasterized, before asking the component for its size
+		int left = label.x - ICON_OFFSET, top = label.y - ICON_OFFSET;
+		if (left >= getWidth() || top >= getHeight()) return;
+		if (label.image != null && (left + label.image.getWidth() <= 0 || top + label.image.getHeight() <= 0)) return;
+		label.rasterize(color);
+		if (left + label.image.getWidth() <= 0 || top + label.image.getHeight() <= 0) return;
+		
+		int i = cell(label.x, label.y);
+		label.next  = cellStamps[i] == stamp ? cells[i] : null;
+		label.order = shown.size();
+		cells[i] = label;
+		cellStamps[i] = stamp;
+		shown.add(label);
+	}
+	
+	/*
+	 * the label drawn last paint whose object's icon is under a point on screen, if any; 
+	 * of overlapping labels, the one drawn last (on top)
+	 */
+	private Label labelAt(int x, int y) {
+		int first = cell(x - ICON_OFFSET, y - ICON_OFFSET);
+		int last  = cell(x + ICON_OFFSET, y + ICON_OFFSET);
+		Label found = null;
+		for (int row = first / columns; row <= last / columns; row++) {
+			for (int i = row * columns + first % columns; i <= row * columns + last % columns; i++) {
+				if (cellStamps[i] != stamp) continue;
+				for (Label label = cells[i]; label != null; label = label.next) {
+					if (Math.abs(label.x - x) <= ICON_OFFSET && Math.abs(label.y - y) <= ICON_OFFSET &&
+							(found == null || label.order > found.order)) {
+						found = label;
+					}
+				}
+			}
+		}
+		return found;
+	}
+	
+	/*
+	 * moves a component to its label's place on screen
+	 */
+	private void place(JComponent comp) {
+		Label label = labels.get(comp);
+		if (label != null) {
+			Dimension size = comp.getPreferredSize();
+			comp.setBounds(label.x - ICON_OFFSET, label.y - ICON_OFFSET, size.width, size.height);
+		}
+	}
+	
+	/*
+	 * shows a component (hiding the one shown before), or only hides, if it is null
+	 */
+	private void hover(JComponent comp) {
+		if (comp == hovered) return;
+		if (hovered != null) hovered.setVisible(false);
+		hovered = comp;
+		if (hovered != null) {
+			place(hovered);
+			hovered.setVisible(true);
+		}
+		repaint();
+	}
 	
 	private boolean	hasWrappedScreen
 	( double x1, double y1, double x2, double y2, double curWidth, double curHeight)  {
@@ -219,16 +542,121 @@ public class MercatorPanel  extends JPanel {
 	
 	/*
 	 * transforms a vector from ecef coordinates into lat lon alt corrdinates
-	 * (see ConvertECEFtoLLA for units used for lat lon and alt) 
+	 * (see ConvertECEFtoLLA for units used for lat lon and alt)
+	 */
+	private double[] transform (Vector vec) {
+		Vector.set(ecef, 0, vec);
+		return convert.ecefToLLA(ecef, lla);
+	}
+	
+	/*
+	 * The trail of a satellite's orbit: the longitude and latitude of its last
+	 * MAX_HISTORY positions, in a ring buffer, converted once when they are added.
+	 * Their (unzoomed) screen coordinates are kept too, and only recomputed when
+	 * the size of the map changes.
 	 */
-	private Vector transform (Vector vec) {
+	private static class Trail {
+		final double[] lon = new double[MAX_HISTORY];
+		final double[] lat = new double[MAX_HISTORY];
+		final int[]    x   = new int[MAX_HISTORY];
+		final int[]    y   = new int[MAX_HISTORY];
+		int    next  = 0;    //where the next position goes
+		int    count = 0;
+		int    stale = 0;    //newest positions not yet in screen coordinates
+		int    undrawn = 0;  //newest positions not yet drawn on the trail layer
+		int    dropped = 0;  //positions overwritten since the trail layer was drawn
+		double lonScale = 0, latScale = 0;
+		Vector last  = null; //the last position added, as ECEF
 		
-		double[] ecefVec = {vec.getX(), vec.getY(), vec.getZ()};
+		void add(Vector position, double[] lla) {
+			lat[next] = lla[0];
+			lon[next] = lla[1];
+			next = (next + 1) % MAX_HISTORY;
+			if (count < MAX_HISTORY) count++; else dropped++;
+			if (undrawn < count) undrawn++;
+			if (stale < count) stale++;
+			last = position;
+		}
 		
-		double[] lla = convert.ecefToLLA(ecefVec);
+		//brings the screen coordinates up to date, for pixels per degree of longitude and latitude
+		void project(double lonScale, double latScale) {
+			if (lonScale != this.lonScale || latScale != this.latScale) {
+				this.lonScale = lonScale;
+				this.latScale = latScale;
+				stale = count;
+			}
+			for (int j = (next - stale + MAX_HISTORY) % MAX_HISTORY; stale > 0; stale--, j = (j + 1) % MAX_HISTORY) {
+				x[j] = (int) ((180+lon[j]) * lonScale);
+				y[j] = (-1)*(int)(  (lat[j]-90) * latScale   );
+			}
+		}
 		
-		//ordered this way so the methods getX() gives longitude and getY() gives latitude
-		return new Vector(lla[1], lla[0], lla[2]);
+		//index of the oldest position
+		int first() {
+			return (next - count + MAX_HISTORY) % MAX_HISTORY;
+		}
+		
+		//index of the newest position
+		int latest() {
+			return (next - 1 + MAX_HISTORY) % MAX_HISTORY;
+		}
+	}
+	
+	/*
+	 * An object's component, rasterized in its color, and the object's position on screen.
+	 * The image is only redrawn when the color or the component's size changes, or when a
+	 * property of the component or of one within it changes (such as the text of its name,
+	 * when the object is renamed).
+	 */
+	private class Label implements PropertyChangeListener {
+		final JComponent component;
+		BufferedImage image = null;
+		Color   color = null;
+		boolean stale = false, rasterizing = false;
+		int     x, y;
+		int     order; //of drawing, on the last paint
+		Label   next;  //the label drawn before this one in the same grid cell, if any
+		
+		Label(JComponent component) {
+			this.component = component;
+			listen(component);
+		}
+		
+		private void listen(Component c) {
+			c.addPropertyChangeListener(this);
+			if (c instanceof Container) {
+				for (Component child : ((Container) c).getComponents()) listen(child);
+			}
+		}
+		
+		@Override
+		public void propertyChange(PropertyChangeEvent evt) {
+			if (rasterizing) return; //setting the color
+			stale = true;
+			repaint();
+		}
+		
+		void rasterize(Color color) {
+			Dimension size = component.getPreferredSize();
+			if (image != null && !stale && color.equals(this.color) &&
+					image.getWidth() == Math.max(1, size.width) && image.getHeight() == Math.max(1, size.height)) {
+				return;
+			}
+			rasterizing = true;
+			try {
+				component.setForeground(color);
+				component.setSize(size);
+				component.doLayout();
+				image = new BufferedImage(Math.max(1, size.width), Math.max(1, size.height), BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g = image.createGraphics();
+				component.printAll(g);
+				g.dispose();
+			} finally {
+				rasterizing = false;
+			}
+			this.color = color;
+			stale = false;
+		}
 	}
 	
 	
@@ -259,6 +687,23 @@ public class MercatorPanel  extends JPanel {
 		}
 	}
 	
+	/*
+	 * shows the component of the object whose icon is under the mouse
+	 */
+	private class HoverListener extends MouseAdapter {
+		
+		@Override
+		public void mouseMoved(MouseEvent evt) {
+			Label label = labelAt(evt.getX(), evt.getY());
+			hover(label == null ? null : label.component);
+		}
+		
+		@Override
+		public void mouseExited(MouseEvent evt) {
+			if (!contains(evt.getPoint())) hover(null); //not just onto the shown component
+		}
+	}
+	
 	public interface ViewChangeListener {
 		public void viewChanged(double xr, double yr, double px, double py, double zoom);
 	}
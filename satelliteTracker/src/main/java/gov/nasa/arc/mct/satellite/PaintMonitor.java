@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.satellite;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how often a panel paints, how long each paint takes, and
+ * how much of the painting thread's CPU time goes to painting, and
+ * draws these as an overlay. Figures are averaged over one second.
+ *
+ * Enabled by setting the system property mct.paint.statistics to true;
+ * otherwise every method returns immediately.
+ */
+class PaintMonitor {
+	public static final String ENABLED_PROPERTY = "mct.paint.statistics";
+
+	private static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+	private static final long    WINDOW  = 1000000000L; // ns
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final boolean      cpu     = ENABLED && threads.isCurrentThreadCpuTimeSupported();
+
+	private long windowStart = 0;
+	private long paintStart, paintCpuStart;
+	private int  paints      = 0;
+	private long paintTime   = 0, paintCpu = 0;
+
+	private String summary = "";
+
+	/**
+	 * Note the start of a paint.
+	 */
+	public void start() {
+		if (!ENABLED) return;
+		paintStart = System.nanoTime();
+		if (cpu) paintCpuStart = threads.getCurrentThreadCpuTime();
+		if (windowStart == 0) windowStart = paintStart;
+	}
+
+	/**
+	 * Note the end of a paint (begun on the same thread), and draw the
+	 * overlay.
+	 * @param g the graphics context being painted
+	 */
+	public void stop(Graphics g) {
+		if (!ENABLED) return;
+		long now = System.nanoTime();
+		paints++;
+		paintTime += now - paintStart;
+		if (cpu) paintCpu += threads.getCurrentThreadCpuTime() - paintCpuStart;
+
+		long elapsed = now - windowStart;
+		if (elapsed >= WINDOW) {
+			summary = String.format("%.1f fps  %.1f ms/paint  %s",
+					paints * 1e9 / elapsed,
+					paintTime / 1e6 / paints,
+					cpu ? String.format("%.0f%% CPU", 100.0 * paintCpu / elapsed) : "");
+			windowStart = now;
+			paints      = 0;
+			paintTime   = 0;
+			paintCpu    = 0;
+		}
+
+		int h = g.getFontMetrics().getHeight();
+		int w = g.getFontMetrics().stringWidth(summary);
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, w + 8, h + 4);
+		g.setColor(Color.WHITE);
+		g.drawString(summary, 4, h);
+	}
+}
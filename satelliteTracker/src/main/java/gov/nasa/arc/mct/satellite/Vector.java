@@ -82,6 +82,16 @@ public class Vector {
 				           getX() * v.getY() - getY() * v.getX()); 
 	}
 	
+	/*
+	 * Store a vector in a double array as consecutive (x, y, z) elements,
+	 * starting at index i; this allocates nothing, for use per point per frame.
+	 */
+	public static void set(double[] v, int i, Vector vec) {
+		v[i]     = vec.getX();
+		v[i + 1] = vec.getY();
+		v[i + 2] = vec.getZ();
+	}
+	
 	@Override
 	public boolean equals(Object v) {
 		if (v instanceof Vector) {
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.satellite.component;
+
+import gov.nasa.arc.mct.satellite.utilities.SatTrak;
+import gov.nasa.arc.mct.satellite.utilities.TLECatalog;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jsattrak.utilities.TLE;
+
+/*
+ * A process-wide cache of SGP4 propagators, keyed by TLE, so that every feed-service
+ * thread shares one propagator per TLE rather than building its own. Feeds which carry
+ * different TLEs for the same satellite (such as components made at different times)
+ * each keep their own propagator, rather than replacing one another's.
+ * 
+ * Satellites which have not been requested for EXPIRY milliseconds are evicted; the
+ * cache is swept for them at most once every SWEEP_INTERVAL milliseconds.
+ * 
+ * Propagators are built from the TLE a feed carries, which is the one its component was
+ * created with.  Optionally (see CATALOG_PROPERTY), if the local TLE catalog (see TLECatalog)
+ * has a more recent TLE for a satellite, the propagator is built from the catalog's TLE
+ * instead; this tracks the satellite more accurately, but not as the component describes it.
+ */
+class SatelliteCache {
+	private static final long EXPIRY         = 10 * 60 * 1000;
+	private static final long SWEEP_INTERVAL = 60 * 1000;
+
+	/* System property which, when true, uses newer TLEs from the catalog over those in feeds */
+	public static final String CATALOG_PROPERTY = "mct.satellite.tle.preferCatalog";
+
+	private final ConcurrentMap<Elements, Satellite> satellites = new ConcurrentHashMap<Elements, Satellite>();
+	private final AtomicLong                         lastSweep  = new AtomicLong(System.currentTimeMillis());
+	private final TLECatalog                         catalog;
+
+	SatelliteCache() {
+		this(Boolean.getBoolean(CATALOG_PROPERTY) ? TLECatalog.getDefault() : null);
+	}
+
+	/*
+	 * Create a cache which prefers newer TLEs from the given catalog, if it is not null
+	 */
+	SatelliteCache(TLECatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	/**
+	 * Get the propagator for a satellite's TLE, creating it if necessary.
+	 * SatTrak instances synchronize their own propagation, so the result may be used
+	 * from any thread.
+	 * @param elements the satellite's TLE
+	 * @return a propagator for the satellite
+	 */
+	public SatTrak get(Elements elements) {
+		long now = System.currentTimeMillis();
+		Satellite satellite = satellites.get(elements);
+		if (satellite == null) {
+			satellite = new Satellite(elements, catalog);
+			Satellite existing = satellites.putIfAbsent(elements, satellite);
+			if (existing != null) satellite = existing;
+		}
+		satellite.lastUsed = now;
+		sweep(now);
+		return satellite.sat;
+	}
+
+	private void sweep(long now) {
+		long last = lastSweep.get();
+		if (now - last < SWEEP_INTERVAL || !lastSweep.compareAndSet(last, now)) return;
+		for (Iterator<Map.Entry<Elements, Satellite>> i = satellites.entrySet().iterator(); i.hasNext();) {
+			if (now - i.next().getValue().lastUsed > EXPIRY) i.remove();
+		}
+	}
+
+	private static class Satellite {
+		final SatTrak sat;
+		volatile long lastUsed;
+
+		Satellite(Elements elements, TLECatalog catalog) {
+			String line1 = elements.getLine1(), line2 = elements.getLine2();
+			try {
+				TLE cataloged = catalog != null ? catalog.get(Integer.parseInt(elements.getNumber())) : null;
+				if (cataloged != null && getEpoch(cataloged.getLine1()) > getEpoch(line1)) {
+					line1 = cataloged.getLine1();
+					line2 = cataloged.getLine2();
+				}
+			} catch (NumberFormatException e) {
+				//not a catalog number; use the TLE as given
+			}
+			this.sat = new SatTrak(elements.getName(), line1, line2);
+		}
+		
+		/*
+		 * The epoch of a TLE (columns 19-32 of line 1: two-digit year, then day of the year),
+		 * as a number which increases with time
+		 */
+		private static double getEpoch(String line1) {
+			try {
+				int year = Integer.parseInt(line1.substring(18, 20));
+				return (year < 57 ? 2000 + year : 1900 + year) * 1000.0 + Double.parseDouble(line1.substring(20, 32).trim());
+			} catch (RuntimeException e) {
+				return Double.NEGATIVE_INFINITY;
+			}
+		}
+	}
+
+	/*
+	 * An immutable two-line element set, as carried in a satellite feed id.
+	 */
+	static final class Elements {
+		private final String name;
+		private final String line1;
+		private final String line2;
+		private final String number;
+
+		Elements(String name, String line1, String line2) {
+			this.name   = name;
+			this.line1  = line1;
+			this.line2  = line2;
+			this.number = line2.split("\\s+")[1]; //the satellite number is the second token of the second line of the TLE; it is Unique
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getLine1() {
+			return line1;
+		}
+
+		public String getLine2() {
+			return line2;
+		}
+
+		public String getNumber() {
+			return number;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Elements)) return false;
+			Elements e = (Elements) o;
+			return name.equals(e.name) && line1.equals(e.line1) && line2.equals(e.line2);
+		}
+
+		@Override
+		public int hashCode() {
+			return line2.hashCode() * 31 + line1.hashCode();
+		}
+	}
+}
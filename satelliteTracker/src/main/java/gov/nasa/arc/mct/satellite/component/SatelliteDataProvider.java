@@ -27,13 +27,20 @@ import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
 import gov.nasa.arc.mct.satellite.utilities.SatTrak;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /*
  * This class takes-in data-feeds and then grabs the feed associated with a satellite coordinate component (it does
@@ -48,12 +55,24 @@ import java.util.concurrent.TimeUnit;
 public class SatelliteDataProvider implements DataProvider {
 	
 
-	//for the purpose of not re-creating already created satellites in the getData method
-	private static final ThreadLocal<Map<String, SatTrak>> unique = new ThreadLocal<Map<String,SatTrak>>() {
-            @Override protected Map<String, SatTrak> initialValue() {
-                return new HashMap<String, SatTrak>();
-        }
-    };
+	//for the purpose of not re-creating already created satellites in the getData method;
+	//shared by all feed-service threads
+	private static final SatelliteCache satellites = new SatelliteCache();
+	
+	//large requests (such as whole debris catalogs) are propagated in parallel, on these threads
+	private static final int PROCESSORS          = Runtime.getRuntime().availableProcessors();
+	private static final int PARALLEL_THRESHOLD  = 16; //satellites
+	private static final int TASKS_PER_PROCESSOR = 4;
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(PROCESSORS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Satellite propagation " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
 	
 	/* 
 	 * (non-Javadoc)
@@ -95,72 +114,112 @@ public class SatelliteDataProvider implements DataProvider {
 	public Map<String, SortedMap<Long, Map<String, String>>> getData(
 			Set<String> feedIDs, long startTime, long endTime, TimeUnit timeUnit) {
 		
-		Map<String, SatTrak> createdSats = unique.get();
-		
 		Map<String, SortedMap<Long, Map<String, String>>> out = new HashMap<String, SortedMap<Long, Map<String, String>>>();
 
+		//group the feeds by satellite, so that each satellite is propagated once per time
+		//for all of its requested components
+		Map<SatelliteCache.Elements, List<Feed>> groups = new HashMap<SatelliteCache.Elements, List<Feed>>();
 		for (String feedID : feedIDs) {
-			if (feedID.startsWith(CoordinateComponent.FEED_KEY_ID) && feedID.contains(CoordinateComponent.FEED_SEPERATOR)) {
-				
-				String tleFeed = feedID.substring(feedID.indexOf(":")+1);//+1 so we do not include ':'
-				String[] pieces = tleFeed.split(CoordinateComponent.FEED_SEPERATOR);//see notes above method for 'pieces' array
-				boolean isVelocity = pieces[3].contains("v");
-				SortedMap<Long, Map<String, String>> data = new TreeMap<Long, Map<String, String>>();
-				
-				for (long time = startTime; time < endTime; time += 1000) {
-					
-					double dataValue = 0.0;
-					
-					//pieces[2] is used as a key to the satellites in the hashmap
-					String SatNum = pieces[2].split("\\s+")[1]; //the satellite number is the second token of the second line of the TLE; it is Unique
-					
-					
-					//determine whether if we have already created the satellite
-					SatTrak sat;
-					if(createdSats.containsKey(SatNum)) {
-						sat = createdSats.get(SatNum);
-					}
-					else { //we have not created this satellite yet
-						sat = new SatTrak(pieces[0], pieces[1], pieces[2]);
-						createdSats.put(SatNum, sat);	//note that the satellite number is unique
+			Feed feed = Feed.parse(feedID);
+			if (feed != null) {
+				List<Feed> feeds = groups.get(feed.elements);
+				if (feeds == null) groups.put(feed.elements, feeds = new ArrayList<Feed>(6));
+				feeds.add(feed);
+			}
+		}
+		
+		List<List<Feed>> work = new ArrayList<List<Feed>>(groups.values());
+		if (work.size() < PARALLEL_THRESHOLD || PROCESSORS == 1) {
+			sample(work, startTime, endTime);
+		}
+		else if (!sampleInParallel(work, startTime, endTime)) {
+			return out; //interrupted
+		}
+		
+		for (List<Feed> feeds : work) {
+			for (Feed feed : feeds) {
+				if (!feed.data.isEmpty()) {
+					out.put(feed.id, feed.data);
+				}
+			}
+		}
+		return out;
+	}
+	
+	/*
+	 * Split the satellites into about TASKS_PER_PROCESSOR tasks for each processor, and 
+	 * sample them on the shared propagation threads; the calling thread takes the last task
+	 * itself.  Returns false if the calling thread was interrupted while waiting.
+	 */
+	private static boolean sampleInParallel(List<List<Feed>> work, final long startTime, final long endTime) {
+		int size      = work.size();
+		int tasks     = Math.min(size, PROCESSORS * TASKS_PER_PROCESSOR);
+		int chunkSize = (size + tasks - 1) / tasks;
+		
+		List<Future<?>> futures = new ArrayList<Future<?>>(tasks);
+		try {
+			int start = 0;
+			for (; start + chunkSize < size; start += chunkSize) {
+				final List<List<Feed>> chunk = work.subList(start, start + chunkSize);
+				futures.add(EXECUTOR.submit(new Runnable() {
+					@Override
+					public void run() {
+						sample(chunk, startTime, endTime);
 					}
+				}));
+			}
+			sample(work.subList(start, size), startTime, endTime);
 			
-					
-					if( isVelocity) {
-						double[] TEMEvel = sat.getTEMEvelocity(time);
-						if (pieces[3].contains("x"))
-							dataValue = TEMEvel[0];
-						else if (pieces[3].contains("y"))
-							dataValue = TEMEvel[1];
-						else	// here we have (pieces[3].contains("z"))
-							dataValue = TEMEvel[2];
-					}
-					else {
-						if (pieces[3].contains("x"))
-							dataValue = sat.getECEFx(time);
-						else if (pieces[3].contains("y"))
-							dataValue = sat.getECEFy(time);
-						else	// (pieces[3].contains("z"))
-							dataValue = sat.getECEFz(time);
-					}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		} finally {
+			for (Future<?> future : futures) {
+				future.cancel(true); //no effect on those already done
+			}
+		}
+	}
+	
+	/*
+	 * Sample groups of feeds; each group is the feeds of one satellite, which is propagated
+	 * once per time for all of them
+	 */
+	private static void sample(List<List<Feed>> groups, long startTime, long endTime) {
+		double[] state = new double[6];
+		for (List<Feed> feeds : groups) {
+			SatTrak sat = satellites.get(feeds.get(0).elements);
+			for (Feed feed : feeds) {
+				feed.data = new TreeMap<Long, Map<String, String>>();
+			}
+			
+			for (long time = startTime; time < endTime; time += 1000) {
+				sat.getState(time, state);
+				String timeStamp = Long.toString(time);
+				Long   key       = Long.valueOf(time);
+				
+				for (Feed feed : feeds) {
+					String value = Double.toString(state[feed.index]);
 					
 					//Now we pack our data so a View can use the data to display it to the user
 					//as an example MercatorView takes this data and draws the satellite positions
 					//on a Mercator graph
 					Map <String, String> dataItem = new HashMap<String, String> ();
-					RenderingInfo ri = new RenderingInfo(Double.toString(dataValue), Color.ORANGE, " ", Color.ORANGE, true);
+					RenderingInfo ri = new RenderingInfo(value, Color.ORANGE, " ", Color.ORANGE, true);
 					dataItem.put(FeedProvider.NORMALIZED_RENDERING_INFO, ri.toString());
-					dataItem.put(FeedProvider.NORMALIZED_TIME_KEY,  Long.toString(time));
-					dataItem.put(FeedProvider.NORMALIZED_VALUE_KEY, Double.toString(dataValue));
+					dataItem.put(FeedProvider.NORMALIZED_TIME_KEY,  timeStamp);
+					dataItem.put(FeedProvider.NORMALIZED_VALUE_KEY, value);
 					dataItem.put(FeedProvider.NORMALIZED_TELEMETRY_STATUS_CLASS_KEY, "1");
-					data.put(Long.valueOf(time), dataItem);
-				}
-				if (!data.isEmpty()) {
-					out.put(feedID, data);
+					feed.data.put(key, dataItem);
 				}
 			}
 		}
-		return out;
 	}
 
 	@Override
@@ -170,4 +229,37 @@ public class SatelliteDataProvider implements DataProvider {
 		return null;
 	}
 	
+	/*
+	 * A satellite feed id, parsed once per request rather than once per sample
+	 */
+	private static class Feed {
+		final String                  id;
+		final SatelliteCache.Elements elements;
+		final int                     index; // into the state from SatTrak.getState
+		SortedMap<Long, Map<String, String>> data;
+		
+		private Feed(String id, String[] pieces) {
+			this.id  = id;
+			elements = new SatelliteCache.Elements(pieces[0], pieces[1], pieces[2]);
+			int offset = pieces[3].contains("v") ? 3 : 0;
+			if (pieces[3].contains("x"))
+				index = offset;
+			else if (pieces[3].contains("y"))
+				index = offset + 1;
+			else	// (pieces[3].contains("z"))
+				index = offset + 2;
+		}
+		
+		/**
+		 * @param feedID a feed id
+		 * @return the parsed feed, or null if it is not a satellite feed
+		 */
+		static Feed parse(String feedID) {
+			if (!feedID.startsWith(CoordinateComponent.FEED_KEY_ID) || !feedID.contains(CoordinateComponent.FEED_SEPERATOR)) {
+				return null;
+			}
+			String tleFeed = feedID.substring(feedID.indexOf(":")+1);//+1 so we do not include ':'
+			return new Feed(feedID, tleFeed.split(CoordinateComponent.FEED_SEPERATOR));//see notes above getData for the 'pieces' array
+		}
+	}
 }
\ No newline at end of file
@@ -40,6 +40,15 @@ public class ConvertECEFtoLLA {
 	@SuppressWarnings("unused")
 	private double EARTH_A, EARTH_B, EARTH_F, EARTH_Ecc, EARTH_Esq;
 	
+	//arctangents of i/ATAN_STEPS, for i in [0,ATAN_STEPS]; see atan
+	private static final int      ATAN_STEPS = 32;
+	private static final double[] ATAN_TABLE = new double[ATAN_STEPS + 1];
+	static {
+		for (int i = 0; i <= ATAN_STEPS; i++) {
+			ATAN_TABLE[i] = Math.atan((double) i / ATAN_STEPS);
+		}
+	}
+	
 	
 	public ConvertECEFtoLLA() {
 		setWGS84Values();
@@ -73,117 +82,6 @@ public class ConvertECEFtoLLA {
            EARTH_Esq =  eccsq;
 	}
 	
-	/* compute the radii at the geodetic latitude lat (in degrees)
-	 * 		input:  lat       geodetic latitude in degrees
- 	 *		output: an array 3 long where  r,  rn,  rm are in  in km
-	 */
-	private double[] radCur( double lati) {
-		
-		double[] rrnrm = new double[3];
-		double a, b, asq, bsq, eccsq, ecc,
-		       lat, clat, slat, dsq, d, rn, rm, rho,
-		       z, rsq, r, dtr;
-		
-		 dtr = Math.PI/180.0;
-		
-		 a     = EARTH_A;
-	     b     = EARTH_B;
-
-	     asq   = a*a;
-	     bsq   = b*b;
-	     eccsq  =  1 - bsq/asq;
-	     ecc = Math.sqrt(eccsq);
-
-	     lat   =  lati;
-
-	     clat  =  Math.cos(dtr*lat);
-	     slat  =  Math.sin(dtr*lat);
-
-	     dsq   =  1.0 - eccsq * slat * slat;
-	     d     =  Math.sqrt(dsq);
-
-	     rn    =  a/d;
-	     rm    =  rn * (1.0 - eccsq ) / dsq;
-
-	     rho   =  rn * clat;
-	     z     =  (1.0 - eccsq ) * rn * slat;
-	     rsq   =  rho*rho + z*z;
-	     r     =  Math.sqrt( rsq );
-
-	     rrnrm[0]  =  r;
-	     rrnrm[1]  =  rn;
-	     rrnrm[2]  =  rm;
-
-	     return  rrnrm ;
-		
-	}
-	
-	
-	
-
-	
-	/*        geocentric latitude to geodetic latitude
-
-    	Input:
-              	flatgc    geocentric latitude deg.
-              	altkm     altitide in km
-    	ouput:
-              	flatgd    geodetic latitude in deg
-
-	 */
-	private double gc2gd(double flatgci, double altkmi) {
-		double dtr   = Math.PI/180.0;
-	     double rtd   = 1/dtr;
-
-	     double  flatgd,flatgc,altkm;
-	     double[]  rrnrm = new double[3];
-	     double  rn,ecc, esq;
-	     double  tlat;
-	     double  altnow,ratio;
-
-	     //geodGBL();
-
-	     flatgc=  flatgci;
-	     altkm =  altkmi;
-	     
-	     ecc   =  EARTH_Ecc;
-	     esq   =  ecc*ecc;
-
-//	             approximation by stages
-//	             1st use gc-lat as if is gd, then correct alt dependence
-
-	     altnow  =  altkm;
-
-	     rrnrm   =  radCur (flatgc);
-	     rn      =  rrnrm[1];
-	     
-	     ratio   = 1 - esq*rn/(rn+altnow);
-
-	     tlat    = Math.tan(dtr*flatgc) / ratio;
-	     flatgd  = rtd * Math.atan(tlat);
-
-//	        now use this approximation for gd-lat to get rn etc.
-
-	     rrnrm   =  radCur ( flatgd );
-	     rn      =  rrnrm[1];
-
-	     ratio   =  1  - esq*rn/(rn+altnow);
-	     tlat    =  Math.tan(dtr*flatgc)/ratio;
-	     flatgd  =  rtd * Math.atan(tlat);
-
-	     return  flatgd;
-
-     }
-
-	//  physical radius of earth from geodetic latitude
-	private double rearth(double lati) {
-		double   lat;
-        lat   =  lati;
-        return  radCur(lat)[0]; //we are returning 'r' from the rrnrm vector
-	}
-
-	
-	
 	/**
 	 * 
 	 * @param xvec xyz ECEF locations in km
@@ -195,92 +93,112 @@ public class ConvertECEFtoLLA {
 	 *     </UL>
 	 */
 	public double[] ecefToLLA( double[] xvec ) {
+		return ecefToLLA(xvec, new double[3]);
+	}
+	
+	/**
+	 * As ecefToLLA(xvec), but writing the result into an array supplied
+	 * by the caller, so that nothing is allocated.
+	 * 
+	 * @param xvec xyz ECEF locations in km
+	 * @param llhvec an array of at least three elements, to hold the 
+	 *        latitude (deg), longitude (deg) and altitude (km)
+	 * @return llhvec
+	 */
+	public double[] ecefToLLA( double[] xvec, double[] llhvec ) {
+		convert(xvec, 0, llhvec, 0);
+		return llhvec;
+	}
+	
+	/**
+	 * Convert many ECEF locations at once. Locations are packed as 
+	 * consecutive triples: x, y, z in, and latitude, longitude, altitude 
+	 * out (in the units of ecefToLLA(xvec)).
+	 * 
+	 * @param xvecs the ECEF locations, in km
+	 * @param llhvecs an array of at least 3*count elements, to hold the results
+	 * @param count the number of locations to convert
+	 */
+	public void ecefToLLA( double[] xvecs, double[] llhvecs, int count ) {
+		for (int i = 0; i < count * 3; i += 3) {
+			convert(xvecs, i, llhvecs, i);
+		}
+	}
+	
+	/*
+	 * Closed-form conversion (H. Vermeille, "Direct transformation from geocentric
+	 * coordinates to geodetic coordinates", Journal of Geodesy 76, 2002), which is 
+	 * exact for any point outside a small region about the earth's center: one cube
+	 * root, four square roots and two arctangents, rather than iterating.
+	 */
+	private void convert( double[] xvec, int i, double[] llhvec, int j ) {
+		double  rtd  = 180.0/Math.PI;
+		double  a    = EARTH_A;
+		double  esq  = EARTH_Esq;
+		double  e4   = esq*esq;
+
+		double  x    = xvec[i];
+		double  y    = xvec[i+1];
+		double  z    = xvec[i+2];
+		double  psq  = x*x + y*y;
+		double  p    = Math.sqrt(psq);
 		
-		double  dtr =  Math.PI/180.0;
-		double  flatgc,flatn,dlat;
-		double  rnow,rp;
-		double  x,y,z,p;
-		double tangd;
-		double  testval;
-
-		double  rn,esq;
-		double  clat,slat;
-		double[] rrnrm = new double[3];
-
-		double flat,flon,altkm;
-		double[] llhvec = new double[3];
-
-	     esq    =  EARTH_Esq;
-
-	     x      = xvec[0];
-	     y      = xvec[1];
-	     z      = xvec[2];
-
-	     rp     = Math.sqrt ( x*x + y*y + z*z );
-
-	     flatgc = Math.asin ( z / rp )/dtr;
-
-	     testval= Math.abs(x) + Math.abs(y);
-	     if ( testval < 1.0e-10)
-	         {flon = 0.0; }
-	     else
-	         {flon = Math.atan2 ( y,x )/dtr; } 
-	     if (flon < 0.0 )  { flon = flon + 360.0; }
-
-	     p      =  Math.sqrt( x*x + y*y );
-
-	     //on pole special case
-	     if ( p < 1.0e-10 )
-	       {  
-	          flat = 90.0;
-	          if ( z < 0.0 ) { flat = -90.0; }
-
-	          altkm = rp - rearth(flat);
-	          llhvec[0]  = flat;
-	          llhvec[1]  = flon;
-	          llhvec[2]  = altkm;
-
-	          return  llhvec;
-	        }
-
-//	        first iteration, use flatgc to get altitude 
-//	        and alt needed to convert gc to gd lat.
-
-	     rnow  =  rearth(flatgc);
-	     altkm =  rp - rnow;
-	     flat  =  gc2gd (flatgc,altkm);
-	          
-	     rrnrm =  radCur(flat);
-	     rn    =  rrnrm[1];
-
-	     for(int kount=0; kount< 5 ; kount++ )
-	       {
-	           slat  =  Math.sin(dtr*flat);
-	           tangd =  ( z + rn*esq*slat ) / p;
-	           flatn =  Math.atan(tangd)/dtr;
-
-	           dlat  =  flatn - flat;
-	           flat  =  flatn;
-	           clat  =  Math.cos( dtr*flat );
-
-	           rrnrm =  radCur(flat);
-	           rn    =  rrnrm[1];
-
-	           altkm =  (p/clat) - rn;
-
-	           if ( Math.abs(dlat) < 1.0e-12 ) { break; }
-
-	       }
-	     
-	          llhvec[0]  = flat;
-	          llhvec[1]  =((flon+180)%360) - 180;	//convert longitude from [0,360] range, to [-180,180] range.
-	          llhvec[2]  = altkm;
-
-	          return  llhvec ;
-
-	     }
+		double  flon, ax = Math.abs(x), ay = Math.abs(y);
+		if ( ax + ay < 1.0e-10 ) 
+			{ flon = 0.0; }
+		else {
+			flon = ay <= ax ? atan(ay/ax) : Math.PI/2 - atan(ax/ay);
+			if ( x < 0.0 ) { flon = Math.PI - flon; }
+			if ( y < 0.0 ) { flon = -flon; }
+			flon *= rtd;
+		}
+		if ( flon == 180.0 ) { flon = -180.0; } //longitude is in [-180,180)
+
+		double  pa   = psq/(a*a);
+		double  qa   = (1.0 - esq)*z*z/(a*a);
+		double  r    = (pa + qa - e4)/6.0;
+		double  s    = e4*pa*qa/(4.0*r*r*r);
+		double  t    = cbrt(1.0 + s + Math.sqrt(s*(2.0 + s)));
+		double  u    = r*(1.0 + t + 1.0/t);
+		double  v    = Math.sqrt(u*u + e4*qa);
+		double  w    = esq*(u + v - qa)/(2.0*v);
+		double  k    = Math.sqrt(u + v + w*w) - w;
+		double  d    = k*p/(k + esq);
+		double  dz   = Math.sqrt(d*d + z*z);
+
+		llhvec[j]    = 2.0*atan(z/(d + dz))*rtd; //|z| <= dz, so the tangent is within [-1,1]
+		llhvec[j+1]  = flon;
+		llhvec[j+2]  = (k + esq - 1.0)/k*dz;
+	}
 	
+	/*
+	 * arctangent of t, for |t| <= 1; Math.atan is accurate for any t, but several
+	 * times slower. Takes the nearest c = i/ATAN_STEPS from the table, and adds
+	 * atan((t - c)/(1 + t*c)) from the first terms of its series.
+	 */
+	static double atan( double t ) {
+		double  at  = Math.abs(t);
+		int     i   = (int) (at*ATAN_STEPS + 0.5);
+		double  c   = (double) i/ATAN_STEPS;
+		double  d   = (at - c)/(1.0 + at*c);    //|d| <= 1/(2*ATAN_STEPS)
+		double  dsq = d*d;
+		double  a   = ATAN_TABLE[i] + d*(1.0 - dsq*(1.0/3 - dsq*(1.0/5 - dsq*(1.0/7 - dsq/9))));
+		return t < 0.0 ? -a : a;
+	}
 	
+	/*
+	 * cube root of q, for 0 < q <= 1e300; Math.cbrt is accurate for any q, but several
+	 * times slower. Starts from an estimate made by dividing the exponent (and
+	 * mantissa) bits by three, then refines it by Halley's method.
+	 */
+	static double cbrt( double q ) {
+		double  t = Double.longBitsToDouble(Double.doubleToRawLongBits(q)/3 + 0x2A9F7893782DA1CEL);
+		for (int n = 0; n < 3; n++) {
+			double  tcube = t*t*t;
+			t = t*((tcube + 2.0*q)/(2.0*tcube + q)); //the ratio first, so that t*q cannot overflow or underflow
+		}
+		return t;
+	}
 	
 	/*Here is some correct test-data
 		Name: ISS (ZARYA)             
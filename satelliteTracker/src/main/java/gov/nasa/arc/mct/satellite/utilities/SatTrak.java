@@ -30,6 +30,10 @@ import name.gano.astro.time.Time;
  * based on a TLE file.  The satellite can be tracked with latitude/longitude as
  * well as Earth Centered Earth Fixed coordinates.
  * 
+ * Instances may be shared between threads: each method propagates and reads the
+ * satellite while holding its lock.  To read several values at one time consistently,
+ * hold the lock across the calls.
+ * 
  * Note: Maybe we want to move the ECEF to LLA coordinates to the ConvertECEFtoLLA
  *       class.
  * 
@@ -93,13 +97,13 @@ public class SatTrak {
 	/**
 	 * Updates the satellite object to reflect values with respect to the current time.  
 	 */
-	public void
+	public synchronized void
 	updateSat2CurTime() {
 		julianTime.update2CurrentTime();
 		prop.propogate2JulDate(julianTime.getJulianDate());
 	}
 	
-	private void setSatTime (long timeInMilli) {
+	private synchronized void setSatTime (long timeInMilli) {
 		julianTime.set(timeInMilli);
 		prop.propogate2JulDate(julianTime.getJulianDate());
 	}
@@ -119,7 +123,7 @@ public class SatTrak {
 	 * 
 	 * @return: Earth Centered Earth Fixed x-coordinate (in km) at the current system time
 	 */
-	public double getECEFx() {
+	public synchronized double getECEFx() {
 		updateSat2CurTime();
 		return ((N(prop.getLatitude())+prop.getAltitude())*Math.cos(prop.getLatitude())*Math.cos(prop.getLongitude())/1000);
 	}
@@ -133,7 +137,7 @@ public class SatTrak {
 	 * 
 	 * @return: Earth Centered Earth Fixed y-coordinate (in km) at the current system time
 	 */
-	public double getECEFy() {
+	public synchronized double getECEFy() {
 		updateSat2CurTime();
 		return ((N(prop.getLatitude())+prop.getAltitude())*Math.cos(prop.getLatitude())*Math.sin(prop.getLongitude())/1000);
 	}
@@ -147,7 +151,7 @@ public class SatTrak {
 	 * 
 	 * @return: Earth Centered Earth Fixed z-coordinate (in km) at the current system time
 	 */
-	public double getECEFz() {
+	public synchronized double getECEFz() {
 		updateSat2CurTime();
 		return ((N(prop.getLatitude())*(1-FIRST_ECCENTRICITY_SQUARED)+prop.getAltitude())*Math.sin(prop.getLatitude())/1000);
 	}
@@ -157,7 +161,7 @@ public class SatTrak {
 	 * 
 	 * @return latitude of satellite (in radians) at the current system time in the range [-90,90]
 	 */
-	public double getLatitude() {
+	public synchronized double getLatitude() {
 		updateSat2CurTime();
 		return prop.getLatitude();
 	}
@@ -167,7 +171,7 @@ public class SatTrak {
 	 * 
 	 * @return longitude of satellite (in radians and in the range [-180,180]) at the current system time 
 	 */
-	public double getLongitude() {
+	public synchronized double getLongitude() {
 		updateSat2CurTime();
 		return prop.getLongitude();
 	}
@@ -177,7 +181,7 @@ public class SatTrak {
 	 * 
 	 * @return altitude of satellite (in km) at the current system time
 	 */
-	public double getAltitude() {
+	public synchronized double getAltitude() {
 		updateSat2CurTime();
 		return prop.getAltitude();
 	}
@@ -189,7 +193,7 @@ public class SatTrak {
 	 * @param timeInMilli the time (in milliseconds) when you want the satellites position
 	 * @return the ECEF x coordinate location (in km) of the satellite object at the specified time
 	 */
-	public double getECEFx(long timeInMilli) {
+	public synchronized double getECEFx(long timeInMilli) {
 		setSatTime(timeInMilli);
 		return ((N(prop.getLatitude())+prop.getAltitude())*Math.cos(prop.getLatitude())*Math.cos(prop.getLongitude())/1000);
 	}
@@ -201,7 +205,7 @@ public class SatTrak {
 	 * @param timeInMilli the time (in milliseconds) when you want the satellites position
 	 * @return the ECEF y coordinate location (in km) of the satellite object at the specified time
 	 */
-	public double getECEFy(long timeInMilli) {
+	public synchronized double getECEFy(long timeInMilli) {
 		setSatTime(timeInMilli);
 		return ((N(prop.getLatitude())+prop.getAltitude())*Math.cos(prop.getLatitude())*Math.sin(prop.getLongitude())/1000);
 	}
@@ -213,7 +217,7 @@ public class SatTrak {
 	 * @param timeInMilli the time (in milliseconds) when you want the satellites position
 	 * @return the ECEF z coordinate location (in km) of the satellite object at the specified time
 	 */
-	public double getECEFz(long timeInMilli) {
+	public synchronized double getECEFz(long timeInMilli) {
 		setSatTime(timeInMilli);
 		return ((N(prop.getLatitude())*(1-FIRST_ECCENTRICITY_SQUARED)+prop.getAltitude())*Math.sin(prop.getLatitude())/1000);
 	}
@@ -224,7 +228,7 @@ public class SatTrak {
 	 * @param timeInMilli the time (in milliseconds) when you want the satellites position
 	 * @return the latitude (in radians) of the satellite object at the specified time
 	 */
-	public double getLatitude(long timeInMilli) {
+	public synchronized double getLatitude(long timeInMilli) {
 		setSatTime(timeInMilli);
 		return prop.getLatitude();
 	}
@@ -235,7 +239,7 @@ public class SatTrak {
 	 * @param timeInMilli the time (in milliseconds) when you want the satellites position
 	 * @return the longitude (in radians) of the satellite object at the specified time
 	 */
-	public double getLongitude(long timeInMilli) {
+	public synchronized double getLongitude(long timeInMilli) {
 		setSatTime(timeInMilli);
 		return prop.getLongitude();
 	}
@@ -246,7 +250,7 @@ public class SatTrak {
 	 * @param timeInMilli the time (in milliseconds) when you want the satellites position
 	 * @return altitude (in meters) of the satellite object at the specified time
 	 */
-	public double getAltitude(long timeInMilli) {
+	public synchronized double getAltitude(long timeInMilli) {
 		setSatTime(timeInMilli);
 		return prop.getAltitude();
 	}
@@ -267,7 +271,7 @@ public class SatTrak {
 	 * in meters per second
 	 * @return An array { x, y, z } each in units of meters per second (m/s)
 	 */
-	public double[] getTEMEvelocity() {
+	public synchronized double[] getTEMEvelocity() {
 		updateSat2CurTime();
 		return prop.getTEMEVelocity();
 	}
@@ -278,11 +282,36 @@ public class SatTrak {
 	 * @param timeInMilli the time (in milliseconds) when you want the satellites velocity
 	 * @return An array { x, y, z } each in units of meters per second (m/s)
 	 */
-	public double[] getTEMEvelocity(long timeInMilli) {
+	public synchronized double[] getTEMEvelocity(long timeInMilli) {
 		setSatTime(timeInMilli);
 		return prop.getTEMEVelocity();
 	}
 	
+	/**
+	 * This method propagates the satellite object once to a specified time (in milliseconds) and
+	 * returns its whole state: the ECEF position (as from getECEFx/y/z) followed by the TEME
+	 * velocity (as from getTEMEvelocity).  Use this rather than the individual getters when more
+	 * than one component is needed at the same time.
+	 * 
+	 * @param timeInMilli the time (in milliseconds) when you want the satellites state
+	 * @param state an array of at least six elements to fill with { x, y, z (in km), vx, vy, vz (in m/s) }
+	 * @return the state array
+	 */
+	public synchronized double[] getState(long timeInMilli, double[] state) {
+		setSatTime(timeInMilli);
+		double lat    = prop.getLatitude();
+		double lon    = prop.getLongitude();
+		double alt    = prop.getAltitude();
+		double sinLat = Math.sin(lat);
+		double cosLat = Math.cos(lat);
+		double n      = SEMI_MAJOR_AXIS/(1-FIRST_ECCENTRICITY_SQUARED*sinLat*sinLat); //as N(lat)
+		state[0] = (n+alt)*cosLat*Math.cos(lon)/1000;
+		state[1] = (n+alt)*cosLat*Math.sin(lon)/1000;
+		state[2] = (n*(1-FIRST_ECCENTRICITY_SQUARED)+alt)*sinLat/1000;
+		System.arraycopy(prop.getTEMEVelocity(), 0, state, 3, 3);
+		return state;
+	}
+	
 	public String getSatNumber() {
 		return this.SatNum;
 	}
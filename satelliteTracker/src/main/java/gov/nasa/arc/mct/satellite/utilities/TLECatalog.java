@@ -0,0 +1,554 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.satellite.utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import jsattrak.utilities.TLE;
+
+/*
+ * A local catalog of TLEs, so that satellites can be looked up without network access
+ * (see TLEUtility, which refreshes the catalog from Celestrak when it is allowed to).
+ * 
+ * The catalog is a single binary file which is memory-mapped for reading:
+ *     header:     magic, version, number of records, number of categories
+ *     records:    fixed-size, sorted by NORAD catalog number, so that a satellite
+ *                 can be found by binary search:
+ *                     number (int), name, line 1, line 2 (each a length byte and a fixed-size slot)
+ *     name index: record indices sorted by upper-case name, for prefix searches
+ *     categories: for each, the category name (length-prefixed), the time it was last
+ *                 imported, and its record indices, in the order they were imported
+ * 
+ * Imports write a complete new file (a new "generation") and then switch to it, so
+ * readers never see a partial catalog.  Old generations are removed when they are
+ * no longer mapped (some platforms will not delete a mapped file; those are retried later).
+ * 
+ * To import TLE files from the command line, run main with pairs of category and file:
+ *     TLECatalog "Space Stations" stations.txt "Weather" weather.txt
+ */
+public class TLECatalog {
+	/* System property naming the directory the catalog is kept in; 
+	 * by default, .mct/tle under the user's home directory */
+	public static final String DIRECTORY_PROPERTY = "mct.satellite.catalog.dir";
+	
+	private static final String PREFIX  = "catalog.";
+	private static final String SUFFIX  = ".tle";
+	private static final String TEMP    = ".tmp";
+	private static final String CHARSET = "UTF-8";
+	
+	private static final int MAGIC   = 0x544c4543; // "TLEC"
+	private static final int VERSION = 2;      // Version 1 had no import times
+	private static final int HEADER  = 16;
+	
+	private static final int NAME_SLOT = 32;   // a length byte, then up to 31 bytes
+	private static final int LINE_SLOT = 72;   // TLE lines are 69 characters
+	private static final int RECORD    = 4 + NAME_SLOT + 2 * LINE_SLOT;
+	
+	private static TLECatalog defaultCatalog;
+	
+	private final File  directory;
+	private int         generation = 0;
+	private volatile Snapshot snapshot = new Snapshot();
+	
+	/**
+	 * Get the catalog in the directory named by DIRECTORY_PROPERTY (or the default location).
+	 * @return the default catalog; empty if it could not be read
+	 */
+	public static synchronized TLECatalog getDefault() {
+		if (defaultCatalog == null) {
+			String directory = System.getProperty(DIRECTORY_PROPERTY);
+			defaultCatalog = new TLECatalog(directory != null ? new File(directory) :
+				new File(new File(System.getProperty("user.home"), ".mct"), "tle"));
+			try {
+				defaultCatalog.open();
+			} catch (IOException e) {
+				System.err.println("Could not read TLE catalog in " + defaultCatalog.directory);
+				e.printStackTrace();
+			}
+		}
+		return defaultCatalog;
+	}
+	
+	/**
+	 * Create a catalog kept in the given directory.  Call open to read it.
+	 * @param directory the directory of the catalog
+	 */
+	public TLECatalog(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Read (map) the latest catalog in the directory, if there is one.
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException {
+		generation = findLatestGeneration();
+		File file = getFile(generation, SUFFIX);
+		snapshot = file.exists() ? new Snapshot(file) : new Snapshot();
+		removeOldGenerations();
+	}
+	
+	/**
+	 * Look up a satellite by its NORAD catalog number.
+	 * @param number the satellite number
+	 * @return the satellite's TLE, or null if it is not in the catalog
+	 */
+	public TLE get(int number) {
+		Snapshot s = snapshot;
+		int low = 0, high = s.count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int n   = s.getNumber(mid);
+			if      (n < number) low  = mid + 1;
+			else if (n > number) high = mid - 1;
+			else return s.getTLE(mid);
+		}
+		return null;
+	}
+	
+	/**
+	 * Find satellites whose names start with the given text, ignoring case.
+	 * @param prefix the start of the name
+	 * @return the matching TLEs, in order of name
+	 */
+	public List<TLE> find(String prefix) {
+		Snapshot s = snapshot;
+		String key = prefix.toUpperCase();
+		int low = 0, high = s.count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (s.getName(s.getNameIndex(mid)).toUpperCase().compareTo(key) < 0) low = mid + 1;
+			else high = mid;
+		}
+		List<TLE> found = new ArrayList<TLE>();
+		for (int i = low; i < s.count; i++) {
+			int record = s.getNameIndex(i);
+			if (!s.getName(record).toUpperCase().startsWith(key)) break;
+			found.add(s.getTLE(record));
+		}
+		return found;
+	}
+	
+	/**
+	 * Get the satellites of a category, as last imported.
+	 * @param category the category (such as a Celestrak category name)
+	 * @return the category's TLEs, in the order they were imported, or null if the category 
+	 *         has never been imported
+	 */
+	public List<TLE> getCategory(String category) {
+		Snapshot s = snapshot;
+		int[] records = s.categories.get(category);
+		if (records == null) return null;
+		List<TLE> tles = new ArrayList<TLE>(records.length);
+		for (int record : records) {
+			tles.add(s.getTLE(record));
+		}
+		return tles;
+	}
+	
+	/**
+	 * Get the time a category was last imported, so that callers can tell whether it is 
+	 * out of date.
+	 * @param category the category
+	 * @return the time of the last import, in milliseconds since the epoch, or 0 if the 
+	 *         category has never been imported (or was imported by an older version)
+	 */
+	public long getImportTime(String category) {
+		Long time = snapshot.importTimes.get(category);
+		return time != null ? time : 0;
+	}
+	
+	/**
+	 * @return the names of the categories in the catalog
+	 */
+	public Set<String> getCategories() {
+		return Collections.unmodifiableSet(snapshot.categories.keySet());
+	}
+	
+	/**
+	 * @return the number of satellites in the catalog
+	 */
+	public int size() {
+		return snapshot.count;
+	}
+	
+	/**
+	 * Import the TLEs in a file (in the usual three-line format, as from Celestrak) 
+	 * as a category, replacing any previous contents of that category.
+	 * @param category the category
+	 * @param file the file to read
+	 * @throws IOException
+	 */
+	public void importFile(String category, File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			importTLEs(Collections.singletonMap(category, parse(reader)));
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Import categories of TLEs, replacing any previous contents of those categories.
+	 * A satellite already in the catalog is replaced by the imported TLE for it.
+	 * @param categories lists of TLEs, by category
+	 * @throws IOException
+	 */
+	public void importTLEs(Map<String, List<TLE>> categories) throws IOException {
+		importTLEs(categories, System.currentTimeMillis());
+	}
+	
+	/*
+	 * Import categories of TLEs, recording the given time as their import time
+	 */
+	synchronized void importTLEs(Map<String, List<TLE>> categories, long time) throws IOException {
+		// Gather the existing and imported satellites by number
+		Snapshot s = snapshot;
+		TreeMap<Integer, TLE> satellites = new TreeMap<Integer, TLE>();
+		for (int i = 0; i < s.count; i++) {
+			satellites.put(s.getNumber(i), s.getTLE(i));
+		}
+		Map<String, List<Integer>> members = new LinkedHashMap<String, List<Integer>>();
+		Map<String, Long>          times   = new HashMap<String, Long>(s.importTimes);
+		for (Map.Entry<String, int[]> entry : s.categories.entrySet()) {
+			List<Integer> numbers = new ArrayList<Integer>(entry.getValue().length);
+			for (int record : entry.getValue()) {
+				numbers.add(s.getNumber(record));
+			}
+			members.put(entry.getKey(), numbers);
+		}
+		for (Map.Entry<String, List<TLE>> entry : categories.entrySet()) {
+			List<Integer> numbers = new ArrayList<Integer>(entry.getValue().size());
+			for (TLE tle : entry.getValue()) {
+				Integer number = getNumber(tle);
+				if (number == null || !fits(tle)) {
+					System.err.println("Skipping malformed TLE for " + tle.getSatName());
+					continue;
+				}
+				satellites.put(number, tle);
+				numbers.add(number);
+			}
+			members.put(entry.getKey(), numbers);
+			times.put(entry.getKey(), time);
+		}
+		
+		write(satellites, members, times);
+	}
+	
+	/**
+	 * Read TLEs in the usual three-line format (a name line, then lines 1 and 2).  Blank
+	 * lines are skipped; if the name line is missing, the satellite number is used as the name.
+	 * @param reader the source of TLE text
+	 * @return the TLEs, in order
+	 * @throws IOException
+	 */
+	public static List<TLE> parse(BufferedReader reader) throws IOException {
+		List<TLE> tles = new ArrayList<TLE>();
+		String name = null, line1 = null, line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty()) continue;
+			if (line.startsWith("1 ") && line1 == null) {
+				line1 = line;
+			} else if (line.startsWith("2 ") && line1 != null) {
+				String satName = name != null ? name : line.split("\\s+")[1];
+				tles.add(new TLE(satName, line1, line)); 
+				name  = null;
+				line1 = null;
+			} else {
+				name  = line.trim(); //why trim()? Well, we need to trim the trailing whitespace from the satellite name
+				line1 = null;
+			}
+		}
+		return tles;
+	}
+	
+	/**
+	 * @param tle a TLE
+	 * @return its NORAD catalog number (the second token of line 2), or null if it cannot be read
+	 */
+	public static Integer getNumber(TLE tle) {
+		try {
+			return Integer.valueOf(tle.getLine2().trim().split("\\s+")[1]);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+	
+	private void write(TreeMap<Integer, TLE> satellites, Map<String, List<Integer>> members, Map<String, Long> times) throws IOException {
+		int count = satellites.size();
+		final List<TLE>  tles    = new ArrayList<TLE>(satellites.values());
+		Map<Integer, Integer> records = new HashMap<Integer, Integer>(count * 2);
+		int index = 0;
+		for (Integer number : satellites.keySet()) {
+			records.put(number, index++);
+		}
+		
+		Integer[] byName = new Integer[count];
+		for (int i = 0; i < count; i++) byName[i] = i;
+		Arrays.sort(byName, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = truncate(tles.get(a).getSatName()).toUpperCase().compareTo(truncate(tles.get(b).getSatName()).toUpperCase());
+				return c != 0 ? c : a.compareTo(b);
+			}
+		});
+		
+		List<byte[]> categoryNames = new ArrayList<byte[]>(members.size());
+		int length = HEADER + count * (RECORD + 4);
+		for (Map.Entry<String, List<Integer>> entry : members.entrySet()) {
+			byte[] name = bytes(entry.getKey());
+			categoryNames.add(name);
+			length += 2 + name.length + 8 + 4 + 4 * entry.getValue().size();
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(members.size());
+		for (Map.Entry<Integer, TLE> entry : satellites.entrySet()) {
+			TLE tle = entry.getValue();
+			buffer.putInt(entry.getKey());
+			putSlot(buffer, bytes(truncate(tle.getSatName())), NAME_SLOT);
+			putSlot(buffer, bytes(tle.getLine1()), LINE_SLOT);
+			putSlot(buffer, bytes(tle.getLine2()), LINE_SLOT);
+		}
+		for (Integer record : byName) {
+			buffer.putInt(record);
+		}
+		int c = 0;
+		for (Map.Entry<String, List<Integer>> entry : members.entrySet()) {
+			List<Integer> numbers = entry.getValue();
+			Long          time    = times.get(entry.getKey());
+			byte[]        name    = categoryNames.get(c++);
+			buffer.putShort((short) name.length).put(name).putLong(time != null ? time : 0).putInt(numbers.size());
+			for (Integer number : numbers) {
+				buffer.putInt(records.get(number));
+			}
+		}
+		buffer.flip();
+		
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		int next = generation + 1;
+		File temp = getFile(next, SUFFIX + TEMP);
+		FileChannel out = new FileOutputStream(temp).getChannel();
+		try {
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			out.force(true);
+		} finally {
+			out.close();
+		}
+		File file = getFile(next, SUFFIX);
+		if (!temp.renameTo(file)) {
+			throw new IOException("Could not rename " + temp);
+		}
+		generation = next;
+		snapshot = new Snapshot(file);
+		removeOldGenerations();
+	}
+	
+	private static boolean fits(TLE tle) {
+		return tle.getLine1().length() < LINE_SLOT && tle.getLine2().length() < LINE_SLOT;
+	}
+	
+	private static String truncate(String name) {
+		// Names are stored in a fixed-size slot; Celestrak names are at most 24 characters
+		while (bytes(name).length >= NAME_SLOT) {
+			name = name.substring(0, name.length() - 1);
+		}
+		return name;
+	}
+	
+	private static void putSlot(ByteBuffer buffer, byte[] b, int slot) {
+		int start = buffer.position();
+		buffer.put((byte) b.length).put(b);
+		buffer.position(start + slot);
+	}
+	
+	private static byte[] bytes(String s) {
+		try {
+			return s.getBytes(CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e); // UTF-8 is always supported
+		}
+	}
+	
+	private int findLatestGeneration() {
+		int latest = 0;
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.endsWith(SUFFIX)) latest = Math.max(latest, getGeneration(name));
+			}
+		}
+		return latest;
+	}
+	
+	private void removeOldGenerations() {
+		String[] names = directory.list();
+		if (names == null) return;
+		for (String name : names) {
+			int g = name.endsWith(SUFFIX) ? getGeneration(name) : -1;
+			if (g >= 0 && g < generation || name.startsWith(PREFIX) && name.endsWith(TEMP)) new File(directory, name).delete();
+		}
+	}
+	
+	private int getGeneration(String name) {
+		if (!name.startsWith(PREFIX)) return -1;
+		try {
+			return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		} catch (NumberFormatException nfe) {
+			return -1; // Not one of ours
+		}
+	}
+	
+	private File getFile(int g, String suffix) {
+		return new File(directory, PREFIX + g + suffix);
+	}
+	
+	/*
+	 * One generation of the catalog, as mapped into memory.  Reads use absolute
+	 * positions only, so a snapshot may be read from any number of threads.
+	 */
+	private static class Snapshot {
+		final ByteBuffer         buffer;
+		final int                count;
+		final int                nameIndex;
+		final Map<String, int[]> categories  = new LinkedHashMap<String, int[]>();
+		final Map<String, Long>  importTimes = new HashMap<String, Long>();
+		
+		Snapshot() {
+			buffer    = ByteBuffer.allocate(0);
+			count     = 0;
+			nameIndex = 0;
+		}
+		
+		Snapshot(File file) throws IOException {
+			FileChannel channel = new FileInputStream(file).getChannel();
+			MappedByteBuffer in;
+			try {
+				// The mapping remains valid after the channel is closed
+				in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				channel.close();
+			}
+			int version = in.remaining() < HEADER ? 0 : in.getInt(4);
+			if (version < 1 || version > VERSION || in.getInt(0) != MAGIC) {
+				throw new IOException("Not a TLE catalog: " + file);
+			}
+			buffer    = in;
+			count     = in.getInt(8);
+			nameIndex = HEADER + count * RECORD;
+			
+			int categoryCount = in.getInt(12);
+			int p = nameIndex + count * 4;
+			for (int c = 0; c < categoryCount; c++) {
+				byte[] name = new byte[in.getShort(p)];
+				p += 2;
+				for (int i = 0; i < name.length; i++) name[i] = in.get(p++);
+				long time = 0;
+				if (version > 1) {
+					time = in.getLong(p);
+					p += 8;
+				}
+				int[] records = new int[in.getInt(p)];
+				p += 4;
+				for (int i = 0; i < records.length; i++, p += 4) records[i] = in.getInt(p);
+				String category = new String(name, CHARSET);
+				categories.put(category, records);
+				importTimes.put(category, time);
+			}
+		}
+		
+		int getNumber(int record) {
+			return buffer.getInt(HEADER + record * RECORD);
+		}
+		
+		int getNameIndex(int i) {
+			return buffer.getInt(nameIndex + i * 4);
+		}
+		
+		String getName(int record) {
+			return getSlot(HEADER + record * RECORD + 4);
+		}
+		
+		TLE getTLE(int record) {
+			int p = HEADER + record * RECORD + 4;
+			return new TLE(getSlot(p), getSlot(p + NAME_SLOT), getSlot(p + NAME_SLOT + LINE_SLOT));
+		}
+		
+		private String getSlot(int p) {
+			byte[] b = new byte[buffer.get(p) & 0xff];
+			for (int i = 0; i < b.length; i++) {
+				b[i] = buffer.get(p + 1 + i);
+			}
+			try {
+				return new String(b, CHARSET);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e); // UTF-8 is always supported
+			}
+		}
+	}
+	
+	/*
+	 * Import TLE files into the default catalog: arguments are pairs of category and file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0 || args.length % 2 != 0) {
+			System.err.println("Usage: TLECatalog <category> <TLE file> [<category> <TLE file> ...]");
+			return;
+		}
+		Map<String, List<TLE>> categories = new LinkedHashMap<String, List<TLE>>();
+		for (int i = 0; i < args.length; i += 2) {
+			BufferedReader reader = new BufferedReader(new FileReader(args[i + 1]));
+			try {
+				categories.put(args[i], parse(reader));
+			} finally {
+				reader.close();
+			}
+		}
+		TLECatalog catalog = getDefault();
+		catalog.importTLEs(categories);
+		System.out.println("Catalog in " + catalog.directory + " has " + catalog.size() + " satellites in " 
+				+ catalog.getCategories().size() + " categories");
+	}
+}
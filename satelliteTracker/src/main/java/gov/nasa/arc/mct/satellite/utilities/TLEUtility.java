@@ -22,10 +22,11 @@
 package gov.nasa.arc.mct.satellite.utilities;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,15 +34,27 @@ import java.util.Map;
 import jsattrak.utilities.TLE;
 
 /*
- * A small class to handle the accessing-of TLE files.  This class does not store
- * the TLE files in memory, rather: you give this class a Celestrak name and
- * it downloads a fresh copy right off of Celestrak's website.
+ * A small class to handle the accessing-of TLE files.  You give this class a Celestrak
+ * name and it finds the TLEs in the local catalog (see TLECatalog); if the category is
+ * not in the catalog, or was imported longer ago than the maximum age, it downloads a fresh
+ * copy right off of Celestrak's website and stores it in the catalog.
  * 
- * This class is used in the satellite wizard; its purpose: to download the TLEs
- * that the user has reqested.  See the only public method, 'getTLEs'
+ * Downloading is optional: set the system property mct.satellite.tle.online to false to
+ * use only the local catalog (for instance, on a machine without network access).  The
+ * maximum age, in hours, is set by the system property mct.satellite.tle.maxAge (by default, 24).
+ * 
+ * This class is used in the satellite wizard; its purpose: to find the TLEs
+ * that the user has reqested.  See the public methods, 'getTLEs' and 'refresh'
  */
 public class TLEUtility {	
 	
+	/* System property which, when false, keeps TLEs from being downloaded */
+	public static final String ONLINE_PROPERTY = "mct.satellite.tle.online";
+	
+	/* System property giving the age, in hours, after which cataloged TLEs are downloaded again */
+	public static final String MAX_AGE_PROPERTY = "mct.satellite.tle.maxAge";
+	private static final long  DEFAULT_MAX_AGE  = 24;
+	
 	//Used to access TLEs on Celestrak's website
 	private static final String urlTLELocation = "http://celestrak.com/NORAD/elements/";
 	
@@ -106,33 +119,6 @@ public class TLEUtility {
 		}
 	};
 	
-	/*
-	 * Given the full path to a file containing TLE data, e.g.: "stations.txt", this method returns
-	 * a list of strings, each string is a line of the TLE file
-	 */
-	private  List<String>
-	readFile(URL tleLoc)
-	{
-	    List<String> records = new ArrayList<String>();
-	  try
-	  {
-		  BufferedReader reader = new BufferedReader(new InputStreamReader(tleLoc.openStream()));
-	      String line;
-	    while ((line = reader.readLine()) != null)
-	    {
-	      records.add(line);
-	    }
-	    reader.close();
-	    return records;
-	  }
-	  catch (Exception e)
-	  {
-	    System.err.format("Exception occurred trying to read '%s'.", tleLoc.toString());
-	    e.printStackTrace();
-	    return null;
-	  }
-	}//--end readFile
-	
 	/**
 	 * Grab all the TLEs from a given TLE-file (from Celestrak) and return them as a List of TLEs
 	 * 
@@ -142,22 +128,19 @@ public class TLEUtility {
 	private List<TLE>
 	grab_tles(URL tleLoc){
 		
-		List<String> raw_tle_data = readFile(tleLoc);
-		/*
-		 * all tle data are in three-line increments, so the size of raw_tle_data is 3 times the number
-		 * of tle's in the file
-		 * 
-		 * Hence the number of tle's in the file is the number of elements in raw_tle_data divided by three
-		 */
-		int num_lines = raw_tle_data.size();
-		List<TLE> tle_recs = new ArrayList<TLE>();
-		//grab each tle:  lines 0 1 2 is the first tle, then lines 3 4 5 is the second tle, ... etc 
-		for(int i = 0; i<num_lines; i =i+3) {
-			TLE data = new TLE(raw_tle_data.get(i).trim(), raw_tle_data.get(i+1), raw_tle_data.get(i+2)); //why trim()? Well, we need to trim the trailing whitespace from the satellite name
-			tle_recs.add(data);
-		}//end for loop
-		
-		return tle_recs; 	//list of tles
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(tleLoc.openStream()));
+			try {
+				//all tle data are in three-line increments: the name, then lines 1 and 2
+				return TLECatalog.parse(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (Exception e) {
+			System.err.format("Exception occurred trying to read '%s'.", tleLoc.toString());
+			e.printStackTrace();
+			return null;
+		}
 	}
 	
 	/*
@@ -183,20 +166,50 @@ public class TLEUtility {
 	
 	
 	/**
+	 * Find the TLEs of a category in the local catalog; if the category is not there, or is
+	 * out of date, and downloading is allowed, download it (see refresh).  If it cannot be
+	 * downloaded, the TLEs in the catalog are used however old they are.
 	 * 
 	 * @param CelestrakCategory The Satellite Category as defined from 'http://celestrak.com/NORAD/elements/'
 	 * @return A list of TLE objects associated with the Celestrak satellite category (in order as they appear
-	 *         on Celestrak
+	 *         on Celestrak); empty if the category is not available
 	 */
 	public
 	List<TLE>
 	getTLEs(String CelestrakCategory) {
+		TLECatalog catalog = TLECatalog.getDefault();
+		List<TLE> tles = catalog.getCategory(CelestrakCategory);
+		if ((tles == null || isStale(catalog.getImportTime(CelestrakCategory), System.currentTimeMillis())) && isOnline()) {
+			List<TLE> fresh = refresh(CelestrakCategory);
+			if (fresh != null && !fresh.isEmpty()) tles = fresh;
+		}
+		return tles != null ? tles : Collections.<TLE>emptyList();
+	}
+	
+	/**
+	 * Download the current TLEs of a category from Celestrak, and store them in the local catalog.
+	 * 
+	 * @param CelestrakCategory The Satellite Category as defined from 'http://celestrak.com/NORAD/elements/'
+	 * @return A list of TLE objects associated with the Celestrak satellite category (in order as they appear
+	 *         on Celestrak), or null if they could not be downloaded
+	 */
+	public
+	List<TLE>
+	refresh(String CelestrakCategory) {
 		
 		String tleLoc = getTLEurl(CelestrakCategory);
 		
 		try {
 			URL urlTLE = new URL(tleLoc);
 			List<TLE> tles =  grab_tles(urlTLE);
+			if (tles != null && !tles.isEmpty()) {
+				try {
+					TLECatalog.getDefault().importTLEs(Collections.singletonMap(CelestrakCategory, tles));
+				} catch (IOException e) {
+					System.err.println("Could not store TLEs for " + CelestrakCategory);
+					e.printStackTrace();
+				}
+			}
 			return tles;
 		} catch (MalformedURLException e) {
 			return null;
@@ -204,6 +217,21 @@ public class TLEUtility {
 		
 	}
 	
+	/*
+	 * Check whether TLEs imported at a given time are older than the maximum age (see 
+	 * MAX_AGE_PROPERTY).  TLEs lose accuracy by the day, so they are not kept indefinitely.
+	 */
+	static boolean isStale(long importTime, long now) {
+		return now - importTime > Long.getLong(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE) * 60 * 60 * 1000;
+	}
+	
+	/**
+	 * @return true unless downloading TLEs has been turned off (see ONLINE_PROPERTY)
+	 */
+	public static boolean isOnline() {
+		return !"false".equalsIgnoreCase(System.getProperty(ONLINE_PROPERTY));
+	}
+	
 	
 	/*
 	 * Simple main for testing purposes :)
@@ -34,13 +34,22 @@ import gov.nasa.arc.mct.satellite.Trajectory;
 import gov.nasa.arc.mct.satellite.Vector;
 import gov.nasa.arc.mct.services.component.ViewInfo;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JComponent;
+import javax.swing.Timer;
 
 
 /*
@@ -50,15 +59,41 @@ import javax.swing.JComponent;
  * 
  * Note: Who can be viewed on a MercatorProjection? The policy takes care of that, see MercatorProjectionViewPolicy.
  *       How does MCT know that this is a view? SatelliteComponentProvider tells MCT that this is a view.
+ * 
+ * Feed updates are coalesced: each is parsed off the EDT, into an array of values indexed by feed slot,
+ * and the values are handed to the EDT (followed by a repaint) at most once every REPAINT_INTERVAL.  An
+ * update which arrives while a repaint is already scheduled is merged into it; values which are replaced
+ * before the EDT has taken them are dropped.
  */
 @SuppressWarnings("serial")
 public class MercatorProjectionView extends FeedView implements RenderingCallback, ViewChangeListener {
 
 	private static final int MAX_FEEDS = 3;
+	private static final int REPAINT_INTERVAL = 16; //ms; about one display refresh
+	
+	//parses feed updates for every Mercator view, in the order they arrive
+	private static final ExecutorService PARSER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "Mercator feed parser");
+			t.setDaemon(true);
+			return t;
+		}
+	});
 	
-	private Map<String, DoubleField> fieldProviders = new HashMap<String, DoubleField>();
+	private Map<String, Integer> feedSlots = new HashMap<String, Integer>();
 	private List<FeedProvider> feedProviders = new ArrayList<FeedProvider>();
 	
+	private double[] values;  //the latest values handed to the EDT, by feed slot; used only by the EDT
+	private double[] parsed;  //the latest values parsed; used only by the parser
+	private final AtomicReference<double[]> pending = new AtomicReference<double[]>(); //parsed, not yet taken by the EDT
+	private final AtomicBoolean scheduled = new AtomicBoolean(false); //whether a repaint is scheduled
+	private final Timer repaintTimer;
+	private volatile long lastRepaint = 0;
+	
+	private final AtomicLong mergedUpdates  = new AtomicLong();
+	private final AtomicLong droppedUpdates = new AtomicLong();
+	
 	private MercatorPanel mercatorPanel;
 	
 	
@@ -86,7 +121,7 @@ public class MercatorProjectionView extends FeedView implements RenderingCallbac
 					FeedProvider fp = element.getCapability(FeedProvider.class);
 					if (fp != null && i < MAX_FEEDS) {
 						feedProviders.add(fp);
-						fieldProviders.put(fp.getSubscriptionId(), tp.fields[i++]);
+						feedSlots.put(fp.getSubscriptionId(), tp.slots[i++] = feedProviders.size() - 1);
 					}
 				}
 			}
@@ -97,6 +132,21 @@ public class MercatorProjectionView extends FeedView implements RenderingCallbac
 			}
 		}
 
+		//the feed may respond before requestData returns
+		values = new double[feedProviders.size()];
+		parsed = new double[feedProviders.size()];
+		repaintTimer = new Timer(REPAINT_INTERVAL, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				scheduled.set(false);
+				double[] latest = pending.getAndSet(null);
+				if (latest != null) values = latest;
+				lastRepaint = System.currentTimeMillis();
+				repaint();
+			}
+		});
+		repaintTimer.setRepeats(false);
+		
 		requestData(feedProviders, System.currentTimeMillis(), System.currentTimeMillis(), 
 				new DataTransformation() {
 					@Override
@@ -118,21 +168,58 @@ public class MercatorProjectionView extends FeedView implements RenderingCallbac
 	 * @see gov.nasa.arc.mct.gui.FeedView#updateFromFeed(java.util.Map)
 	 */
 	@Override
-	public void updateFromFeed(Map<String, List<Map<String, String>>> data) {
+	public void updateFromFeed(final Map<String, List<Map<String, String>>> data) {
+		PARSER.execute(new Runnable() {
+			@Override
+			public void run() {
+				parse(data);
+			}
+		});
+	}
+	
+	/*
+	 * parses the last value of each feed in an update, hands the values to the EDT, and 
+	 * schedules a repaint (unless one is already scheduled); called only by the parser
+	 */
+	private void parse(Map<String, List<Map<String, String>>> data) {
 		for (FeedProvider fp : feedProviders) {
-			DoubleField field = fieldProviders.get(fp.getSubscriptionId());
+			Integer slot = feedSlots.get(fp.getSubscriptionId());
 			List<Map<String, String>> subdata = data.get(fp.getSubscriptionId());
-			if (field != null && subdata != null && subdata.size() > 0) {
+			if (slot != null && subdata != null && subdata.size() > 0) {
 				Map<String, String> packet = subdata.get(subdata.size() - 1);
 				RenderingInfo ri = fp.getRenderingInfo(packet);
 				try {
-					field.set(Double.parseDouble(ri.getValueText()));
+					parsed[slot] = Double.parseDouble(ri.getValueText());
 				} catch (NumberFormatException nfe) {
 					nfe.printStackTrace();  //TODO: Just ignore or show some kind of status?
 				}
 			}
 		}
-		repaint();
+		
+		if (pending.getAndSet(parsed.clone()) != null) {
+			droppedUpdates.incrementAndGet();
+		}
+		if (scheduled.compareAndSet(false, true)) {
+			long wait = lastRepaint + REPAINT_INTERVAL - System.currentTimeMillis();
+			repaintTimer.setInitialDelay((int) Math.max(0, Math.min(wait, REPAINT_INTERVAL)));
+			repaintTimer.start();
+		} else {
+			mergedUpdates.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return the number of feed updates which arrived while a repaint was already scheduled
+	 */
+	public long getMergedUpdates() {
+		return mergedUpdates.get();
+	}
+	
+	/**
+	 * @return the number of feed updates whose values were replaced before they were shown
+	 */
+	public long getDroppedUpdates() {
+		return droppedUpdates.get();
 	}
 
 	/*
@@ -187,29 +274,16 @@ public class MercatorProjectionView extends FeedView implements RenderingCallbac
 		getManifestedComponent().save();
 	}
 	
-	/*
-	 * This private class holds the ECEF coordinate positions coming in from the feeds, and
-	 * is used in the TrajectoryProvider class
-	 */
-	private class DoubleField {
-		private double value;
-		public void set(double v) { value = v; }
-		public double get () { return value; }
-	}
-
 	/*This class stores the three-ECEF-coordinates of the object being displayed on the Mercator Projection 
+	 *(as the slots of the feeds which supply them)
 	 *Note: Velocity is not used for the MercatorView (as the view is just being updated every second)
 	 */
 	private class TrajectoryProvider implements Trajectory{
-		public DoubleField fields[] = new DoubleField[MAX_FEEDS];
-		
-		public TrajectoryProvider() {
-			for (int i = 0; i < fields.length; i++) fields[i] = new DoubleField();
-		}
+		public int slots[] = new int[MAX_FEEDS];
 		
 		@Override
 		public Vector getPosition() {
-			return new Vector(fields[0].get(), fields[1].get(), fields[2].get());
+			return new Vector(values[slots[0]], values[slots[1]], values[slots[2]]);
 		}
 		@Override
 		public Vector getVelocity() {
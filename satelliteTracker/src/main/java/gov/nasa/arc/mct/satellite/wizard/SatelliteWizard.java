@@ -141,6 +141,7 @@ public class SatelliteWizard extends CreateWizardUI {
 	private JButton jbAddAllSat;
 	private JButton jbRemoveSat;
 	private JButton jbRemoveAllSat;
+	private JButton jbRefresh;
 	
 	private JCheckBox jchkbMakeCollection;
 	private JTextField jtfCollectionName;
@@ -172,6 +173,8 @@ public class SatelliteWizard extends CreateWizardUI {
 		jbAddAllSat = new JButton("Add All -->");
 		jbRemoveSat = new JButton("Remove <--");
 		jbRemoveAllSat = new JButton("Remove All <--");
+		jbRefresh = new JButton("Refresh");
+		jbRefresh.setToolTipText("Download the latest TLEs for this group from Celestrak");
 		
 		lblChooseSat = new JLabel("Satellite Group:");
 		lblChoiceSat = new JLabel("Choices in Satellite Group");
@@ -187,6 +190,7 @@ public class SatelliteWizard extends CreateWizardUI {
 		jbAddAllSat.setEnabled(false);
 		jbRemoveSat.setEnabled(false);
 		jbRemoveAllSat.setEnabled(false);
+		jbRefresh.setEnabled(false);
 		jbCreate.setEnabled(false);
 		jchkbMakeCollection.setSelected(true);
 		jchkbMakeCollection.setEnabled(true);
@@ -285,11 +289,12 @@ public class SatelliteWizard extends CreateWizardUI {
 					lmSatChoices.clear();
 					
 					final String choice = jcbSatCategories.getSelectedItem().toString();
+					jbRefresh.setEnabled(TLEUtility.isOnline());
 					if(storedSatCats.containsKey(choice)) {
 						populate(storedSatCats.get(choice));
 					}
 					else {
-						// Run the http request on a background thread
+						// Look up the catalog (which may download the category) on a background thread
 						new SwingWorker<List<TLE>, Object>() {
 							@Override
 							protected List<TLE> doInBackground()
@@ -312,17 +317,44 @@ public class SatelliteWizard extends CreateWizardUI {
 					}					
 				}				
 			}//--end actionPerformed
-			
-			private void populate(List<TLE> userSatChoices) {
-				//TODO: mark the TLEs already in the Chosen list as '**already added**'?
-				for(int i=0; i < userSatChoices.size(); i++)
-					lmSatChoices.addElement(userSatChoices.get(i));
-				
-				jbAddSat.setEnabled(true);
-				jbAddAllSat.setEnabled(true);
-				
-				jlSatChoices.requestFocusInWindow();
-				jlSatChoices.setSelectedIndex(0);
+		});
+		
+		/*ActionListener for Refresh button:
+		 *     download the selected satellite grouping again (this also updates the local
+		 *     TLE catalog), and repopulate the SatChoices List if the grouping is still selected;
+		 *     if nothing was downloaded, keep the TLEs already shown
+		 */
+		jbRefresh.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent ae) {
+				final String choice = jcbSatCategories.getSelectedItem().toString();
+				jbRefresh.setEnabled(false);
+				new SwingWorker<List<TLE>, Object>() {
+					@Override
+					protected List<TLE> doInBackground()
+							throws Exception {
+						return tleUtil.refresh(choice);
+					}
+
+					@Override
+					protected void done() {
+						jbRefresh.setEnabled(true);
+						try {
+							List<TLE> tles = get();
+							if (tles != null && !tles.isEmpty()) {
+								storedSatCats.put(choice, tles);
+								if (choice.equals(jcbSatCategories.getSelectedItem().toString())) {
+									lmSatChoices.clear();
+									populate(tles);
+								}
+							}
+						} catch (InterruptedException e) {
+							//keep the TLEs we have
+						} catch (ExecutionException e) {
+							//keep the TLEs we have
+						}
+					}
+				}.execute();
 			}
 		});
 		
@@ -514,6 +546,8 @@ public class SatelliteWizard extends CreateWizardUI {
 		headPanel.add(lblChooseSat);
 		headPanel.add(Box.createRigidArea(new Dimension(20, 0)));
 		headPanel.add(jcbSatCategories);
+		headPanel.add(Box.createRigidArea(new Dimension(10, 0)));
+		headPanel.add(jbRefresh);
 		headPanel.add(Box.createRigidArea(new Dimension(200, 0)));
 
 		
@@ -585,6 +619,22 @@ public class SatelliteWizard extends CreateWizardUI {
 	}
 	
 	
+	/*
+	 * Fill the SatChoices List with the satellites of a grouping, enable the Add/AddAll
+	 * buttons, and select the first choice
+	 */
+	private void populate(List<TLE> userSatChoices) {
+		//TODO: mark the TLEs already in the Chosen list as '**already added**'?
+		for(int i=0; i < userSatChoices.size(); i++)
+			lmSatChoices.addElement(userSatChoices.get(i));
+		
+		jbAddSat.setEnabled(true);
+		jbAddAllSat.setEnabled(true);
+		
+		jlSatChoices.requestFocusInWindow();
+		jlSatChoices.setSelectedIndex(0);
+	}
+	
 	/*
 	 * Determine whether the satellite TLE being added is already contained in the Chosen list.
 	 * 
@@ -0,0 +1,109 @@
+package gov.nasa.arc.mct.satellite;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MercatorPanelTest {
+	private static final double RADIUS = 6378.137;
+
+	@Test
+	public void testHoverWithinCell() {
+		// At 360 by 180 pixels, a degree is a pixel; a and b are in one 16 pixel cell
+		JLabel a = new JLabel("A"), b = new JLabel("B"), c = new JLabel("C"), d = new JLabel("D");
+		Map<JComponent, Trajectory> trajectories = new LinkedHashMap<JComponent, Trajectory>();
+		trajectories.put(a, at(-4));  // x = 176
+		trajectories.put(b, at(8));   // x = 188
+		trajectories.put(c, at(60));
+		trajectories.put(d, at(60));  // Over c
+		MercatorPanel panel = paint(trajectories);
+
+		Assert.assertEquals(hover(panel, 188, 90), b);
+		Assert.assertFalse(a.isVisible());
+		Assert.assertEquals(hover(panel, 176, 90), a);
+		Assert.assertFalse(b.isVisible());
+		Assert.assertNull(hover(panel, 100, 90));
+
+		// Of labels in the same place, the one drawn on top
+		Assert.assertEquals(hover(panel, 240, 90), d);
+	}
+
+	@Test
+	public void testAllLabelsDrawn() {
+		JLabel a = new JLabel("A"), b = new JLabel("B");
+		Map<JComponent, Trajectory> only = new LinkedHashMap<JComponent, Trajectory>();
+		only.put(a, at(-4));
+		BufferedImage first = render(paint(only));
+		only.put(b, at(-3));          // Within a pixel, so in the same cell
+		BufferedImage both = render(paint(only));
+		Assert.assertFalse(Arrays.equals(pixels(first), pixels(both)));
+	}
+
+	@Test
+	public void testRename() {
+		// The name changes, but not the size of the label
+		JLabel a = new JLabel("");
+		a.setPreferredSize(new Dimension(40, 16));
+		Map<JComponent, Trajectory> trajectories = new LinkedHashMap<JComponent, Trajectory>();
+		trajectories.put(a, at(0));
+		MercatorPanel panel = paint(trajectories);
+		int[] before = pixels(render(panel));
+		Assert.assertEquals(pixels(render(panel)), before);
+		a.setText("WWW");
+		Assert.assertFalse(Arrays.equals(pixels(render(panel)), before));
+	}
+
+	private static MercatorPanel paint(Map<JComponent, Trajectory> trajectories) {
+		MercatorPanel panel = new MercatorPanel(trajectories);
+		panel.setSize(360, 180);
+		render(panel);
+		return panel;
+	}
+
+	private static BufferedImage render(MercatorPanel panel) {
+		BufferedImage image = new BufferedImage(360, 180, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		panel.paint(g);
+		g.dispose();
+		return image;
+	}
+
+	private static int[] pixels(BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	private static JComponent hover(MercatorPanel panel, int x, int y) {
+		panel.dispatchEvent(new MouseEvent(panel, MouseEvent.MOUSE_MOVED, 0, 0, x, y, 0, false));
+		for (int i = 0; i < panel.getComponentCount(); i++) {
+			if (panel.getComponent(i).isVisible()) return (JComponent) panel.getComponent(i);
+		}
+		return null;
+	}
+
+	/*
+	 * A trajectory standing at a longitude on the equator
+	 */
+	private static Trajectory at(final double lon) {
+		return new Trajectory() {
+			@Override
+			public Vector getPosition() {
+				return new Vector(RADIUS * Math.cos(Math.toRadians(lon)), RADIUS * Math.sin(Math.toRadians(lon)), 0);
+			}
+
+			@Override
+			public Vector getVelocity() {
+				return new Vector(0, 0, 0);
+			}
+		};
+	}
+}
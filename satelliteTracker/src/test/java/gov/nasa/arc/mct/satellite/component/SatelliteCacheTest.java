@@ -0,0 +1,72 @@
+package gov.nasa.arc.mct.satellite.component;
+
+import gov.nasa.arc.mct.satellite.utilities.SatTrak;
+import gov.nasa.arc.mct.satellite.utilities.TLECatalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import jsattrak.utilities.TLE;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class SatelliteCacheTest {
+	private static final String ISS_1     = "1 25544U 98067A   13241.39990741  .00008176  00000-0  14800-3 0  4862";
+	private static final String ISS_2     = "2 25544  51.6499 105.5504 0004476  12.3451 332.2743 15.50589082846053";
+	private static final String ISS_OLD_1 = "1 25544U 98067A   13240.52097222  .00008018  00000-0  14530-3 0  4853";
+	private static final String ISS_OLD_2 = "2 25544  51.6500 109.8659 0004519  10.3521 334.7393 15.50577340845920";
+
+	@Test
+	public void testSameTLE() {
+		SatelliteCache cache = new SatelliteCache();
+		SatTrak sat = cache.get(new SatelliteCache.Elements("ISS", ISS_1, ISS_2));
+		Assert.assertSame(cache.get(new SatelliteCache.Elements("ISS", ISS_1, ISS_2)), sat);
+	}
+
+	@Test
+	public void testDifferentTLEs() {
+		// Feeds with different TLEs for one satellite do not evict each other
+		SatelliteCache cache = new SatelliteCache();
+		SatelliteCache.Elements current = new SatelliteCache.Elements("ISS", ISS_1, ISS_2);
+		SatelliteCache.Elements older   = new SatelliteCache.Elements("ISS", ISS_OLD_1, ISS_OLD_2);
+		Assert.assertEquals(current.getNumber(), older.getNumber());
+		SatTrak a = cache.get(current);
+		SatTrak b = cache.get(older);
+		Assert.assertNotSame(a, b);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertSame(cache.get(current), a);
+			Assert.assertSame(cache.get(older), b);
+		}
+	}
+
+	@Test
+	public void testCatalog() throws IOException {
+		File directory = File.createTempFile("catalog", "");
+		Assert.assertTrue(directory.delete());
+		try {
+			TLECatalog catalog = new TLECatalog(directory);
+			catalog.importTLEs(Collections.singletonMap("Space Stations", 
+					Collections.singletonList(new TLE("ISS (ZARYA)", ISS_1, ISS_2))));
+			long time = 1377700000000L; // The day after the older TLE's epoch
+			SatTrak current = new SatTrak("ISS", ISS_1, ISS_2);
+			SatTrak older   = new SatTrak("ISS", ISS_OLD_1, ISS_OLD_2);
+			Assert.assertTrue(Math.abs(current.getECEFx(time) - older.getECEFx(time)) > 1.0);
+
+			// By default, a feed's TLE is used as given
+			SatTrak sat = new SatelliteCache().get(new SatelliteCache.Elements("ISS", ISS_OLD_1, ISS_OLD_2));
+			Assert.assertEquals(sat.getECEFx(time), older.getECEFx(time));
+
+			// Only if asked, a newer TLE from the catalog is used instead
+			SatelliteCache cache = new SatelliteCache(catalog);
+			sat = cache.get(new SatelliteCache.Elements("ISS", ISS_OLD_1, ISS_OLD_2));
+			Assert.assertEquals(sat.getECEFx(time), current.getECEFx(time));
+			sat = cache.get(new SatelliteCache.Elements("ISS", ISS_1, ISS_2));
+			Assert.assertEquals(sat.getECEFx(time), current.getECEFx(time));
+		} finally {
+			for (File f : directory.listFiles()) f.delete();
+			directory.delete();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package gov.nasa.arc.mct.satellite.utilities;
+
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.Reporter;
+import org.testng.annotations.Test;
+
+public class ConvertECEFtoLLATest {
+	private static final double A   = 6378.137;
+	private static final double ESQ = 1.0 - Math.pow(1.0 - 1.0/298.257223563, 2);
+
+	private final ConvertECEFtoLLA   convert   = new ConvertECEFtoLLA();
+	private final ReferenceECEFtoLLA reference = new ReferenceECEFtoLLA();
+
+	@Test
+	public void testAgainstReference() {
+		// Random locations between the earth's surface and beyond geosynchronous orbit
+		Random random = new Random(0);
+		double[] xvec = new double[3], lla = new double[3];
+		for (int i = 0; i < 200000; i++) {
+			double r = A * (0.995 + 7.0 * random.nextDouble());
+			double z = 2.0 * random.nextDouble() - 1.0;
+			double lon = 2.0 * Math.PI * random.nextDouble();
+			xvec[0] = r * Math.sqrt(1 - z * z) * Math.cos(lon);
+			xvec[1] = r * Math.sqrt(1 - z * z) * Math.sin(lon);
+			xvec[2] = r * z;
+			assertMatchesReference(xvec, convert.ecefToLLA(xvec, lla));
+		}
+	}
+
+	@Test
+	public void testSpecialLocations() {
+		double[][] locations = {
+			{ 7000, 0, 0 }, { -7000, 0, 0 }, { 0, 7000, 0 }, { 0, -7000, 0 },  // Equator, on the axes
+			{ -7000, 1e-9, 0 }, { -7000, -1e-9, 0 },                           // Either side of 180 degrees
+			{ 0, 0, 7000 }, { 0, 0, -7000 }, { 0, 0, 6356.752314245 },         // Poles
+			{ 1e-3, 0, 7000 }, { 1e-6, 1e-6, -7000 },                          // Close to the poles
+			{ 4000, 4000, 4000 }, { -4000, -4000, -4000 }, { 4000, -4000, 4000 },
+			{ -3913.8231010403706, 3246.771107703494, -3850.581024475044 },     // ISS (see ConvertECEFtoLLA.main)
+			{ A, 0, 0 }, { 42164, 0, 0 }, { 1e6, 2e6, 3e6 }
+		};
+		for (double[] xvec : locations) {
+			assertMatchesReference(xvec, convert.ecefToLLA(xvec));
+		}
+		Assert.assertEquals(convert.ecefToLLA(new double[] { -7000, 0, 0 })[1], -180.0); // Not 180
+		Assert.assertEquals(convert.ecefToLLA(new double[] { 0, 0, 7000 })[1], 0.0);
+		Assert.assertEquals(convert.ecefToLLA(new double[] { 0, 0, -7000 })[0], -90.0, 1e-12);
+
+		// Close to the poles, the altitude is the distance from the pole (to within 1e-12 km),
+		// where the reference loses precision
+		double b = A * (1.0 - 1.0/298.257223563);
+		Assert.assertEquals(convert.ecefToLLA(new double[] { 1e-6, 1e-6, -7000 })[2], 7000 - b, 1e-9);
+		Assert.assertEquals(convert.ecefToLLA(new double[] { 0, 0, 7000 })[2], 7000 - b, 1e-9);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		int count = 100000;
+		double[] xvecs   = new double[count * 3];
+		double[] llhvecs = new double[count * 3];
+		double[] expect  = new double[count * 3];
+		Random random = new Random(0);
+		for (int i = 0; i < count * 3; i += 3) {
+			expect[i]     = Math.toDegrees(Math.asin(2.0 * random.nextDouble() - 1.0));
+			expect[i + 1] = 360.0 * random.nextDouble() - 180.0;
+			expect[i + 2] = 36000.0 * random.nextDouble();
+			llaToECEF(expect, i, xvecs, i);
+		}
+		convert.ecefToLLA(xvecs, llhvecs, count);
+		for (int i = 0; i < count * 3; i++) {
+			Assert.assertEquals(llhvecs[i], expect[i], i % 3 == 2 ? 1e-8 : 1e-11, "Location " + i / 3);
+		}
+	}
+
+	@Test
+	public void testAtan() {
+		// Exactly on table entries, at the ends of the table, and between entries
+		double[] values = { 0.0, -0.0, 1.0, -1.0, Math.nextAfter(1.0, 0), -Math.nextAfter(1.0, 0), 
+				1.0 / 32, 1.0 / 64, 3.0 / 64, 1e-300, -1e-300, Double.MIN_VALUE, 0.5, -0.75, 1.0 - 1.0 / 64, 1.0 - 1e-12 };
+		for (double t : values) {
+			Assert.assertEquals(ConvertECEFtoLLA.atan(t), Math.atan(t), 4e-16, "atan(" + t + ")");
+		}
+		Assert.assertEquals(ConvertECEFtoLLA.atan(1.0), Math.PI / 4, 2e-16);
+		Assert.assertEquals(ConvertECEFtoLLA.atan(-1.0), -Math.PI / 4, 2e-16);
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			double t = 2.0 * random.nextDouble() - 1.0;
+			Assert.assertEquals(ConvertECEFtoLLA.atan(t), Math.atan(t), 4e-16, "atan(" + t + ")");
+		}
+	}
+
+	@Test
+	public void testCbrt() {
+		// The conversion takes cube roots of values of 1 or more, mostly close to 1
+		double[] values = { 1.0, Math.nextUp(1.0), 1.0 + 1e-12, 1.0 + 1e-6, 1.0 - 1e-12, Math.nextAfter(1.0, 0),
+				0.5, 2.0, 8.0, 27.0, 1000.0, 1e-300, 1e300, Double.MIN_NORMAL };
+		for (double q : values) {
+			Assert.assertEquals(ConvertECEFtoLLA.cbrt(q), Math.cbrt(q), 2 * Math.ulp(Math.cbrt(q)), "cbrt(" + q + ")");
+		}
+		Assert.assertEquals(ConvertECEFtoLLA.cbrt(1.0), 1.0, 2e-16);
+		Assert.assertEquals(ConvertECEFtoLLA.cbrt(8.0), 2.0, 4e-16);
+		Random random = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			double q = 1.0 + Math.pow(10, -15 * random.nextDouble()) * random.nextDouble();
+			Assert.assertEquals(ConvertECEFtoLLA.cbrt(q), Math.cbrt(q), 2 * Math.ulp(Math.cbrt(q)), "cbrt(" + q + ")");
+		}
+	}
+
+	/*
+	 * Report the time taken per conversion, against the reference
+	 */
+	@Test
+	public void testThroughput() {
+		int count = 1000000;
+		double[] xvecs   = new double[count * 3];
+		double[] llhvecs = new double[count * 3];
+		double[] expect  = new double[count * 3];
+		Random random = new Random(0);
+		for (int i = 0; i < count * 3; i += 3) {
+			expect[i]     = Math.toDegrees(Math.asin(2.0 * random.nextDouble() - 1.0));
+			expect[i + 1] = 360.0 * random.nextDouble() - 180.0;
+			expect[i + 2] = 36000.0 * random.nextDouble();
+			llaToECEF(expect, i, xvecs, i);
+		}
+		double[] xvec = new double[3];
+		for (int run = 0; run < 3; run++) {
+			long start = System.nanoTime();
+			convert.ecefToLLA(xvecs, llhvecs, count);
+			long elapsed = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			double sum = 0;
+			for (int i = 0; i < count * 3; i += 3) {
+				System.arraycopy(xvecs, i, xvec, 0, 3);
+				sum += reference.ecefToLLA(xvec)[0];
+			}
+			long referenceElapsed = System.nanoTime() - start;
+			Reporter.log(String.format("%d ns per conversion; %d ns by the reference (%.0f)", 
+					elapsed / count, referenceElapsed / count, sum), true);
+		}
+	}
+
+	private void assertMatchesReference(double[] xvec, double[] lla) {
+		double[] expected = reference.ecefToLLA(xvec);
+		String at = "at " + xvec[0] + ", " + xvec[1] + ", " + xvec[2];
+		Assert.assertEquals(lla[0], expected[0], 1e-10, "Latitude " + at);
+		double dlon = Math.abs(lla[1] - expected[1]);
+		Assert.assertTrue(Math.min(dlon, 360.0 - dlon) < 1e-10, "Longitude " + lla[1] + " not " + expected[1] + " " + at);
+		// The reference finds altitude by dividing by the cosine of the latitude, so loses precision at the poles
+		double tolerance = Math.abs(expected[0]) > 89.99 ? 1e-2 : Math.abs(expected[0]) > 89.0 ? 1e-5 : 1e-7;
+		Assert.assertEquals(lla[2], expected[2], tolerance, "Altitude " + at);
+	}
+
+	/*
+	 * Geodetic latitude, longitude (deg) and altitude (km) at i to ECEF (km) at j
+	 */
+	private static void llaToECEF(double[] lla, int i, double[] out, int j) {
+		double slat = Math.sin(Math.toRadians(lla[i]));
+		double clat = Math.cos(Math.toRadians(lla[i]));
+		double rn   = A / Math.sqrt(1.0 - ESQ * slat * slat);
+		out[j]     = (rn + lla[i + 2]) * clat * Math.cos(Math.toRadians(lla[i + 1]));
+		out[j + 1] = (rn + lla[i + 2]) * clat * Math.sin(Math.toRadians(lla[i + 1]));
+		out[j + 2] = (rn * (1.0 - ESQ) + lla[i + 2]) * slat;
+	}
+}
@@ -0,0 +1,251 @@
+package gov.nasa.arc.mct.satellite.utilities;
+
+/*
+ * The iterative conversion ConvertECEFtoLLA used before its closed-form one, kept
+ * unchanged (but for its name) to check the closed form against.
+ */
+class ReferenceECEFtoLLA {
+
+	@SuppressWarnings("unused")
+	private double EARTH_A, EARTH_B, EARTH_F, EARTH_Ecc, EARTH_Esq;
+	
+	
+	public ReferenceECEFtoLLA() {
+		setWGS84Values();
+	}
+	
+	private void setWGS84Values() {
+		double  wgs84a, wgs84b, wgs84f;
+
+          wgs84a         =  6378.137;
+          wgs84f         =  1.0/298.257223563;
+          wgs84b         =  wgs84a * ( 1.0 - wgs84f );
+
+          setEarthConstants(wgs84a, wgs84b);
+	}
+	
+	/*	Sets Earth Constants as globals */
+	private void setEarthConstants(double ai, double bi) {
+		double  f,ecc, eccsq, a,b;
+
+           a        =  ai;
+           b        =  bi;
+
+           f        =  1-b/a;
+           eccsq    =  1 - b*b/(a*a);
+           ecc      =  Math.sqrt(eccsq);
+
+           EARTH_A   =  a;
+           EARTH_B   =  b;
+           EARTH_F   =  f;
+           EARTH_Ecc =  ecc;
+           EARTH_Esq =  eccsq;
+	}
+	
+	/* compute the radii at the geodetic latitude lat (in degrees)
+	 * 		input:  lat       geodetic latitude in degrees
+ 	 *		output: an array 3 long where  r,  rn,  rm are in  in km
+	 */
+	private double[] radCur( double lati) {
+		
+		double[] rrnrm = new double[3];
+		double a, b, asq, bsq, eccsq, ecc,
+		       lat, clat, slat, dsq, d, rn, rm, rho,
+		       z, rsq, r, dtr;
+		
+		 dtr = Math.PI/180.0;
+		
+		 a     = EARTH_A;
+	     b     = EARTH_B;
+
+	     asq   = a*a;
+	     bsq   = b*b;
+	     eccsq  =  1 - bsq/asq;
+	     ecc = Math.sqrt(eccsq);
+
+	     lat   =  lati;
+
+	     clat  =  Math.cos(dtr*lat);
+	     slat  =  Math.sin(dtr*lat);
+
+	     dsq   =  1.0 - eccsq * slat * slat;
+	     d     =  Math.sqrt(dsq);
+
+	     rn    =  a/d;
+	     rm    =  rn * (1.0 - eccsq ) / dsq;
+
+	     rho   =  rn * clat;
+	     z     =  (1.0 - eccsq ) * rn * slat;
+	     rsq   =  rho*rho + z*z;
+	     r     =  Math.sqrt( rsq );
+
+	     rrnrm[0]  =  r;
+	     rrnrm[1]  =  rn;
+	     rrnrm[2]  =  rm;
+
+	     return  rrnrm ;
+		
+	}
+	
+	
+	
+
+	
+	/*        geocentric latitude to geodetic latitude
+
+    	Input:
+              	flatgc    geocentric latitude deg.
+              	altkm     altitide in km
+    	ouput:
+              	flatgd    geodetic latitude in deg
+
+	 */
+	private double gc2gd(double flatgci, double altkmi) {
+		double dtr   = Math.PI/180.0;
+	     double rtd   = 1/dtr;
+
+	     double  flatgd,flatgc,altkm;
+	     double[]  rrnrm = new double[3];
+	     double  rn,ecc, esq;
+	     double  tlat;
+	     double  altnow,ratio;
+
+	     //geodGBL();
+
+	     flatgc=  flatgci;
+	     altkm =  altkmi;
+	     
+	     ecc   =  EARTH_Ecc;
+	     esq   =  ecc*ecc;
+
+//	             approximation by stages
+//	             1st use gc-lat as if is gd, then correct alt dependence
+
+	     altnow  =  altkm;
+
+	     rrnrm   =  radCur (flatgc);
+	     rn      =  rrnrm[1];
+	     
+	     ratio   = 1 - esq*rn/(rn+altnow);
+
+	     tlat    = Math.tan(dtr*flatgc) / ratio;
+	     flatgd  = rtd * Math.atan(tlat);
+
+//	        now use this approximation for gd-lat to get rn etc.
+
+	     rrnrm   =  radCur ( flatgd );
+	     rn      =  rrnrm[1];
+
+	     ratio   =  1  - esq*rn/(rn+altnow);
+	     tlat    =  Math.tan(dtr*flatgc)/ratio;
+	     flatgd  =  rtd * Math.atan(tlat);
+
+	     return  flatgd;
+
+     }
+
+	//  physical radius of earth from geodetic latitude
+	private double rearth(double lati) {
+		double   lat;
+        lat   =  lati;
+        return  radCur(lat)[0]; //we are returning 'r' from the rrnrm vector
+	}
+
+	
+	
+	/**
+	 * 
+	 * @param xvec xyz ECEF locations in km
+	 * @return a double array (of size three)
+	 *     <UL>
+	 *        <LI> [0] geodetic latitude in deg
+	 *        <LI> [1] longitude in deg in the range of [-180,180]
+	 *        <LI> [2] altitude in km
+	 *     </UL>
+	 */
+	public double[] ecefToLLA( double[] xvec ) {
+		
+		double  dtr =  Math.PI/180.0;
+		double  flatgc,flatn,dlat;
+		double  rnow,rp;
+		double  x,y,z,p;
+		double tangd;
+		double  testval;
+
+		double  rn,esq;
+		double  clat,slat;
+		double[] rrnrm = new double[3];
+
+		double flat,flon,altkm;
+		double[] llhvec = new double[3];
+
+	     esq    =  EARTH_Esq;
+
+	     x      = xvec[0];
+	     y      = xvec[1];
+	     z      = xvec[2];
+
+	     rp     = Math.sqrt ( x*x + y*y + z*z );
+
+	     flatgc = Math.asin ( z / rp )/dtr;
+
+	     testval= Math.abs(x) + Math.abs(y);
+	     if ( testval < 1.0e-10)
+	         {flon = 0.0; }
+	     else
+	         {flon = Math.atan2 ( y,x )/dtr; } 
+	     if (flon < 0.0 )  { flon = flon + 360.0; }
+
+	     p      =  Math.sqrt( x*x + y*y );
+
+	     //on pole special case
+	     if ( p < 1.0e-10 )
+	       {  
+	          flat = 90.0;
+	          if ( z < 0.0 ) { flat = -90.0; }
+
+	          altkm = rp - rearth(flat);
+	          llhvec[0]  = flat;
+	          llhvec[1]  = flon;
+	          llhvec[2]  = altkm;
+
+	          return  llhvec;
+	        }
+
+//	        first iteration, use flatgc to get altitude 
+//	        and alt needed to convert gc to gd lat.
+
+	     rnow  =  rearth(flatgc);
+	     altkm =  rp - rnow;
+	     flat  =  gc2gd (flatgc,altkm);
+	          
+	     rrnrm =  radCur(flat);
+	     rn    =  rrnrm[1];
+
+	     for(int kount=0; kount< 5 ; kount++ )
+	       {
+	           slat  =  Math.sin(dtr*flat);
+	           tangd =  ( z + rn*esq*slat ) / p;
+	           flatn =  Math.atan(tangd)/dtr;
+
+	           dlat  =  flatn - flat;
+	           flat  =  flatn;
+	           clat  =  Math.cos( dtr*flat );
+
+	           rrnrm =  radCur(flat);
+	           rn    =  rrnrm[1];
+
+	           altkm =  (p/clat) - rn;
+
+	           if ( Math.abs(dlat) < 1.0e-12 ) { break; }
+
+	       }
+	     
+	          llhvec[0]  = flat;
+	          llhvec[1]  =((flon+180)%360) - 180;	//convert longitude from [0,360] range, to [-180,180] range.
+	          llhvec[2]  = altkm;
+
+	          return  llhvec ;
+
+	     }
+}
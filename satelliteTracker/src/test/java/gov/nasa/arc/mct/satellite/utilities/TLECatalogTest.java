@@ -0,0 +1,238 @@
+package gov.nasa.arc.mct.satellite.utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import jsattrak.utilities.TLE;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TLECatalogTest {
+	private File       directory;
+	private TLECatalog catalog;
+
+	@BeforeMethod
+	public void setup() throws IOException {
+		directory = File.createTempFile("catalog", "");
+		Assert.assertTrue(directory.delete());
+		catalog = new TLECatalog(directory);
+		catalog.open();
+	}
+
+	@AfterMethod
+	public void teardown() {
+		File[] files = directory.listFiles();
+		if (files != null) for (File f : files) f.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testEmpty() {
+		Assert.assertEquals(catalog.size(), 0);
+		Assert.assertNull(catalog.get(25544));
+		Assert.assertTrue(catalog.find("").isEmpty());
+		Assert.assertNull(catalog.getCategory("Weather"));
+		Assert.assertEquals(catalog.getImportTime("Weather"), 0L);
+		Assert.assertFalse(directory.exists());
+	}
+
+	@Test
+	public void testLookup() throws IOException {
+		// Satellite numbers in no particular order, with gaps
+		Random random = new Random(0);
+		List<TLE> tles = new ArrayList<TLE>();
+		HashSet<Integer> numbers = new HashSet<Integer>();
+		while (tles.size() < 500) {
+			int number = 10 + random.nextInt(90000);
+			if (numbers.add(number)) tles.add(tle("SAT " + number, number));
+		}
+		catalog.importTLEs(Collections.singletonMap("All", tles));
+		Assert.assertEquals(catalog.size(), 500);
+
+		for (TLE tle : tles) {
+			TLE found = catalog.get(TLECatalog.getNumber(tle));
+			Assert.assertNotNull(found);
+			Assert.assertEquals(found.getSatName(), tle.getSatName());
+			Assert.assertEquals(found.getLine1(), tle.getLine1());
+			Assert.assertEquals(found.getLine2(), tle.getLine2());
+		}
+		for (int number : new int[] { 0, 9, 90010, 99999, Integer.MAX_VALUE, -1 }) {
+			Assert.assertNull(catalog.get(number));
+		}
+		for (int number = 10; number < 90010; number += 7) {
+			if (!numbers.contains(number)) Assert.assertNull(catalog.get(number));
+		}
+	}
+
+	@Test
+	public void testFind() throws IOException {
+		catalog.importTLEs(Collections.singletonMap("Mixed", Arrays.asList(
+				tle("NOAA 19", 33591), tle("noaa 18", 28654), tle("ISS (ZARYA)", 25544),
+				tle("NOAA", 1000), tle("IRIDIUM 33", 24946), tle("A VERY LONG SATELLITE NAME THAT IS TRUNCATED", 1001))));
+
+		// Prefixes ignore case, and matches are in order of name
+		Assert.assertEquals(names(catalog.find("noaa")), Arrays.asList("NOAA", "noaa 18", "NOAA 19"));
+		Assert.assertEquals(names(catalog.find("NOAA 1")), Arrays.asList("noaa 18", "NOAA 19"));
+		Assert.assertEquals(names(catalog.find("i")), Arrays.asList("IRIDIUM 33", "ISS (ZARYA)"));
+		Assert.assertEquals(names(catalog.find("ISS (Z")), Arrays.asList("ISS (ZARYA)"));
+		Assert.assertTrue(catalog.find("NOAA 2").isEmpty());
+		Assert.assertTrue(catalog.find("Z").isEmpty());
+		Assert.assertTrue(catalog.find("0").isEmpty());
+		Assert.assertEquals(catalog.find("").size(), 6);
+
+		// Names longer than their slot are truncated
+		List<TLE> found = catalog.find("A VERY");
+		Assert.assertEquals(found.size(), 1);
+		Assert.assertTrue("A VERY LONG SATELLITE NAME THAT IS TRUNCATED".startsWith(found.get(0).getSatName()));
+		Assert.assertTrue(found.get(0).getSatName().length() < 32);
+	}
+
+	@Test
+	public void testCategories() throws IOException {
+		Map<String, List<TLE>> categories = new LinkedHashMap<String, List<TLE>>();
+		categories.put("Space Stations", Arrays.asList(tle("ISS (ZARYA)", 25544), tle("TIANGONG", 48274)));
+		categories.put("Weather", Arrays.asList(tle("NOAA 19", 33591), tle("GOES 16", 41866), tle("NOAA 18", 28654)));
+		catalog.importTLEs(categories, 1000L);
+		Assert.assertEquals(new ArrayList<String>(catalog.getCategories()), Arrays.asList("Space Stations", "Weather"));
+		Assert.assertEquals(names(catalog.getCategory("Weather")), Arrays.asList("NOAA 19", "GOES 16", "NOAA 18"));
+		Assert.assertEquals(catalog.getImportTime("Weather"), 1000L);
+
+		// Importing a category replaces it, and leaves the others (and their import times) alone
+		TLE updated = new TLE("ISS (ZARYA)", line1(25544, "13242.5"), line2(25544));
+		catalog.importTLEs(Collections.singletonMap("Space Stations", Arrays.asList(tle("CSS", 48275), updated)), 2000L);
+		Assert.assertEquals(names(catalog.getCategory("Space Stations")), Arrays.asList("CSS", "ISS (ZARYA)"));
+		Assert.assertEquals(names(catalog.getCategory("Weather")), Arrays.asList("NOAA 19", "GOES 16", "NOAA 18"));
+		Assert.assertEquals(catalog.getImportTime("Space Stations"), 2000L);
+		Assert.assertEquals(catalog.getImportTime("Weather"), 1000L);
+
+		// Satellites no longer in any category stay in the catalog; imported TLEs replace old ones
+		Assert.assertEquals(catalog.size(), 6);
+		Assert.assertEquals(catalog.get(48274).getSatName(), "TIANGONG");
+		Assert.assertEquals(catalog.get(25544).getLine1(), updated.getLine1());
+
+		// The current time is recorded by default
+		long before = System.currentTimeMillis();
+		catalog.importTLEs(Collections.singletonMap("Weather", Arrays.asList(tle("NOAA 19", 33591))));
+		Assert.assertTrue(catalog.getImportTime("Weather") >= before);
+		Assert.assertEquals(catalog.getImportTime("Space Stations"), 2000L);
+	}
+
+	@Test
+	public void testMalformed() throws IOException {
+		TLE tooLong = new TLE("LONG", line1(1002, "13241.0") + "                      ", line2(1002));
+		TLE noNumber = new TLE("NONE", line1(1003, "13241.0"), "2");
+		catalog.importTLEs(Collections.singletonMap("Bad", Arrays.asList(tooLong, tle("GOOD", 1004), noNumber)));
+		Assert.assertEquals(names(catalog.getCategory("Bad")), Arrays.asList("GOOD"));
+		Assert.assertEquals(catalog.size(), 1);
+	}
+
+	@Test
+	public void testGenerations() throws IOException {
+		catalog.importTLEs(Collections.singletonMap("One", Arrays.asList(tle("FIRST", 1))));
+		catalog.importTLEs(Collections.singletonMap("Two", Arrays.asList(tle("SECOND", 2))), 5000L);
+
+		// Each import writes a new generation, and the older one is removed
+		Assert.assertEquals(Arrays.asList(directory.list()), Arrays.asList("catalog.2.tle"));
+
+		// A catalog opened later sees the latest generation, and removes leftovers
+		Assert.assertTrue(new File(directory, "catalog.1.tle").createNewFile());
+		Assert.assertTrue(new File(directory, "catalog.3.tle.tmp").createNewFile());
+		Assert.assertTrue(new File(directory, "other.txt").createNewFile());
+		TLECatalog reopened = new TLECatalog(directory);
+		reopened.open();
+		Assert.assertEquals(new HashSet<String>(Arrays.asList(directory.list())), 
+				new HashSet<String>(Arrays.asList("catalog.2.tle", "other.txt")));
+		Assert.assertEquals(reopened.size(), 2);
+		Assert.assertEquals(reopened.get(2).getSatName(), "SECOND");
+		Assert.assertEquals(names(reopened.getCategory("One")), Arrays.asList("FIRST"));
+		Assert.assertEquals(reopened.getImportTime("Two"), 5000L);
+
+		// Imports continue from the latest generation
+		reopened.importTLEs(Collections.singletonMap("Three", Arrays.asList(tle("THIRD", 3))));
+		Assert.assertEquals(new HashSet<String>(Arrays.asList(directory.list())), 
+				new HashSet<String>(Arrays.asList("catalog.3.tle", "other.txt")));
+		Assert.assertEquals(reopened.size(), 3);
+
+		// The catalog first opened is not switched to later generations until reopened
+		Assert.assertEquals(catalog.size(), 2);
+		catalog.open();
+		Assert.assertEquals(catalog.size(), 3);
+	}
+
+	@Test
+	public void testVersion1() throws IOException {
+		// Catalogs written before import times were recorded are still readable
+		ByteBuffer buffer = ByteBuffer.allocate(16 + 2 + 7 + 4);
+		buffer.putInt(0x544c4543).putInt(1).putInt(0).putInt(1);
+		buffer.putShort((short) 7).put("Weather".getBytes("UTF-8")).putInt(0);
+		Assert.assertTrue(directory.mkdir());
+		FileOutputStream out = new FileOutputStream(new File(directory, "catalog.1.tle"));
+		try {
+			out.write(buffer.array());
+		} finally {
+			out.close();
+		}
+		catalog.open();
+		Assert.assertEquals(catalog.getCategory("Weather"), Collections.emptyList());
+		Assert.assertEquals(catalog.getImportTime("Weather"), 0L);
+	}
+
+	@Test (expectedExceptions = IOException.class)
+	public void testNotACatalog() throws IOException {
+		Assert.assertTrue(directory.mkdir());
+		FileOutputStream out = new FileOutputStream(new File(directory, "catalog.1.tle"));
+		try {
+			out.write("Not a catalog at all".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		catalog.open();
+	}
+
+	@Test
+	public void testParse() throws IOException {
+		String text = "ISS (ZARYA)             \n" + line1(25544, "13241.39990741") + "\n" + line2(25544) + "\n" +
+				"\n" +
+				line1(33591, "13241.0") + "\n" + line2(33591) + "\n" +  // No name line
+				"stray\n" + line2(1) + "\n" +                           // No line 1
+				"NOAA 18\r\n" + line1(28654, "13241.0") + "\r\n" + line2(28654);
+		List<TLE> tles = TLECatalog.parse(new BufferedReader(new StringReader(text)));
+		Assert.assertEquals(names(tles), Arrays.asList("ISS (ZARYA)", "33591", "NOAA 18"));
+		Assert.assertEquals(tles.get(0).getLine1(), line1(25544, "13241.39990741"));
+		Assert.assertEquals(tles.get(2).getLine2(), line2(28654));
+		Assert.assertEquals(TLECatalog.getNumber(tles.get(1)), Integer.valueOf(33591));
+	}
+
+	private static List<String> names(List<TLE> tles) {
+		List<String> names = new ArrayList<String>();
+		for (TLE tle : tles) names.add(tle.getSatName());
+		return names;
+	}
+
+	private static TLE tle(String name, int number) {
+		return new TLE(name, line1(number, "13241.39990741"), line2(number));
+	}
+
+	private static String line1(int number, String epoch) {
+		return String.format("1 %05dU 98067A   %-14s  .00008176  00000-0  14800-3 0  4862", number, epoch);
+	}
+
+	private static String line2(int number) {
+		return String.format("2 %05d  51.6499 105.5504 0004476  12.3451 332.2743 15.50589082846053", number);
+	}
+}
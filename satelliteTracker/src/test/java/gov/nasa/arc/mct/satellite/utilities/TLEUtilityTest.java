@@ -0,0 +1,25 @@
+package gov.nasa.arc.mct.satellite.utilities;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TLEUtilityTest {
+	private static final long HOUR = 60 * 60 * 1000;
+
+	@Test
+	public void testStale() {
+		long now = 1377700000000L;
+		Assert.assertFalse(TLEUtility.isStale(now, now));
+		Assert.assertFalse(TLEUtility.isStale(now - 23 * HOUR, now));
+		Assert.assertTrue(TLEUtility.isStale(now - 25 * HOUR, now));
+		Assert.assertTrue(TLEUtility.isStale(0, now)); // Never imported, or by an older version
+
+		System.setProperty(TLEUtility.MAX_AGE_PROPERTY, "2");
+		try {
+			Assert.assertFalse(TLEUtility.isStale(now - HOUR, now));
+			Assert.assertTrue(TLEUtility.isStale(now - 3 * HOUR, now));
+		} finally {
+			System.clearProperty(TLEUtility.MAX_AGE_PROPERTY);
+		}
+	}
+}